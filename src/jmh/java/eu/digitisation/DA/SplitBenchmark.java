@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import eu.digitisation.layout.SortPageXML;
+import eu.digitisation.text.StringNormalizer;
+import eu.digitisation.xml.DocumentParser;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.w3c.dom.Document;
+
+/**
+ * Stages of the header extraction, measured separately. Every benchmark
+ * processes one page (the next one in the corpus at every invocation), so
+ * scores are average times per page and stage. The corpus is either the
+ * sample page or a generated collection of pages (see PageGenerator).
+ *
+ * @author R.C.C.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitBenchmark {
+
+    @Param({"sample", "generated"})
+    String corpus;
+    @Param({"2000"})
+    int pages;
+
+    File dir;             // temporary directory holding the corpus
+    File[] files;         // the pages in the corpus
+    Document[] docs;      // a window of parsed pages
+    String[][] texts;     // text content of the paragraph regions
+    String[][] tokens;    // words in the paragraph regions
+    String[][] starts;    // first word of every header
+    int cursor;
+    final Collator ruleBased = OldSpanishCollator.getInstance();
+
+    /**
+     * A freshly parsed document for stages which modify it
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+
+        Document doc;
+
+        @Setup(Level.Invocation)
+        public void parse(SplitBenchmark state) {
+            doc = DocumentParser.parse(state.files[state.next()]);
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("DA").toFile();
+        List<File> list;
+        if (corpus.equals("sample")) {
+            File file = new File(dir, "pc-00444931.xml");
+            try (InputStream is = SplitBenchmark.class.getResourceAsStream("/pc-00444931.xml")) {
+                Files.copy(is, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            list = Arrays.asList(file);
+        } else {
+            list = new PageGenerator(0).generate(dir, pages);
+        }
+        files = list.toArray(new File[list.size()]);
+        docs = new Document[Math.min(files.length, 32)];
+        texts = new String[files.length][];
+        tokens = new String[files.length][];
+        starts = new String[files.length][];
+        for (int n = 0; n < files.length; ++n) {
+            List<String> content = new ArrayList<>();
+            List<String> words = new ArrayList<>();
+            List<String> firsts = new ArrayList<>();
+            try (RegionReader reader = new RegionReader(files[n])) {
+                Region region;
+                while ((region = reader.next()) != null) {
+                    String text = region.getText().trim();
+                    content.add(text);
+                    for (String token : Split.cfilter.translate(text).split("\\p{Space}+")) {
+                        String word = StringNormalizer.trim(token);
+                        if (!word.isEmpty()) {
+                            words.add(word);
+                        }
+                    }
+                    String head = Split.header(text);
+                    if (!head.isEmpty()) {
+                        firsts.add(Split.firstWord(head));
+                    }
+                }
+            }
+            texts[n] = content.toArray(new String[content.size()]);
+            tokens[n] = words.toArray(new String[words.size()]);
+            starts[n] = firsts.toArray(new String[firsts.size()]);
+            if (n < docs.length) {
+                docs[n] = Split.load(files[n]);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * @return the index of the next page
+     */
+    int next() {
+        cursor = (cursor + 1) % files.length;
+        return cursor;
+    }
+
+    @Benchmark
+    public Document documentParser() {
+        return DocumentParser.parse(files[next()]);
+    }
+
+    @Benchmark
+    public Document load() throws IOException {
+        return Split.load(files[next()]);
+    }
+
+    @Benchmark
+    public List<Region> regionReader() throws IOException {
+        try (RegionReader reader = new RegionReader(files[next()])) {
+            return reader.readAll();
+        }
+    }
+
+    @Benchmark
+    public Document sortPageXML(Fresh fresh) {
+        return SortPageXML.sorted(fresh.doc);
+    }
+
+    @Benchmark
+    public Object readingOrder() {
+        Document doc = docs[next() % docs.length];
+        return Split.engine.select(doc);
+    }
+
+    @Benchmark
+    public List<String> headersDocument() throws IOException {
+        return Split.headers(docs[next() % docs.length]);
+    }
+
+    @Benchmark
+    public void translate(Blackhole bh) {
+        for (String text : texts[next()]) {
+            bh.consume(Split.cfilter.translate(text));
+        }
+    }
+
+    @Benchmark
+    public void translateTable(Blackhole bh) {
+        StringBuilder buffer = new StringBuilder();
+        for (String text : texts[next()]) {
+            buffer.setLength(0);
+            bh.consume(Split.translator.translate(text, buffer));
+        }
+    }
+
+    @Benchmark
+    public void header(Blackhole bh) {
+        for (String text : texts[next()]) {
+            bh.consume(Split.header(text));
+        }
+    }
+
+    @Benchmark
+    public void typeOf(Blackhole bh) {
+        for (String token : tokens[next()]) {
+            bh.consume(WordType.typeOf(token));
+        }
+    }
+
+    @Benchmark
+    public void compare(Blackhole bh) {
+        String[] words = starts[next()];
+        for (int n = 1; n < words.length; ++n) {
+            bh.consume(Split.collator.compare(words[n - 1], words[n]));
+        }
+    }
+
+    @Benchmark
+    public void compareRuleBased(Blackhole bh) {
+        String[] words = starts[next()];
+        for (int n = 1; n < words.length; ++n) {
+            bh.consume(ruleBased.compare(words[n - 1], words[n]));
+        }
+    }
+
+    @Benchmark
+    public void isParticiple(Blackhole bh) {
+        String[] words = starts[next()];
+        for (int n = 1; n < words.length; ++n) {
+            bh.consume(Split.isParticiple(words[n], words[n - 1]));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import eu.digitisation.text.StringNormalizer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Word classification on the tokens of the sample page: regular expressions
+ * (the former WordType implementation) versus the code-point scanner.
+ *
+ * @author R.C.C.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordTypeBenchmark {
+
+    String[] tokens;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> list = new ArrayList<>();
+        try (RegionReader reader = new RegionReader(
+                WordTypeBenchmark.class.getResourceAsStream("/pc-00444931.xml"))) {
+            Region region;
+            while ((region = reader.next()) != null) {
+                String text = Split.cfilter.translate(region.getText().trim());
+                for (String token : text.split("\\p{Space}+")) {
+                    String word = StringNormalizer.trim(token);
+                    if (word.length() > 0) {
+                        list.add(word);
+                    }
+                }
+            }
+        }
+        tokens = list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * The former regex-based implementation of WordType.typeOf
+     */
+    static WordType typeOfRegex(String word) {
+        if (word.matches("\\p{L}+")) {
+            if (word.matches("\\p{Lu}+")) {
+                return WordType.UPPERCASE;
+            } else if (word.matches("[\\p{L}&&[^\\p{Lu}]]+")) {
+                return WordType.LOWERCASE;
+            } else {
+                return WordType.MIXEDCASE;
+            }
+        } else if (word.matches("\\p{Punct}+")) {
+            return WordType.PUNCT;
+        } else {
+            return WordType.UNKNOWN;
+        }
+    }
+
+    @Benchmark
+    public void typeOfRegex(Blackhole bh) {
+        for (String token : tokens) {
+            bh.consume(typeOfRegex(token));
+        }
+    }
+
+    @Benchmark
+    public void typeOf(Blackhole bh) {
+        for (String token : tokens) {
+            bh.consume(WordType.typeOf(token));
+        }
+    }
+
+    @Benchmark
+    public void predicatesRegex(Blackhole bh) {
+        for (String token : tokens) {
+            bh.consume(token.matches("\\p{Punct}*\\p{Lu}[\\p{L}&&[^\\p{Lu}]]*"));
+            bh.consume(token.matches("\\p{Lu}+\\p{L}\\p{Lu}+|\\p{L}\\p{Lu}{2,}|\\p{Lu}{2,}\\p{L}"));
+            bh.consume(token.matches("\\p{Punct}+"));
+        }
+    }
+
+    @Benchmark
+    public void predicates(Blackhole bh) {
+        for (String token : tokens) {
+            bh.consume(WordType.isFirstWordInSentence(token));
+            bh.consume(WordType.nearlyUpper(token));
+            bh.consume(WordType.isPunct(token));
+        }
+    }
+}
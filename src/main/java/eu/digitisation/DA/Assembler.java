@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming assembly of complete entries: every header classified by the
+ * engine is emitted together with its body, the text following the header
+ * in its region and in the next regions (in this page or the following
+ * ones) which do not start a new entry. Regions without a header and
+ * skipped headers (connectors, punctuation, sentences) continue the body of
+ * the open entry; any other decision (entries, subentries, participles,
+ * typos and headers to be checked) closes it and opens a new one. Skipped
+ * headers are therefore not emitted, and text before the first entry is
+ * discarded.
+ * <p>
+ * Only the open entry (and the regions of the page being read, see process)
+ * is kept in memory. An entry is emitted within the file where its header was
+ * found: the end of that file, and the events of the following files with no
+ * headers, are delayed until the entry is closed.</p>
+ * <p>
+ * Body text is normalized: white space is collapsed to single spaces and a
+ * word hyphenated at the end of a line or region is joined again (if the
+ * next word starts with a lowercase letter).</p>
+ *
+ * @author R.C.C.
+ */
+public class Assembler {
+
+    private final SplitEngine engine;
+    private final EntrySink sink;
+    private final Capture capture = new Capture();
+    private String last;         // last entry found
+    private String file;         // the current file identifier
+    private Entry open;          // the open entry (null if none)
+    private final StringBuilder body = new StringBuilder();
+    private final List<Event> delayed = new ArrayList<>(); // file events
+
+    /**
+     * A file event delayed until the open entry is closed
+     */
+    private static class Event {
+
+        final static int START = 0;
+        final static int ERROR = 1;
+        final static int END = 2;
+
+        final int kind;
+        final String value;  // file identifier or error message
+
+        Event(int kind, String value) {
+            this.kind = kind;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A sink keeping the decision taken on a single header
+     */
+    private static class Capture implements EntrySink {
+
+        Entry entry;
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void startFile(String id) {
+        }
+
+        @Override
+        public void entry(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public void error(String message) {
+        }
+
+        @Override
+        public void endFile() {
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * @param engine the engine extracting and classifying headers
+     * @param sink the destination of the complete entries (the caller sends
+     * the begin and end events)
+     * @param last the last entry found before the first region
+     */
+    public Assembler(SplitEngine engine, EntrySink sink, String last) {
+        this.engine = engine;
+        this.sink = sink;
+        this.last = last;
+    }
+
+    /**
+     * Start of the regions in a file
+     *
+     * @param id the file identifier
+     * @throws IOException if the output cannot be written
+     */
+    public void startFile(String id) throws IOException {
+        file = id;
+        event(Event.START, id);
+    }
+
+    /**
+     * A file which could not be processed
+     *
+     * @param message the error message
+     * @throws IOException if the output cannot be written
+     */
+    public void error(String message) throws IOException {
+        event(Event.ERROR, message);
+    }
+
+    /**
+     * End of the regions in a file
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void endFile() throws IOException {
+        event(Event.END, null);
+        file = null;
+    }
+
+    /**
+     * Send a file event or delay it if there is an open entry
+     */
+    private void event(int kind, String value) throws IOException {
+        if (open == null) {
+            send(kind, value);
+        } else {
+            delayed.add(new Event(kind, value));
+        }
+    }
+
+    private void send(int kind, String value) throws IOException {
+        switch (kind) {
+            case Event.START:
+                sink.startFile(value);
+                break;
+            case Event.ERROR:
+                sink.error(value);
+                break;
+            default:
+                sink.endFile();
+        }
+    }
+
+    /**
+     * Process the next region in reading order
+     *
+     * @param id the region identifier (may be null)
+     * @param text the textual content of the region
+     * @throws IOException if the output cannot be written
+     */
+    public void region(String id, String text) throws IOException {
+        String content = text.trim();
+        String head = engine.header(content);
+        Entry entry = null;
+        if (!head.isEmpty()) {
+            capture.entry = null;
+            last = engine.split(Collections.singletonList(new Region(id, head)),
+                    last, file, capture);
+            entry = capture.entry;
+        }
+        String translated = engine.getTranslator().translate(content);
+        if (entry == null || entry.getTag() == Entry.Tag.SKIP) {
+            if (open != null) {
+                append(translated, 0);
+            }
+        } else {
+            close();
+            open = entry;
+            append(translated, end(translated, head));
+        }
+    }
+
+    /**
+     * Find the end of a header in a text. The header words are tokens of
+     * the text, in the same order, but tokens which are not words
+     * (punctuation, numbers) are left out of the header: every header word
+     * is therefore matched with the next equal token.
+     *
+     * @param text the translated text of a region
+     * @param head the header extracted from the text
+     * @return the position in the text after the last header word
+     */
+    static int end(String text, String head) {
+        int n = 0;
+        for (String word : head.split(" ")) {
+            while (n < text.length()) {
+                while (n < text.length() && Tokenizer.isSpace(text.charAt(n))) {
+                    ++n;
+                }
+                int start = n;
+                while (n < text.length() && !Tokenizer.isSpace(text.charAt(n))) {
+                    ++n;
+                }
+                if (n - start == word.length() && text.startsWith(word, start)) {
+                    break;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Append text (from the given position) to the body of the open entry
+     */
+    private void append(String text, int from) {
+        boolean space = true;    // separator before the next word
+        boolean newline = true;  // the separator is a line (or region) break
+        for (int n = from; n < text.length(); ++n) {
+            char c = text.charAt(n);
+            if (Tokenizer.isSpace(c)) {
+                space = true;
+                newline |= c == '\n' || c == '\r';
+            } else {
+                int end = body.length() - 1;
+                if (space && end >= 0) {
+                    if (newline && end > 0 && body.charAt(end) == '-'
+                            && Character.isLetter(body.charAt(end - 1))
+                            && Character.isLowerCase(c)) {
+                        body.setLength(end);  // hyphenated word
+                    } else {
+                        body.append(' ');
+                    }
+                }
+                body.append(c);
+                space = newline = false;
+            }
+        }
+    }
+
+    /**
+     * Emit the open entry and the file events delayed since it was opened
+     */
+    private void close() throws IOException {
+        if (open != null) {
+            sink.entry(open.withBody(body.toString()));
+            open = null;
+            body.setLength(0);
+            for (Event event : delayed) {
+                send(event.kind, event.value);
+            }
+            delayed.clear();
+        }
+    }
+
+    /**
+     * Emit the open entry (at the end of the input)
+     *
+     * @return the last entry found
+     * @throws IOException if the output cannot be written
+     */
+    public String finish() throws IOException {
+        close();
+        return last;
+    }
+
+    /**
+     * Assemble the entries in a collection of files. Every page is read
+     * with a streaming reader; its regions are only kept until the page has
+     * been read, so that a page which cannot be parsed produces an error and
+     * no entries.
+     *
+     * @param engine the engine extracting and classifying headers
+     * @param files the input files (or archives, see Pages), in dictionary
+     * order
+     * @param last the last entry found before the first file
+     * @param sink the destination of the entries
+     * @return the last entry after processing all files
+     * @throws IOException if the entries cannot be written
+     */
+    public static String process(SplitEngine engine, List<File> files, String last,
+            EntrySink sink) throws IOException {
+        Assembler assembler = new Assembler(engine, sink, last);
+        try (Pages pages = new Pages(files)) {
+            List<Region> regions = new ArrayList<>();
+            while (pages.next()) {
+                assembler.startFile(pages.id());
+                regions.clear();
+                try (RegionReader reader = new RegionReader(pages.open(), engine.getType())) {
+                    Region region;
+                    while ((region = reader.next()) != null) {
+                        regions.add(region);
+                    }
+                } catch (IOException ex) {
+                    assembler.error("Wrong file");
+                    regions.clear();
+                }
+                for (Region region : regions) {
+                    assembler.region(region.getId(), region.getText());
+                }
+                assembler.endFile();
+            }
+        }
+        return assembler.finish();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import eu.digitisation.text.CharFilter;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiled version of a CharFilter (in compatibility mode): the translation
+ * of every code point (NFKC normalization followed by the replacements in the
+ * filter) is stored in a dense table for the Basic Multilingual Plane and in
+ * sparse maps for higher planes, so text is translated one code point at a
+ * time into a reusable buffer. The output is identical to that of
+ * CharFilter.translate.
+ * <p>
+ * Translating code points independently is only correct when normalization
+ * does not combine neighboring characters. This holds for code points whose
+ * compatibility decomposition starts with a character which is neither a
+ * combining mark nor the second element of a canonical composition (most
+ * letters, including precomposed and long-s, qualify). Text containing any
+ * other code point (typically, combining marks) is passed to the CharFilter,
+ * and so is any text if the filter replaces sequences of several code
+ * points.</p>
+ *
+ * @author R.C.C.
+ */
+public class CharTranslator {
+
+    private final static int UNSAFE = -1;  // table value: needs the filter
+
+    private final CharFilter filter;
+    private final boolean compiled;  // false if keys are code point sequences
+    private final int[] table;       // BMP: char, UNSAFE or -(2 + index)
+    private final char[][] expansions; // translations of other lengths
+    private final Map<Integer, char[]> high; // translated high code points
+    private final Set<Integer> unsafe;       // unsafe high code points
+
+    private final ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    /**
+     * Compile a character filter
+     *
+     * @param filter a CharFilter in compatibility mode
+     */
+    public CharTranslator(CharFilter filter) {
+        this.filter = filter;
+        this.table = new int[65536];
+        this.high = new HashMap<>();
+        this.unsafe = new HashSet<>();
+
+        boolean sequences = false;
+        for (String key : filter.keySet()) {
+            sequences |= key.codePointCount(0, key.length()) != 1;
+        }
+        compiled = !sequences;
+
+        Map<String, Integer> index = new HashMap<>();
+        List<char[]> list = new ArrayList<>(); // translations of other lengths
+
+        // marks, second elements of canonical compositions and code points
+        // with a compatibility decomposition
+        BitSet marks = new BitSet(Character.MAX_CODE_POINT + 1);
+        BitSet seconds = new BitSet(Character.MAX_CODE_POINT + 1);
+        List<String> decomposable = new ArrayList<>();
+        for (int c = 0; c <= Character.MAX_CODE_POINT; ++c) {
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK
+                    || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK) {
+                marks.set(c);
+            }
+            if (type != Character.UNASSIGNED && type != Character.PRIVATE_USE
+                    && type != Character.SURROGATE) {
+                String s = new String(Character.toChars(c));
+                if (!Normalizer.isNormalized(s, Normalizer.Form.NFKD)) {
+                    decomposable.add(s);
+                    String d = Normalizer.normalize(s, Normalizer.Form.NFD);
+                    for (int n = Character.charCount(d.codePointAt(0)); n < d.length();) {
+                        int e = d.codePointAt(n);
+                        seconds.set(e);
+                        n += Character.charCount(e);
+                    }
+                }
+            }
+        }
+
+        for (int c = 0; c < 65536; ++c) {
+            table[c] = isSurrogate(c) ? UNSAFE : c; // unpaired surrogates
+        }
+        BitSet unstable = new BitSet(Character.MAX_CODE_POINT + 1);
+        unstable.or(marks);
+        unstable.or(seconds);
+        for (String s : decomposable) {
+            // its decomposition decides (the code point itself may be a mark)
+            unstable.clear(s.codePointAt(0));
+        }
+        for (String s : decomposable) {
+            int c = s.codePointAt(0);
+            String d = Normalizer.normalize(s, Normalizer.Form.NFKD);
+            int first = d.isEmpty() ? -1 : d.codePointAt(0);
+            if (first < 0 || marks.get(first) || seconds.get(first)) {
+                unstable.set(c);
+            } else if (!Normalizer.isNormalized(s, Normalizer.Form.NFKC)) {
+                put(c, filter.translate(s), index, list);
+            }
+        }
+        for (int c = unstable.nextSetBit(0); c >= 0; c = unstable.nextSetBit(c + 1)) {
+            if (c < 65536) {
+                table[c] = UNSAFE;
+            } else {
+                unsafe.add(c);
+            }
+        }
+        for (String key : filter.keySet()) {
+            int c = key.codePointAt(0);
+            if (compiled && (c < 65536 ? table[c] != UNSAFE : !unsafe.contains(c))) {
+                put(c, filter.translate(key), index, list);
+            }
+        }
+        expansions = list.toArray(new char[list.size()][]);
+    }
+
+    /**
+     * Store the translation of a safe code point
+     */
+    private void put(int c, String t, Map<String, Integer> index,
+            List<char[]> list) {
+        if (c < 65536) {
+            if (t.length() == 1) {
+                table[c] = t.charAt(0);
+            } else {
+                Integer k = index.get(t);
+                if (k == null) {
+                    k = list.size();
+                    index.put(t, k);
+                    list.add(t.toCharArray());
+                }
+                table[c] = -(2 + k);
+            }
+        } else if (t.codePointCount(0, t.length()) != 1 || t.codePointAt(0) != c) {
+            high.put(c, t.toCharArray());
+        }
+    }
+
+    private static boolean isSurrogate(int c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    /**
+     * Translate a text and append the result to a buffer
+     *
+     * @param s the text
+     * @param out the output buffer
+     * @return the output buffer
+     */
+    public StringBuilder translate(CharSequence s, StringBuilder out) {
+        return translate(s, 0, s.length(), out);
+    }
+
+    /**
+     * Translate a segment of a text and append the result to a buffer. If
+     * the translator is compiled, translating consecutive segments gives the
+     * translation of the whole text provided that every segment boundary is
+     * followed by a white space character (\p{Space}), since normalization
+     * never combines a white space with its neighbors.
+     *
+     * @param s the text
+     * @param start the start of the segment
+     * @param end the end of the segment
+     * @param out the output buffer
+     * @return the output buffer
+     */
+    public StringBuilder translate(CharSequence s, int start, int end,
+            StringBuilder out) {
+        int mark = out.length();
+        int n = start;
+        while (compiled && n < end) {
+            char c = s.charAt(n);
+            int value = table[c];
+            if (value >= 0) {
+                out.append((char) value);
+            } else if (value < UNSAFE) {
+                out.append(expansions[-2 - value]);
+            } else if (Character.isHighSurrogate(c) && n + 1 < end
+                    && Character.isLowSurrogate(s.charAt(n + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(n + 1));
+                if (unsafe.contains(cp)) {
+                    break;
+                }
+                char[] t = high.get(cp);
+                if (t == null) {
+                    out.append(c).append(s.charAt(n + 1));
+                } else {
+                    out.append(t);
+                }
+                ++n;
+            } else {
+                break;
+            }
+            ++n;
+        }
+        if (n < end || !compiled) {
+            out.setLength(mark);
+            out.append(filter.translate(s.subSequence(start, end).toString()));
+        }
+        return out;
+    }
+
+    /**
+     * @return true if text can be translated one code point at a time (the
+     * filter only replaces single code points)
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * @param s a text
+     * @return the translated text
+     */
+    public String translate(String s) {
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        return translate(s, buffer).toString();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+/**
+ * A classified header: the decision taken by Split on a header, with its
+ * optional reason and priority attributes and, if known, the identifiers of
+ * the file and region containing the header. Entries built by Assembler also
+ * carry the body text following the header.
+ *
+ * @author R.C.C.
+ */
+public class Entry {
+
+    /**
+     * The possible decisions and their XML element names
+     */
+    public enum Tag {
+
+        ENTRY("entry"), SUBENTRY("subentry"), PASTPART("PastPart"),
+        ITYPO("Itypo"), CHECK("check"), SKIP("skip");
+
+        private final String name;
+
+        Tag(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the XML element name
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Tag tag;
+    private final String text;
+    private final String reason;    // may be null
+    private final String priority;  // may be null
+    private final String file;      // may be null
+    private final String region;    // may be null
+    private final String suggestion; // may be null
+    private final String body;      // may be null
+
+    public Entry(Tag tag, String text, String reason, String priority,
+            String file, String region, String suggestion, String body) {
+        this.tag = tag;
+        this.text = text;
+        this.reason = reason;
+        this.priority = priority;
+        this.file = file;
+        this.region = region;
+        this.suggestion = suggestion;
+        this.body = body;
+    }
+
+    public Entry(Tag tag, String text, String reason, String priority,
+            String file, String region, String suggestion) {
+        this(tag, text, reason, priority, file, region, suggestion, null);
+    }
+
+    public Entry(Tag tag, String text, String reason, String priority,
+            String file, String region) {
+        this(tag, text, reason, priority, file, region, null);
+    }
+
+    public Entry(Tag tag, String text, String reason, String priority) {
+        this(tag, text, reason, priority, null, null);
+    }
+
+    public Entry(Tag tag, String text) {
+        this(tag, text, null, null);
+    }
+
+    public Tag getTag() {
+        return tag;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the reason attribute or null if there is none
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the priority attribute or null if there is none
+     */
+    public String getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the identifier of the file containing the header or null if
+     * unknown
+     */
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @return the identifier of the region containing the header or null if
+     * unknown
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * @return the headword suggested as a correction of the entry or null if
+     * there is none
+     */
+    public String getSuggestion() {
+        return suggestion;
+    }
+
+    /**
+     * @return the text of the entry after the header (possibly continued in
+     * other regions and pages) or null if unknown
+     */
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @param word a headword
+     * @return a copy of this entry with the given suggestion
+     */
+    public Entry suggest(String word) {
+        return new Entry(tag, text, reason, priority, file, region, word, body);
+    }
+
+    /**
+     * @param text the body text
+     * @return a copy of this entry with the given body
+     */
+    public Entry withBody(String text) {
+        return new Entry(tag, this.text, reason, priority, file, region, suggestion, text);
+    }
+
+    @Override
+    public String toString() {
+        return tag.getName() + ": " + text;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the entries found by Split in a collection of files.
+ * Events come in the order begin, (startFile, (entry | error)*, endFile)*,
+ * end.
+ *
+ * @author R.C.C.
+ */
+public interface EntrySink extends Closeable {
+
+    /**
+     * Start of the output
+     *
+     * @throws IOException
+     */
+    void begin() throws IOException;
+
+    /**
+     * Start of the entries in a file
+     *
+     * @param id the file identifier
+     * @throws IOException
+     */
+    void startFile(String id) throws IOException;
+
+    /**
+     * A classified header
+     *
+     * @param entry the entry
+     * @throws IOException
+     */
+    void entry(Entry entry) throws IOException;
+
+    /**
+     * A file which could not be processed
+     *
+     * @param message the error message
+     * @throws IOException
+     */
+    void error(String message) throws IOException;
+
+    /**
+     * End of the entries in a file
+     *
+     * @throws IOException
+     */
+    void endFile() throws IOException;
+
+    /**
+     * End of the output (the sink is flushed but not closed)
+     *
+     * @throws IOException
+     */
+    void end() throws IOException;
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import eu.digitisation.log.Messages;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate search of OCR-damaged words in a list of valid headwords. The
+ * headwords are stored in a trie which is traversed with one row of the edit
+ * (Levenshtein) distance table per node, as a Levenshtein automaton would do:
+ * a branch is abandoned as soon as every prefix of the query is more than k
+ * edits away from the node prefix, so that only a small part of the trie is
+ * visited instead of comparing the query with every headword. Among the
+ * headwords within k edits, the suggestion is the one closest under a
+ * weighted distance where typical OCR confusions (I and l, O and 0, RN and
+ * M...) are cheaper than other substitutions.
+ * <p>
+ * Words are compared in uppercase. A matcher is not modified by searches and
+ * can be shared by concurrent threads.</p>
+ *
+ * @author R.C.C.
+ */
+public class FuzzyMatcher {
+
+    private final Weights weights;
+    private final int distance;   // maximum number of edits
+    private final Node root = new Node();
+    private int size;
+    private int depth;  // length of the longest headword
+
+    /**
+     * A node of the trie
+     */
+    private static class Node {
+
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        String word;  // the headword ending here, if any
+
+        Node child(char c) {
+            for (int n = 0; n < labels.length; ++n) {
+                if (labels[n] == c) {
+                    return children[n];
+                }
+            }
+            return null;
+        }
+
+        Node add(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                labels = Arrays.copyOf(labels, labels.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                labels[labels.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    /**
+     * Substitution costs between characters and sequences of characters.
+     * Costs are symmetric; insertions, deletions and other substitutions cost
+     * 1.
+     */
+    public static class Weights {
+
+        private final static Charset UTF8 = Charset.forName("UTF-8");
+
+        private final Map<Integer, Double> pairs;    // single characters
+        private final Map<Character, List<Rule>> rules; // by last char of source
+
+        private static class Rule {
+
+            final String source;
+            final String target;
+            final double cost;
+
+            Rule(String source, String target, double cost) {
+                this.source = source;
+                this.target = target;
+                this.cost = cost;
+            }
+        }
+
+        /**
+         * Create an empty set of weights (all edits cost 1)
+         */
+        public Weights() {
+            pairs = new HashMap<>();
+            rules = new HashMap<>();
+        }
+
+        /**
+         * Add a confusion
+         *
+         * @param a a string
+         * @param b another string
+         * @param cost the cost of replacing one string with the other
+         */
+        public void add(String a, String b, double cost) {
+            a = a.toUpperCase();
+            b = b.toUpperCase();
+            if (a.equals(b)) {
+                return;
+            } else if (a.length() == 1 && b.length() == 1) {
+                put(a.charAt(0), b.charAt(0), cost);
+                put(b.charAt(0), a.charAt(0), cost);
+            } else if (!a.isEmpty() && !b.isEmpty()) {
+                rule(a, b, cost);
+                rule(b, a, cost);
+            }
+        }
+
+        private void put(char a, char b, double cost) {
+            Integer key = (a << 16) | b;
+            Double old = pairs.get(key);
+            if (old == null || cost < old) {
+                pairs.put(key, cost);
+            }
+        }
+
+        private void rule(String source, String target, double cost) {
+            char last = source.charAt(source.length() - 1);
+            List<Rule> list = rules.get(last);
+            if (list == null) {
+                list = new ArrayList<>();
+                rules.put(last, list);
+            }
+            list.add(new Rule(source, target, cost));
+        }
+
+        /**
+         * Parse a sequence of hexadecimal code points
+         */
+        private static String codepoints(String field) {
+            StringBuilder builder = new StringBuilder();
+            for (String hex : field.trim().split("\\s+")) {
+                if (!hex.isEmpty()) {
+                    builder.appendCodePoint(Integer.parseInt(hex, 16));
+                }
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Add confusions in CSV format (as in UnicodeCharEquivalences.csv):
+         * two sequences of hexadecimal code points and, optionally, the cost.
+         * Lines starting with # are ignored.
+         *
+         * @param reader the CSV content
+         * @param cost the cost of lines without a cost field
+         * @throws IOException if a line cannot be parsed
+         */
+        public void addCSV(Reader reader, double cost) throws IOException {
+            addCSV(reader, cost, false);
+        }
+
+        /**
+         * Add confusions in CSV format (see addCSV), optionally skipping
+         * (with a warning) the lines which cannot be parsed
+         *
+         * @param reader the CSV content
+         * @param cost the cost of lines without a cost field
+         * @param skip true if wrong lines must be skipped
+         * @throws IOException if a line cannot be parsed and skip is false
+         */
+        public void addCSV(Reader reader, double cost, boolean skip)
+                throws IOException {
+            BufferedReader lines = new BufferedReader(reader);
+            String line;
+            while ((line = lines.readLine()) != null) {
+                String[] fields = line.split("[,;\t]");
+                if (fields.length > 1 && !line.startsWith("#")) {
+                    try {
+                        add(codepoints(fields[0]), codepoints(fields[1]),
+                                fields.length > 2
+                                        ? Double.parseDouble(fields[2].trim()) : cost);
+                    } catch (IllegalArgumentException ex) {
+                        if (skip) {
+                            Messages.warning("Wrong confusion skipped: " + line);
+                        } else {
+                            throw new IOException("Wrong confusion: " + line);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Add the confusions in a resource
+         *
+         * @param skip true if wrong lines must be skipped
+         */
+        private void addResource(String resource, boolean skip) {
+            InputStream is = FuzzyMatcher.class.getResourceAsStream(resource);
+            if (is != null) {
+                try (Reader reader = new InputStreamReader(is, UTF8)) {
+                    addCSV(reader, 0, skip);
+                } catch (IOException ex) {
+                    throw new IllegalStateException(resource + ": " + ex.getMessage());
+                }
+            }
+        }
+
+        /**
+         * @return the default weights: the character equivalences in
+         * /UnicodeCharEquivalences.csv (which cost nothing; this file comes
+         * from another library, so wrong lines are skipped) and the OCR
+         * confusions in /OCRConfusions.csv
+         */
+        public static Weights getDefault() {
+            Weights weights = new Weights();
+            weights.addResource("/UnicodeCharEquivalences.csv", true);
+            weights.addResource("/OCRConfusions.csv", false);
+            return weights;
+        }
+
+        /**
+         * @return the cost of replacing one character with another
+         */
+        double substitution(char a, char b) {
+            if (a == b) {
+                return 0;
+            }
+            Double cost = pairs.get((a << 16) | b);
+            return cost == null ? 1 : cost;
+        }
+
+        /**
+         * Weighted edit distance
+         *
+         * @param a a word (uppercase)
+         * @param b another word (uppercase)
+         * @return the minimal cost of the edits transforming one word into the
+         * other
+         */
+        public double distance(String a, String b) {
+            int m = a.length();
+            int n = b.length();
+            double[][] d = new double[m + 1][n + 1];
+            for (int i = 0; i <= m; ++i) {
+                for (int j = 0; j <= n; ++j) {
+                    if (i == 0 || j == 0) {
+                        d[i][j] = i + j;
+                        continue;
+                    }
+                    double best = Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1);
+                    best = Math.min(best, d[i - 1][j - 1]
+                            + substitution(a.charAt(i - 1), b.charAt(j - 1)));
+                    List<Rule> list = rules.get(a.charAt(i - 1));
+                    if (list != null) {
+                        for (Rule rule : list) {
+                            int p = i - rule.source.length();
+                            int q = j - rule.target.length();
+                            if (p >= 0 && q >= 0 && a.startsWith(rule.source, p)
+                                    && b.startsWith(rule.target, q)) {
+                                best = Math.min(best, d[p][q] + rule.cost);
+                            }
+                        }
+                    }
+                    d[i][j] = best;
+                }
+            }
+            return d[m][n];
+        }
+    }
+
+    /**
+     * Create a matcher
+     *
+     * @param words the valid headwords
+     * @param weights the confusion weights
+     * @param distance the maximum number of edits (insertions, deletions and
+     * substitutions) between a word and its suggestion
+     */
+    public FuzzyMatcher(Collection<String> words, Weights weights, int distance) {
+        this.weights = weights;
+        this.distance = distance;
+        for (String word : words) {
+            add(word);
+        }
+    }
+
+    /**
+     * @return the number of distinct headwords
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Levenshtein distance
+     */
+    static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); ++j) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); ++i) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); ++j) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1,
+                        previous[j - 1] + cost);
+            }
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * Add a headword
+     *
+     * @param word a word
+     */
+    private void add(String word) {
+        word = word.toUpperCase();
+        Node node = root;
+        for (int n = 0; n < word.length(); ++n) {
+            node = node.add(word.charAt(n));
+        }
+        if (node.word == null) {
+            node.word = word;
+            depth = Math.max(depth, word.length());
+            ++size;
+        }
+    }
+
+    /**
+     * The word to be matched in a text: the first sequence of letters and
+     * digits (digits are frequent OCR misreadings of letters)
+     *
+     * @param text the text of an entry
+     * @return the first word in the text
+     */
+    public static String word(String text) {
+        int start = 0;
+        while (start < text.length() && !Character.isLetterOrDigit(text.charAt(start))) {
+            ++start;
+        }
+        int end = start;
+        while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+            ++end;
+        }
+        return text.substring(start, end);
+    }
+
+    /**
+     * The best candidate found so far
+     */
+    private static class Best {
+
+        String word;
+        double cost = Double.MAX_VALUE;
+        boolean exact;  // the query is a headword
+    }
+
+    /**
+     * Find the closest headword
+     *
+     * @param word a word
+     * @return the headword within the maximum edit distance which is closest
+     * to the word under the weighted distance, or null if the word is a
+     * headword or there is no headword close enough
+     */
+    public String suggest(String word) {
+        String query = word.toUpperCase();
+        if (query.isEmpty()) {
+            return null;
+        }
+        int[][] rows = new int[depth + 1][query.length() + 1];
+        for (int j = 0; j <= query.length(); ++j) {
+            rows[0][j] = j;
+        }
+        Best best = new Best();
+        search(root, query, rows, 0, best);
+        return best.exact ? null : best.word;
+    }
+
+    /**
+     * Search the subtrie below a node
+     *
+     * @param node the node
+     * @param query the query
+     * @param rows the edit distances between every prefix of the query and
+     * the prefixes of the node prefix (one row per prefix)
+     * @param level the length of the node prefix
+     * @param best the best candidate
+     */
+    private void search(Node node, String query, int[][] rows, int level, Best best) {
+        int[] row = rows[level];
+        int d = row[query.length()];
+        if (node.word != null && d <= distance) {
+            if (d == 0) {
+                best.exact = true;
+                return;
+            }
+            double cost = weights.distance(query, node.word);
+            if (cost < best.cost || (cost == best.cost
+                    && node.word.compareTo(best.word) < 0)) {
+                best.word = node.word;
+                best.cost = cost;
+            }
+        }
+        for (int n = 0; n < node.labels.length && !best.exact; ++n) {
+            char c = node.labels[n];
+            int[] next = rows[level + 1];
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for (int j = 1; j < row.length; ++j) {
+                int cost = query.charAt(j - 1) == c ? 0 : 1;
+                next[j] = Math.min(Math.min(next[j - 1], row[j]) + 1,
+                        row[j - 1] + cost);
+                min = Math.min(min, next[j]);
+            }
+            if (min <= distance) {
+                search(node.children[n], query, rows, level + 1, best);
+            }
+        }
+    }
+}
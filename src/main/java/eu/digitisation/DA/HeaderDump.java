@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary file with the headers extracted from a collection of pages, so that
+ * they can be classified again (for instance, after a change in the
+ * classification rules) without parsing the PAGE XML files. The file starts
+ * with a magic number and a version (two 4-byte integers) followed by one
+ * record per page, in input order. Every record is preceded by its length
+ * (a varint) and contains:
+ * <ul>
+ * <li>a kind byte: 0 for a page, 1 for a page which could not be read</li>
+ * <li>the page identifier</li>
+ * <li>the page image file name (may be null)</li>
+ * <li>the number of headers and, for every header in reading order, the
+ * region identifier (may be null) and the header text</li>
+ * </ul>
+ * Integers are stored as varints (7 bits per byte, least significant first)
+ * and strings as UTF-8 bytes preceded by their length; nullable strings store
+ * the length plus one, and 0 for null.
+ *
+ * @author R.C.C.
+ */
+public class HeaderDump {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    final static int MAGIC = 0x44414844;  // DAHD
+    final static int VERSION = 1;
+    private final static int PAGE = 0;
+    private final static int ERROR = 1;
+
+    /**
+     * Sequential writer of a dump. The dump is written to a temporary file
+     * which replaces the target when the writer is committed; closing a
+     * writer which has not been committed (for instance, after an error)
+     * deletes the temporary file and leaves the target untouched.
+     */
+    public static class Writer implements Closeable {
+
+        private final File file;
+        private final File tmp;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream record = new ByteArrayOutputStream(1 << 12);
+        private int pages;
+        private boolean committed;
+
+        /**
+         * @param file the dump file
+         * @throws IOException
+         */
+        public Writer(File file) throws IOException {
+            this.file = file;
+            this.tmp = new File(file.getPath() + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        private static void varint(OutputStream out, int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private static void string(OutputStream out, String s) throws IOException {
+            byte[] bytes = s.getBytes(UTF8);
+            varint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        private static void nullable(OutputStream out, String s) throws IOException {
+            if (s == null) {
+                varint(out, 0);
+            } else {
+                byte[] bytes = s.getBytes(UTF8);
+                varint(out, bytes.length + 1);
+                out.write(bytes);
+            }
+        }
+
+        private void flushRecord() throws IOException {
+            varint(out, record.size());
+            record.writeTo(out);
+            record.reset();
+            ++pages;
+        }
+
+        /**
+         * Add the headers in a page
+         *
+         * @param id the page identifier
+         * @param image the image file name (may be null)
+         * @param heads the headers, in reading order
+         * @throws IOException
+         */
+        public void add(String id, String image, List<Region> heads) throws IOException {
+            record.write(PAGE);
+            string(record, id);
+            nullable(record, image);
+            varint(record, heads.size());
+            for (Region region : heads) {
+                nullable(record, region.getId());
+                string(record, region.getText());
+            }
+            flushRecord();
+        }
+
+        /**
+         * Add a page which could not be read
+         *
+         * @param id the page identifier
+         * @throws IOException
+         */
+        public void error(String id) throws IOException {
+            record.write(ERROR);
+            string(record, id);
+            nullable(record, null);
+            varint(record, 0);
+            flushRecord();
+        }
+
+        /**
+         * @return the number of pages added
+         */
+        public int size() {
+            return pages;
+        }
+
+        /**
+         * Complete the dump and replace the target file with it
+         *
+         * @throws IOException
+         */
+        public void commit() throws IOException {
+            out.close();
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                try {
+                    out.close();
+                } finally {
+                    tmp.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sequential reader of a dump. Usage:
+     * {@code while (reader.next()) { ... reader.regions() ... }}
+     */
+    public static class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private byte[] buffer = new byte[1 << 12];
+        private int position;  // in the current record
+        private String id;
+        private String image;
+        private boolean failed;
+        private List<Region> regions;
+
+        /**
+         * @param file the dump file
+         * @throws IOException if the file cannot be read or is not a dump
+         */
+        public Reader(File file) throws IOException {
+            this(new FileInputStream(file));
+        }
+
+        /**
+         * @param is an input stream with the content of a dump
+         * @throws IOException if the content is not a dump
+         */
+        public Reader(InputStream is) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(is, 1 << 16));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a header dump");
+                } else if (in.readInt() != VERSION) {
+                    throw new IOException("Unsupported header dump version");
+                }
+            } catch (IOException ex) {
+                in.close();
+                throw ex instanceof EOFException ? new IOException("Not a header dump") : ex;
+            }
+        }
+
+        /**
+         * Read a varint from the stream (-1 at the end of the stream)
+         */
+        private int length() throws IOException {
+            int value = 0;
+            for (int shift = 0;; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    if (shift == 0) {
+                        return -1;
+                    }
+                    throw new EOFException("Truncated header dump");
+                }
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = buffer[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private String string(int length) {
+            String s = new String(buffer, position, length, UTF8);
+            position += length;
+            return s;
+        }
+
+        private String nullable() {
+            int length = varint();
+            return length == 0 ? null : string(length - 1);
+        }
+
+        /**
+         * Read the next page
+         *
+         * @return false if there are no more pages
+         * @throws IOException if the dump cannot be read or is corrupt
+         */
+        public boolean next() throws IOException {
+            int length = length();
+            if (length < 0) {
+                return false;
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, 2 * buffer.length)];
+            }
+            in.readFully(buffer, 0, length);
+            position = 0;
+            try {
+                failed = buffer[position++] == ERROR;
+                id = string(varint());
+                image = nullable();
+                int size = varint();
+                regions = new ArrayList<>(size);
+                for (int n = 0; n < size; ++n) {
+                    String region = nullable();
+                    regions.add(new Region(region, string(varint())));
+                }
+            } catch (IndexOutOfBoundsException ex) {
+                throw new IOException("Corrupt header dump");
+            }
+            if (position != length) {
+                throw new IOException("Corrupt header dump");
+            }
+            return true;
+        }
+
+        /**
+         * @return the identifier of the current page
+         */
+        public String id() {
+            return id;
+        }
+
+        /**
+         * @return the image of the current page (null if unknown)
+         */
+        public String image() {
+            return image;
+        }
+
+        /**
+         * @return true if the current page could not be read
+         */
+        public boolean failed() {
+            return failed;
+        }
+
+        /**
+         * @return the headers in the current page, in reading order
+         */
+        public List<Region> regions() {
+            return regions;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Extract the headers in a collection of pages and write them to a dump
+     *
+     * @param engine the engine extracting the headers
+     * @param files the input files (or archives, see Pages), in dictionary
+     * order
+     * @param file the dump file
+     * @return the number of pages in the dump
+     * @throws IOException if the dump cannot be written (an existing dump is
+     * then left untouched)
+     */
+    public static int dump(SplitEngine engine, List<File> files, File file)
+            throws IOException {
+        try (Pages pages = new Pages(files); Writer writer = new Writer(file)) {
+            while (pages.next()) {
+                List<Region> heads;
+                String image;
+                try (RegionReader reader = new RegionReader(pages.open(), engine.getType())) {
+                    heads = engine.headers(reader);
+                    image = reader.getImage();
+                } catch (IOException ex) {
+                    writer.error(pages.id());
+                    continue;
+                }
+                writer.add(pages.id(), image, heads);
+            }
+            writer.commit();
+            return writer.size();
+        }
+    }
+
+    /**
+     * Classify the headers in a dump
+     *
+     * @param engine the engine classifying the headers
+     * @param file the dump file
+     * @param last the last entry found before the first page
+     * @param sink the destination of the entries
+     * @return the last entry after processing all pages
+     * @throws IOException if the dump cannot be read or the entries cannot be
+     * written
+     */
+    public static String classify(SplitEngine engine, File file, String last,
+            EntrySink sink) throws IOException {
+        try (Reader reader = new Reader(file)) {
+            while (reader.next()) {
+                sink.startFile(reader.id());
+                if (reader.failed()) {
+                    sink.error("Wrong file");
+                } else {
+                    last = engine.split(reader.regions(), last, reader.id(), sink);
+                }
+                sink.endFile();
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,557 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incremental processing of a collection of files. A manifest directory keeps,
+ * for every file, its content hash, the last entry before the file (incoming)
+ * and after it (outgoing), together with a copy of the entries found in the
+ * file. A file is only processed again if its content or its incoming entry
+ * have changed; otherwise its stored entries are replayed. Since the outgoing
+ * entry of a reprocessed file is often unchanged, changes do not propagate
+ * beyond the files really affected.
+ * <p>
+ * The manifest is an append-only journal where a record is added as soon as a
+ * file has been processed (the latest record for a file wins), so an
+ * interrupted run resumes from the last file completed. The journal is
+ * compacted at the end of every run, and the records of inputs which are no
+ * longer in the list are dropped after a complete run. An incomplete last
+ * line left by a crash is ignored, and the next record starts a new line.
+ * Files whose size and modification time are unchanged keep their recorded
+ * hash without being read again (members of archives are always read).</p>
+ * <p>
+ * The stored entries depend on the classification rules: the manifest header
+ * records a hash of the rules (the data files, the engine settings and the
+ * RULES version, to be increased whenever the classification code changes)
+ * and a manifest written with other rules is discarded and rebuilt.</p>
+ *
+ * @author R.C.C.
+ */
+public class Incremental {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static String JOURNAL = "manifest.tsv";
+    private final static String VERSION = "#DA-manifest 2";
+    private final static int RULES = 1;  // version of the classification code
+    private final static String[] RESOURCES = {"/UnicodeCharEquivalences.csv",
+        "/Participles.txt"};
+
+    /**
+     * The state of a file after it was processed
+     */
+    static class Record {
+
+        final long size;
+        final long modified;
+        final String hash;  // SHA-1 of the file content
+        final String in;    // last entry before the file
+        final String out;   // last entry after the file
+
+        Record(long size, long modified, String hash, String in, String out) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+            this.in = in;
+            this.out = out;
+        }
+    }
+
+    private final File dir;
+    private final String header;  // the version and the hash of the rules
+    private final Map<String, Record> records;
+    private Writer journal;
+    private int reused;     // files replayed in the last run
+    private int processed;  // files processed in the last run
+
+    /**
+     * Open (or create) a manifest directory
+     *
+     * @param dir the manifest directory
+     * @throws IOException if the directory cannot be created or read
+     */
+    public Incremental(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        this.dir = dir;
+        this.header = VERSION + "\t" + rules(Split.engine);
+        this.records = new LinkedHashMap<>();
+        load();
+    }
+
+    /**
+     * Escape tabs, line breaks and backslashes in a field
+     */
+    static String escape(String s) {
+        if (s == null) {
+            return "\\0";
+        }
+        StringBuilder builder = new StringBuilder(s.length());
+        for (int n = 0; n < s.length(); ++n) {
+            char c = s.charAt(n);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Inverse of escape
+     */
+    static String unescape(String s) {
+        if (s.equals("\\0")) {
+            return null;
+        } else if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder builder = new StringBuilder(s.length());
+        for (int n = 0; n < s.length(); ++n) {
+            char c = s.charAt(n);
+            if (c == '\\' && n + 1 < s.length()) {
+                c = s.charAt(++n);
+                builder.append(c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param file a file
+     * @return the key identifying the file in the manifest
+     */
+    private static String key(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return the SHA-1 hash of the file content
+     * @throws IOException
+     */
+    static String hash(File file) throws IOException {
+        MessageDigest digest = sha1();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream is = new FileInputStream(file)) {
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * @param engine the engine classifying the headers
+     * @return the SHA-1 hash of the classification rules
+     * @throws IOException if the data files cannot be read
+     */
+    static String rules(SplitEngine engine) throws IOException {
+        MessageDigest digest = sha1();
+        digest.update((RULES + "\t" + engine.getType() + "\t" + engine.getConnectors()
+                + "\t" + engine.getCollator().getClass().getName() + "\n").getBytes(UTF8));
+        byte[] buffer = new byte[1 << 16];
+        for (String name : RESOURCES) {
+            digest.update((name + "\n").getBytes(UTF8));
+            try (InputStream is = Incremental.class.getResourceAsStream(name)) {
+                int n;
+                while (is != null && (n = is.read(buffer)) > 0) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * @param key the key of a file
+     * @return the file storing the entries found in the file
+     */
+    private File cache(String key) {
+        return new File(dir, hex(sha1().digest(key.getBytes(UTF8))) + ".tsv");
+    }
+
+    /**
+     * Read the journal (incomplete lines written by an interrupted run are
+     * ignored). A journal written with other rules, and the entries stored
+     * with it, are deleted.
+     */
+    private void load() throws IOException {
+        File file = new File(dir, JOURNAL);
+        boolean current = true;  // written with the current rules
+        if (file.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), UTF8))) {
+                String line = reader.readLine();
+                if (line == null || !line.startsWith("#DA-manifest")) {
+                    throw new IOException(file + " is not a valid manifest");
+                }
+                current = line.equals(header);
+                while (current && (line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length == 7 && fields[6].equals(".")) {
+                        records.put(unescape(fields[0]),
+                                new Record(Long.parseLong(fields[1]),
+                                        Long.parseLong(fields[2]), fields[3],
+                                        unescape(fields[4]), unescape(fields[5])));
+                    }
+                }
+            }
+        }
+        if (!current) {
+            clear();
+        }
+    }
+
+    /**
+     * Delete the journal and the stored entries
+     */
+    private void clear() throws IOException {
+        for (File file : dir.listFiles()) {
+            String name = file.getName();
+            if (name.equals(JOURNAL) || name.matches("[0-9a-f]{40}\\.tsv")) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    private static String format(String key, Record record) {
+        return escape(key) + "\t" + record.size + "\t" + record.modified
+                + "\t" + record.hash + "\t" + escape(record.in)
+                + "\t" + escape(record.out) + "\t.";
+    }
+
+    /**
+     * Append a record to the journal
+     */
+    private void checkpoint(String key, Record record) throws IOException {
+        if (journal == null) {
+            File file = new File(dir, JOURNAL);
+            boolean exists = file.exists();
+            boolean torn = exists && !endsWithNewline(file);
+            journal = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file, true), UTF8));
+            if (!exists) {
+                journal.write(header + "\n");
+            } else if (torn) {
+                journal.write("\n");  // end the line left by a crash
+            }
+        }
+        records.put(key, record);
+        journal.write(format(key, record) + "\n");
+        journal.flush();
+    }
+
+    /**
+     * @return true if the file is empty or its last byte is a line feed
+     */
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            if (length == 0) {
+                return true;
+            }
+            raf.seek(length - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    /**
+     * Rewrite the journal with one record per file
+     *
+     * @param keys the keys of the inputs to be kept (all if null); the
+     * stored entries of the other inputs are deleted
+     */
+    private void compact(Set<String> keys) throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        if (keys != null) {
+            Iterator<String> iterator = records.keySet().iterator();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                if (!keys.contains(key)) {
+                    iterator.remove();
+                    cache(key).delete();
+                }
+            }
+        }
+        File file = new File(dir, JOURNAL);
+        File tmp = new File(dir, JOURNAL + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmp), UTF8))) {
+            writer.write(header + "\n");
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                writer.write(format(entry.getKey(), entry.getValue()) + "\n");
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Send the stored entries of a file to a sink
+     *
+     * @return false if there are no stored entries for the file
+     */
+    private boolean replay(String key, EntrySink sink) throws IOException {
+        File file = cache(key);
+        if (!file.exists()) {
+            return false;
+        }
+        List<String> lines = Files.readAllLines(file.toPath(), UTF8);
+        for (String line : lines) {
+            String[] fields = line.split("\t", -1);
+            if (fields[0].equals("error")) {
+                sink.error(unescape(fields[1]));
+            } else {
+                sink.entry(new Entry(Entry.Tag.valueOf(fields[0]),
+                        unescape(fields[3]), unescape(fields[1]),
+                        unescape(fields[2]), unescape(fields[4]),
+                        unescape(fields[5])));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Store the entries found in a file (the file is replaced atomically)
+     */
+    private void store(String key, List<String> lines) throws IOException {
+        File file = cache(key);
+        File tmp = new File(dir, file.getName() + ".tmp");
+        Files.write(tmp.toPath(), lines, UTF8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A sink which forwards events to another one and keeps a copy of the
+     * entries and errors found in the current file
+     */
+    private static class Recorder implements EntrySink {
+
+        final EntrySink sink;
+        final List<String> lines = new ArrayList<>();
+
+        Recorder(EntrySink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void startFile(String id) {
+        }
+
+        @Override
+        public void entry(Entry entry) throws IOException {
+            lines.add(entry.getTag().name() + "\t" + escape(entry.getReason())
+                    + "\t" + escape(entry.getPriority())
+                    + "\t" + escape(entry.getText())
+                    + "\t" + escape(entry.getFile())
+                    + "\t" + escape(entry.getRegion()));
+            sink.entry(entry);
+        }
+
+        @Override
+        public void error(String message) throws IOException {
+            lines.add("error\t" + escape(message));
+            sink.error(message);
+        }
+
+        @Override
+        public void endFile() {
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Classify the headers in a collection of files, reprocessing only those
+     * files whose content or incoming entry changed since the previous run.
+     * The output is identical to that of a full run.
+     *
+     * @param files the input files (or archives, see Pages), in dictionary
+     * order
+     * @param last the last entry found before the first file
+     * @param sink the destination of the entries
+     * @return the last entry after processing all files
+     * @throws IOException if the entries or the manifest cannot be written
+     */
+    public String process(List<File> files, String last, EntrySink sink)
+            throws IOException {
+        reused = processed = 0;
+        Set<String> keys = new HashSet<>();  // inputs in this run
+        boolean complete = false;
+        try (Pages pages = new Pages(files)) {
+            while (pages.next()) {
+                File file = pages.file();
+                String key;
+                long size;
+                long modified;
+                String hash;
+                byte[] content = null;  // content of an archive member
+                Record old;
+                if (file != null) {
+                    key = key(file);
+                    old = records.get(key);
+                    size = file.length();
+                    modified = file.lastModified();
+                    if (old != null && old.size == size && old.modified == modified) {
+                        hash = old.hash;
+                    } else {
+                        try {
+                            hash = hash(file);
+                        } catch (IOException ex) {
+                            hash = null; // unreadable: never reused
+                        }
+                    }
+                } else {
+                    // archive members are always read and hashed
+                    key = key(pages.input()) + "!" + pages.member();
+                    old = records.get(key);
+                    modified = 0;
+                    try {
+                        content = pages.read();
+                        size = content.length;
+                        hash = hex(sha1().digest(content));
+                    } catch (IOException ex) {
+                        size = 0;
+                        hash = null;
+                    }
+                }
+                keys.add(key);
+                sink.startFile(pages.id());
+                if (old != null && hash != null && old.hash.equals(hash)
+                        && old.in.equals(last) && replay(key, sink)) {
+                    last = old.out;
+                    ++reused;
+                } else {
+                    Recorder recorder = new Recorder(sink);
+                    String in = last;
+                    if (content == null) {
+                        last = Split.process(pages, last, recorder);
+                    } else {
+                        List<String> heads;
+                        try {
+                            heads = Split.headers(new ByteArrayInputStream(content));
+                        } catch (IOException ex) {
+                            heads = null;
+                            recorder.error("Wrong file");
+                        }
+                        if (heads != null) {
+                            last = Split.split(heads, last, recorder);
+                        }
+                    }
+                    if (hash != null) {
+                        store(key, recorder.lines);
+                        checkpoint(key, new Record(size, modified, hash, in, last));
+                    }
+                    ++processed;
+                }
+                sink.endFile();
+            }
+            complete = true;
+        } finally {
+            compact(complete ? keys : null);
+        }
+        return last;
+    }
+
+    /**
+     * @return the number of files whose stored entries were replayed in the
+     * last run
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    /**
+     * @return the number of files processed in the last run
+     */
+    public int getProcessed() {
+        return processed;
+    }
+}
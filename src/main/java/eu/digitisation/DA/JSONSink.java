@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * JSON lines output: one JSON object per entry (or per file which could not
+ * be processed) containing the file identifier, the tag, the text and the
+ * optional reason, priority, suggestion and body.
+ *
+ * @author R.C.C.
+ */
+public class JSONSink extends WriterSink {
+
+    private String file;  // current file identifier
+
+    public JSONSink(Writer writer, int batch) {
+        super(writer, batch);
+    }
+
+    public JSONSink(OutputStream os, int batch) {
+        super(os, Charset.forName("UTF-8"), batch);
+    }
+
+    public JSONSink(WritableByteChannel channel, int batch) {
+        super(channel, Charset.forName("UTF-8"), batch);
+    }
+
+    public JSONSink(File file, int batch) throws IOException {
+        super(file, Charset.forName("UTF-8"), batch);
+    }
+
+    /**
+     * Append a JSON string literal to a builder
+     */
+    static StringBuilder quote(StringBuilder builder, String s) {
+        builder.append('"');
+        for (int n = 0; n < s.length(); ++n) {
+            char c = s.charAt(n);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"');
+    }
+
+    /**
+     * Append a field to a JSON object under construction
+     */
+    private static void field(StringBuilder builder, String name, String value) {
+        if (value != null) {
+            builder.append(builder.length() > 1 ? "," : "");
+            quote(builder, name).append(':');
+            quote(builder, value);
+        }
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    @Override
+    public void startFile(String id) {
+        file = id;
+    }
+
+    @Override
+    public void entry(Entry entry) throws IOException {
+        StringBuilder builder = new StringBuilder("{");
+        field(builder, "file", file);
+        field(builder, "tag", entry.getTag().getName());
+        field(builder, "text", entry.getText());
+        field(builder, "reason", entry.getReason());
+        field(builder, "priority", entry.getPriority());
+        field(builder, "suggestion", entry.getSuggestion());
+        field(builder, "body", entry.getBody());
+        println(builder.append('}').toString());
+        count();
+    }
+
+    @Override
+    public void error(String message) throws IOException {
+        StringBuilder builder = new StringBuilder("{");
+        field(builder, "file", file);
+        field(builder, "error", message);
+        println(builder.append('}').toString());
+    }
+
+    @Override
+    public void endFile() {
+        file = null;
+    }
+
+    @Override
+    public void end() throws IOException {
+        flush();
+    }
+}
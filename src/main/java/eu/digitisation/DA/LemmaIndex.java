@@ -0,0 +1,576 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-disk index of lemmas sorted by the old Spanish collation, mapping every
+ * lemma to the file, page image and region where it was found. The index
+ * file is memory-mapped when opened, so opening is immediate whatever its
+ * size and lookups only touch the pages of the file they need: a binary
+ * search over the block table followed by a scan of at most one block, that
+ * is, O(log n) time and no heap beyond the results. An open index can be
+ * queried from concurrent threads.
+ * <p>
+ * Lemmas are stored as collation sort keys (OldSpanishComparator), sorted
+ * and front-coded in blocks of 16: every key is stored as the length of the
+ * prefix it shares with the previous one plus the remaining bytes, except
+ * for the first key in a block, which is stored in full so that blocks can
+ * be searched independently. Lookups compare the primary part of the keys,
+ * so they ignore case and accents. The key of an entry is its first word
+ * (with the corrections applied by Split: ñ read as Ñ and, in Itypo
+ * entries, l read as I).</p>
+ * <p>
+ * Layout: a header (magic number, version, number of records, block size,
+ * number of blocks, number of strings and the offsets of the block table and
+ * string table), the records, the block table (the offset of every block)
+ * and the string table (file and image names, shared by all records).
+ * Integers in records are variable-length (7 bits per byte).</p>
+ *
+ * @author R.C.C.
+ */
+public class LemmaIndex {
+
+    private final static int MAGIC = 0x44414958;  // DAIX
+    private final static int VERSION = 1;
+    private final static int HEADER = 32;         // header size in bytes
+    private final static int BLOCK = 16;          // records per block
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Tags of the entries indexed by default
+     */
+    public final static Set<Entry.Tag> ACCEPTED
+            = Collections.unmodifiableSet(EnumSet.of(Entry.Tag.ENTRY, Entry.Tag.SUBENTRY));
+
+    private final ByteBuffer buffer;  // the mapped file (absolute reads only)
+    private final OldSpanishComparator collator;
+    private final int count;          // number of records
+    private final int blocks;         // number of blocks
+    private final int blockTable;     // offset of block table
+    private final int stringTable;    // offset of string table
+
+    /**
+     * A lemma found in the index
+     */
+    public static class Hit {
+
+        private final String text;
+        private final Entry.Tag tag;
+        private final String file;
+        private final String image;
+        private final String region;
+
+        Hit(String text, Entry.Tag tag, String file, String image, String region) {
+            this.text = text;
+            this.tag = tag;
+            this.file = file;
+            this.image = image;
+            this.region = region;
+        }
+
+        /**
+         * @return the text of the entry
+         */
+        public String getText() {
+            return text;
+        }
+
+        public Entry.Tag getTag() {
+            return tag;
+        }
+
+        /**
+         * @return the identifier of the file containing the entry
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * @return the page image or null if unknown
+         */
+        public String getImage() {
+            return image;
+        }
+
+        /**
+         * @return the TextRegion identifier or null if unknown
+         */
+        public String getRegion() {
+            return region;
+        }
+
+        @Override
+        public String toString() {
+            return tag.getName() + ": " + text + " (" + file + ", " + image
+                    + ", " + region + ")";
+        }
+    }
+
+    /**
+     * Open an index (the file is mapped but not read)
+     *
+     * @param file an index file created by LemmaIndex.Writer
+     * @throws IOException if the file cannot be mapped or is not an index
+     */
+    public LemmaIndex(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a lemma index");
+        } else if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported lemma index version " + buffer.getInt(4));
+        }
+        collator = OldSpanishComparator.getInstance();
+        count = buffer.getInt(8);
+        blocks = buffer.getInt(16);
+        blockTable = buffer.getInt(24);
+        stringTable = buffer.getInt(28);
+    }
+
+    /**
+     * @return the number of lemmas in the index
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The key of an entry
+     *
+     * @param entry an entry
+     * @return the lemma under which the entry is indexed
+     */
+    static String lemma(Entry entry) {
+        String word = SplitEngine.firstWord(entry.getText()).replace('ñ', 'Ñ');
+        if (entry.getTag() == Entry.Tag.ITYPO) {
+            word = word.replace('l', 'I');
+        }
+        return word.isEmpty() ? entry.getText() : word;
+    }
+
+    /**
+     * Position in the mapped file while decoding records
+     */
+    private static class Cursor {
+
+        int position;
+        int record;  // number of the record at position
+        byte[] key = new byte[64];
+        int length;  // length of key
+
+        Cursor(int position, int record) {
+            this.position = position;
+            this.record = record;
+        }
+    }
+
+    private int varint(Cursor cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(cursor.position++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private String string(Cursor cursor, int length) {
+        byte[] bytes = new byte[length];
+        for (int n = 0; n < length; ++n) {
+            bytes[n] = buffer.get(cursor.position + n);
+        }
+        cursor.position += length;
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * @param n the number of a string in the string table
+     * @return the string
+     */
+    private String string(int n) {
+        Cursor cursor = new Cursor(buffer.getInt(stringTable + 4 * n), 0);
+        return string(cursor, varint(cursor));
+    }
+
+    /**
+     * Read the key of the record at the cursor (and leave the cursor at the
+     * rest of the record)
+     */
+    private void readKey(Cursor cursor) {
+        int shared = varint(cursor);
+        int suffix = varint(cursor);
+        cursor.length = shared + suffix;
+        if (cursor.key.length < cursor.length) {
+            cursor.key = Arrays.copyOf(cursor.key, 2 * cursor.length);
+        }
+        for (int n = 0; n < suffix; ++n) {
+            cursor.key[shared + n] = buffer.get(cursor.position + n);
+        }
+        cursor.position += suffix;
+    }
+
+    /**
+     * Decode the rest of the record at the cursor
+     */
+    private Hit readHit(Cursor cursor) {
+        Entry.Tag tag = Entry.Tag.values()[buffer.get(cursor.position++)];
+        String text = string(cursor, varint(cursor));
+        String file = string(varint(cursor));
+        int image = varint(cursor);
+        int region = varint(cursor);
+        return new Hit(text, tag, file, image > 0 ? string(image - 1) : null,
+                region > 0 ? string(cursor, region - 1) : null);
+    }
+
+    /**
+     * Skip the rest of the record at the cursor
+     */
+    private void skipHit(Cursor cursor) {
+        ++cursor.position;
+        int text = varint(cursor);
+        cursor.position += text;
+        varint(cursor);
+        varint(cursor);
+        int region = varint(cursor);
+        cursor.position += region > 0 ? region - 1 : 0;
+    }
+
+    /**
+     * Compare the key at the cursor with another key
+     */
+    private static int compare(Cursor cursor, byte[] key) {
+        int length = Math.min(cursor.length, key.length);
+        for (int n = 0; n < length; ++n) {
+            int diff = (cursor.key[n] & 0xFF) - (key[n] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return cursor.length - key.length;
+    }
+
+    /**
+     * @return true if the key at the cursor starts with the given bytes
+     */
+    private static boolean startsWith(Cursor cursor, byte[] prefix) {
+        if (cursor.length < prefix.length) {
+            return false;
+        }
+        for (int n = 0; n < prefix.length; ++n) {
+            if (cursor.key[n] != prefix[n]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a cursor at the first record whose key is not smaller than the
+     * given key (with the key read) or null if there is none
+     */
+    private Cursor lowerBound(byte[] key) {
+        // last block whose first key is smaller than key
+        int low = 0;
+        int high = blocks - 1;
+        int block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Cursor first = new Cursor(buffer.getInt(blockTable + 4 * mid), mid * BLOCK);
+            readKey(first);
+            if (compare(first, key) < 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Cursor cursor = new Cursor(blocks > 0
+                ? buffer.getInt(blockTable + 4 * block) : 0, block * BLOCK);
+        while (cursor.record < count) {
+            readKey(cursor);
+            if (compare(cursor, key) >= 0) {
+                return cursor;
+            }
+            skipHit(cursor);
+            ++cursor.record;
+        }
+        return null;
+    }
+
+    /**
+     * Collect records from the cursor while their keys start with a prefix
+     * or are smaller than an upper bound
+     */
+    private List<Hit> collect(Cursor cursor, byte[] prefix, byte[] upper, int limit) {
+        List<Hit> hits = new ArrayList<>();
+        while (cursor != null && hits.size() < limit) {
+            if ((prefix != null && !startsWith(cursor, prefix))
+                    || (upper != null && compare(cursor, upper) >= 0)) {
+                break;
+            }
+            hits.add(readHit(cursor));
+            if (++cursor.record < count) {
+                readKey(cursor);
+            } else {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @param lemma a word
+     * @return the entries indexed under the word (ignoring case and accents)
+     */
+    public List<Hit> exact(String lemma) {
+        byte[] primary = collator.getPrimaryKey(lemma);
+        byte[] key = Arrays.copyOf(primary, primary.length + 2); // end of primary
+        return collect(lowerBound(key), key, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param prefix the beginning of a word
+     * @param limit the maximum number of entries returned
+     * @return the first entries indexed under words starting with the prefix
+     * (ignoring case and accents), in alphabetical order
+     */
+    public List<Hit> prefix(String prefix, int limit) {
+        byte[] key = collator.getPrimaryKey(prefix);
+        return collect(lowerBound(key), key, null, limit);
+    }
+
+    /**
+     * @param from the lower bound (inclusive)
+     * @param to the upper bound (exclusive) or null for no upper bound
+     * @param limit the maximum number of entries returned
+     * @return the first entries indexed under words between the two bounds
+     * in the alphabetical order (ignoring case and accents)
+     */
+    public List<Hit> range(String from, String to, int limit) {
+        byte[] upper = to == null ? null : collator.getPrimaryKey(to);
+        return collect(lowerBound(collator.getPrimaryKey(from)), null, upper, limit);
+    }
+
+    /**
+     * Builder of index files. Entries are kept in memory until the index is
+     * written.
+     */
+    public static class Writer {
+
+        private final OldSpanishComparator collator;
+        private final Set<Entry.Tag> tags;
+        private final List<Record> records;
+        private final Map<String, Integer> index;  // position in strings
+        private final List<String> strings;
+
+        private static class Record {
+
+            final byte[] key;
+            final Entry.Tag tag;
+            final String text;
+            final int file;
+            final int image;    // string number + 1 (0 if none)
+            final String region;
+
+            Record(byte[] key, Entry.Tag tag, String text, int file, int image,
+                    String region) {
+                this.key = key;
+                this.tag = tag;
+                this.text = text;
+                this.file = file;
+                this.image = image;
+                this.region = region;
+            }
+        }
+
+        /**
+         * Create a writer indexing entries with the given tags
+         *
+         * @param tags the tags of the entries to be indexed
+         */
+        public Writer(Set<Entry.Tag> tags) {
+            this.collator = OldSpanishComparator.getInstance();
+            this.tags = tags;
+            this.records = new ArrayList<>();
+            this.index = new HashMap<>();
+            this.strings = new ArrayList<>();
+        }
+
+        /**
+         * Create a writer indexing entries and subentries
+         */
+        public Writer() {
+            this(ACCEPTED);
+        }
+
+        private int intern(String s) {
+            Integer n = index.get(s);
+            if (n == null) {
+                n = strings.size();
+                index.put(s, n);
+                strings.add(s);
+            }
+            return n;
+        }
+
+        /**
+         * Add an entry (ignored unless its tag is indexed)
+         *
+         * @param entry an entry with its file identifier
+         * @param image the page image (may be null)
+         */
+        public void add(Entry entry, String image) {
+            if (tags.contains(entry.getTag())) {
+                String file = entry.getFile() == null ? "" : entry.getFile();
+                records.add(new Record(collator.getSortKey(lemma(entry)),
+                        entry.getTag(), entry.getText(), intern(file),
+                        image == null ? 0 : intern(image) + 1, entry.getRegion()));
+            }
+        }
+
+        /**
+         * @return the number of entries added
+         */
+        public int size() {
+            return records.size();
+        }
+
+        private static void varint(OutputStream out, int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private static void string(OutputStream out, String s) throws IOException {
+            byte[] bytes = s.getBytes(UTF8);
+            varint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        /**
+         * Write the index (the file is replaced atomically)
+         *
+         * @param file the index file
+         * @throws IOException
+         */
+        public void write(File file) throws IOException {
+            List<Record> sorted = new ArrayList<>(records);
+            Collections.sort(sorted, new Comparator<Record>() { // stable
+                @Override
+                public int compare(Record first, Record second) {
+                    return OldSpanishComparator.compareKeys(first.key, second.key);
+                }
+            });
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream(1 << 16);
+            int blocks = (sorted.size() + BLOCK - 1) / BLOCK;
+            int[] offsets = new int[blocks];
+            byte[] previous = new byte[0];
+            for (int n = 0; n < sorted.size(); ++n) {
+                Record record = sorted.get(n);
+                int shared = 0;
+                if (n % BLOCK == 0) {
+                    offsets[n / BLOCK] = HEADER + data.size();
+                } else {
+                    int length = Math.min(previous.length, record.key.length);
+                    while (shared < length && previous[shared] == record.key[shared]) {
+                        ++shared;
+                    }
+                }
+                varint(data, shared);
+                varint(data, record.key.length - shared);
+                data.write(record.key, shared, record.key.length - shared);
+                data.write(record.tag.ordinal());
+                string(data, record.text);
+                varint(data, record.file);
+                varint(data, record.image);
+                if (record.region == null) {
+                    varint(data, 0);
+                } else {
+                    byte[] bytes = record.region.getBytes(UTF8);
+                    varint(data, bytes.length + 1);
+                    data.write(bytes);
+                }
+                previous = record.key;
+            }
+
+            int blockTable = HEADER + data.size();
+            int stringTable = blockTable + 4 * blocks;
+            ByteArrayOutputStream pool = new ByteArrayOutputStream();
+            int[] positions = new int[strings.size()];
+            int base = stringTable + 4 * strings.size();
+            for (int n = 0; n < strings.size(); ++n) {
+                positions[n] = base + pool.size();
+                string(pool, strings.get(n));
+            }
+
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sorted.size());
+                out.writeInt(BLOCK);
+                out.writeInt(blocks);
+                out.writeInt(strings.size());
+                out.writeInt(blockTable);
+                out.writeInt(stringTable);
+                data.writeTo(out);
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+                for (int position : positions) {
+                    out.writeInt(position);
+                }
+                pool.writeTo(out);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
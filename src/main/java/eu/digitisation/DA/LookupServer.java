@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP service answering lookups over the lemmas in a LemmaIndex, built
+ * on the HTTP server included in the JDK. Requests (GET, UTF-8 parameters):
+ * <ul>
+ * <li>/lookup?q=word: the entries indexed under the word</li>
+ * <li>/prefix?q=prefix[&amp;limit=n]: entries under words starting with the
+ * prefix</li>
+ * <li>/range?from=word[&amp;to=word][&amp;limit=n]: entries under words in
+ * the range [from, to) of the collation order</li>
+ * </ul>
+ * Lookups ignore case and accents. The response is a JSON object with the
+ * list of hits (text, tag, file, image and region). Requests are served by a
+ * fixed pool of threads sharing the index, and the responses to the most
+ * recent distinct queries are kept in a bounded LRU cache.
+ * <p>
+ * Without TCP_NODELAY, the separate writes of headers and body meet delayed
+ * acknowledgements and every response takes about 40 ms: servers should be
+ * run with -Dsun.net.httpserver.nodelay=true, which main sets unless it is
+ * given.</p>
+ *
+ * @author R.C.C.
+ */
+public class LookupServer {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static int LIMIT = 100;  // default maximum number of hits
+
+    private final LemmaIndex index;
+    private final Cache cache;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * Bounded cache of responses with least-recently-used eviction
+     */
+    static class Cache {
+
+        private final Map<String, byte[]> map;
+        private long hits;
+        private long misses;
+
+        Cache(final int capacity) {
+            map = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized byte[] get(String key) {
+            byte[] value = map.get(key);
+            if (value == null) {
+                ++misses;
+            } else {
+                ++hits;
+            }
+            return value;
+        }
+
+        synchronized void put(String key, byte[] value) {
+            map.put(key, value);
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized long getHits() {
+            return hits;
+        }
+
+        synchronized long getMisses() {
+            return misses;
+        }
+    }
+
+    /**
+     * Create a server (not started)
+     *
+     * @param index the lemma index
+     * @param port the port (0 for any free port)
+     * @param threads the number of threads serving requests
+     * @param capacity the maximum number of responses in the cache
+     * @throws IOException if the port cannot be bound
+     */
+    public LookupServer(LemmaIndex index, int port, int threads, int capacity)
+            throws IOException {
+        this.index = index;
+        this.cache = new Cache(capacity);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 256);
+        this.executor = Executors.newFixedThreadPool(threads);
+        HttpHandler handler = new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        };
+        server.createContext("/lookup", handler);
+        server.createContext("/prefix", handler);
+        server.createContext("/range", handler);
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop the server, waiting at most the given time for current requests
+     *
+     * @param seconds the maximum delay
+     */
+    public void stop(int seconds) {
+        server.stop(seconds);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server listens to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the number of requests received
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * Parse the parameters in a query string
+     */
+    private static Map<String, String> parameters(String query)
+            throws UnsupportedEncodingException {
+        Map<String, String> map = new HashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int n = pair.indexOf('=');
+                if (n > 0) {
+                    map.put(URLDecoder.decode(pair.substring(0, n), "UTF-8"),
+                            URLDecoder.decode(pair.substring(n + 1), "UTF-8"));
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * @return the hits in JSON format
+     */
+    static String json(List<LemmaIndex.Hit> hits) {
+        StringBuilder builder = new StringBuilder("{\"hits\":[");
+        for (int n = 0; n < hits.size(); ++n) {
+            LemmaIndex.Hit hit = hits.get(n);
+            builder.append(n > 0 ? ",{" : "{");
+            JSONSink.quote(builder, "text").append(':');
+            JSONSink.quote(builder, hit.getText()).append(',');
+            JSONSink.quote(builder, "tag").append(':');
+            JSONSink.quote(builder, hit.getTag().getName()).append(',');
+            JSONSink.quote(builder, "file").append(':');
+            JSONSink.quote(builder, hit.getFile());
+            if (hit.getImage() != null) {
+                builder.append(',');
+                JSONSink.quote(builder, "image").append(':');
+                JSONSink.quote(builder, hit.getImage());
+            }
+            if (hit.getRegion() != null) {
+                builder.append(',');
+                JSONSink.quote(builder, "region").append(':');
+                JSONSink.quote(builder, hit.getRegion());
+            }
+            builder.append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * Answer a query
+     *
+     * @param operation lookup, prefix or range
+     * @param parameters the query parameters
+     * @return the response or null if the query is not valid
+     */
+    String answer(String operation, Map<String, String> parameters) {
+        int limit = LIMIT;
+        if (parameters.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(parameters.get("limit"));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+        switch (operation) {
+            case "/lookup":
+                return parameters.containsKey("q")
+                        ? json(index.exact(parameters.get("q"))) : null;
+            case "/prefix":
+                return parameters.containsKey("q")
+                        ? json(index.prefix(parameters.get("q"), limit)) : null;
+            case "/range":
+                return parameters.containsKey("from")
+                        ? json(index.range(parameters.get("from"),
+                                        parameters.get("to"), limit)) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Serve a request
+     */
+    private void serve(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            String key = path + '?' + query;
+            byte[] body = null;
+            int status = 200;
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                status = 405;
+                body = "{\"error\":\"Method not allowed\"}".getBytes(UTF8);
+                exchange.getResponseHeaders().set("Allow", "GET");
+            } else if ((body = cache.get(key)) == null) {
+                String response = answer(path, parameters(query));
+                if (response == null) {
+                    status = 400;
+                    body = "{\"error\":\"Wrong request\"}".getBytes(UTF8);
+                } else {
+                    body = response.getBytes(UTF8);
+                    cache.put(key, body);
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type",
+                    "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Build an index with all the entries in a collection of files
+     *
+     * @param files the input files (or archives, see Pages)
+     * @param file the index file
+     * @throws IOException
+     */
+    static void build(List<File> files, File file) throws IOException {
+        SplitEngine engine = SplitEngine.getDefault();
+        LemmaIndex.Writer writer = new LemmaIndex.Writer(EnumSet.allOf(Entry.Tag.class));
+        String last = "";
+        try (Pages pages = new Pages(files)) {
+            while (pages.next()) {
+                try {
+                    SplitEngine.Result result = engine.split(pages.id(), pages.open(), last);
+                    for (Entry entry : result.getEntries()) {
+                        writer.add(entry, result.getImage());
+                    }
+                    last = result.getLast();
+                } catch (IOException ex) {
+                    System.err.println("Wrong file " + pages.id());
+                }
+            }
+        }
+        writer.write(file);
+    }
+
+    /**
+     * Start a lookup server
+     *
+     * @param args an index file (.idx) or the XML files (or archives) to be
+     * indexed, optionally preceded by the options "-p port" (default 8080),
+     * "-t threads" (default 16) and "-c size" (number of cached responses,
+     * default 10000)
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int threads = 16;
+        int capacity = 10000;
+        int first = 0;
+        while (first + 1 < args.length && args[first].startsWith("-")) {
+            if (args[first].equals("-p")) {
+                port = Integer.parseInt(args[first + 1]);
+            } else if (args[first].equals("-t")) {
+                threads = Integer.parseInt(args[first + 1]);
+            } else if (args[first].equals("-c")) {
+                capacity = Integer.parseInt(args[first + 1]);
+            } else {
+                break;
+            }
+            first += 2;
+        }
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        if (args.length == first) {
+            System.err.println("Usage: LookupServer [-p port] [-t threads] [-c cachesize] index.idx | file1.xml file2.xml ...");
+        } else {
+            File file;
+            if (args.length == first + 1 && args[first].endsWith(".idx")) {
+                file = new File(args[first]);
+            } else {
+                List<File> files = new ArrayList<>();
+                for (int n = first; n < args.length; ++n) {
+                    files.add(new File(args[n]));
+                }
+                file = File.createTempFile("lemmas", ".idx");
+                file.deleteOnExit();
+                build(files, file);
+            }
+            LemmaIndex index = new LemmaIndex(file);
+            LookupServer server = new LookupServer(index, port, threads, capacity);
+            server.start();
+            System.err.println(index.size() + " lemmas served at http://localhost:"
+                    + server.getPort() + "/");
+        }
+    }
+}
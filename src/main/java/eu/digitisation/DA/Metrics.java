@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timing and classification statistics of a run: for every processing stage,
+ * a histogram of the time spent per page, and the number of entries of every
+ * tag found in every file. Histograms have exponential buckets (powers of two
+ * of one microsecond), so that recording a time costs a couple of atomic
+ * increments. All methods are thread-safe.
+ * <p>
+ * The statistics are exported as a JSON summary or in the Prometheus text
+ * exposition format.</p>
+ *
+ * @author R.C.C.
+ */
+public class Metrics {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static int BUCKETS = 28;  // the last one is unbounded
+    private final static int TAGS = Entry.Tag.values().length;
+
+    /**
+     * The processing stages of a page
+     */
+    public enum Stage {
+
+        PARSE("parse"), // XML parsing (and region selection if streaming)
+        SELECT("select"), // selection of the regions with entries
+        REORDER("reorder"), // sort of regions in reading order
+        HEADER("header"), // character translation and header extraction
+        CLASSIFY("classify"), // classification of the headers
+        OUTPUT("output");     // writing of the entries
+
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Histogram of durations
+     */
+    static class Histogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();  // nanoseconds
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * @param nanos a duration in nanoseconds
+         * @return the bucket of the duration: the first n such that the
+         * duration does not exceed 2^n microseconds
+         */
+        static int bucket(long nanos) {
+            long micros = nanos / 1000 + (nanos % 1000 > 0 ? 1 : 0);
+            int n = micros <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+            return Math.min(n, BUCKETS - 1);
+        }
+
+        /**
+         * @return the upper bound of a bucket in seconds (infinite for the
+         * last one)
+         */
+        static double bound(int n) {
+            return n < BUCKETS - 1 ? (1L << n) * 1e-6 : Double.POSITIVE_INFINITY;
+        }
+
+        void add(long nanos) {
+            buckets.incrementAndGet(bucket(nanos));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            long old;
+            while (nanos > (old = max.get()) && !max.compareAndSet(old, nanos)) {
+            }
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the total time in seconds
+         */
+        double getSum() {
+            return sum.get() * 1e-9;
+        }
+
+        /**
+         * @return the maximum time in seconds
+         */
+        double getMax() {
+            return max.get() * 1e-9;
+        }
+
+        long getBucket(int n) {
+            return buckets.get(n);
+        }
+
+        /**
+         * @param q a quantile (between 0 and 1)
+         * @return an upper bound of the quantile in seconds: the bound of the
+         * bucket containing it (or the maximum, if smaller)
+         */
+        double quantile(double q) {
+            long total = count.get();
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int n = 0; n < BUCKETS; ++n) {
+                seen += buckets.get(n);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(bound(n), getMax());
+                }
+            }
+            return 0;
+        }
+    }
+
+    private final long start = System.nanoTime();
+    private final Histogram[] histograms = new Histogram[Stage.values().length];
+    private final AtomicLongArray tags = new AtomicLongArray(TAGS);
+    private final AtomicLong errors = new AtomicLong();
+    private final Map<String, long[]> files = new LinkedHashMap<>(); // counts per tag, then errors
+
+    public Metrics() {
+        for (int n = 0; n < histograms.length; ++n) {
+            histograms[n] = new Histogram();
+        }
+    }
+
+    /**
+     * Record the time spent by a page in a stage
+     *
+     * @param stage the stage
+     * @param nanos the duration in nanoseconds
+     */
+    public void add(Stage stage, long nanos) {
+        histograms[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * Record the time spent by a page in a stage which started at the given
+     * time and ends now
+     *
+     * @param stage the stage
+     * @param start the start of the stage (System.nanoTime())
+     * @return the current time (the start of the following stage)
+     */
+    public long record(Stage stage, long start) {
+        long now = System.nanoTime();
+        add(stage, now - start);
+        return now;
+    }
+
+    Histogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * @param tag a tag
+     * @return the number of entries with this tag
+     */
+    public long getCount(Entry.Tag tag) {
+        return tags.get(tag.ordinal());
+    }
+
+    /**
+     * @return the number of files which could not be processed
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return the number of files processed
+     */
+    public synchronized int getFiles() {
+        return files.size();
+    }
+
+    private synchronized long[] counts(String file) {
+        long[] counts = files.get(file);
+        if (counts == null) {
+            counts = new long[TAGS + 1];
+            files.put(file, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * A sink counting the entries of every tag in every file and forwarding
+     * the events to another sink
+     */
+    private class Counter implements EntrySink {
+
+        private final EntrySink sink;
+        private long[] counts;  // of current file
+
+        Counter(EntrySink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            sink.begin();
+        }
+
+        @Override
+        public void startFile(String id) throws IOException {
+            counts = counts(id == null ? "" : id);
+            sink.startFile(id);
+        }
+
+        @Override
+        public void entry(Entry entry) throws IOException {
+            tags.incrementAndGet(entry.getTag().ordinal());
+            if (counts != null) {
+                synchronized (Metrics.this) {
+                    ++counts[entry.getTag().ordinal()];
+                }
+            }
+            sink.entry(entry);
+        }
+
+        @Override
+        public void error(String message) throws IOException {
+            errors.incrementAndGet();
+            if (counts != null) {
+                synchronized (Metrics.this) {
+                    ++counts[TAGS];
+                }
+            }
+            sink.error(message);
+        }
+
+        @Override
+        public void endFile() throws IOException {
+            counts = null;
+            sink.endFile();
+        }
+
+        @Override
+        public void end() throws IOException {
+            sink.end();
+        }
+
+        @Override
+        public void close() throws IOException {
+            sink.close();
+        }
+    }
+
+    /**
+     * @param sink a sink
+     * @return a sink counting the entries and errors in every file and
+     * forwarding all events to the given one
+     */
+    public EntrySink counter(EntrySink sink) {
+        return new Counter(sink);
+    }
+
+    /**
+     * A sink measuring the time spent in writing entries
+     */
+    static class Timer implements EntrySink {
+
+        private final EntrySink sink;
+        private long nanos;
+
+        Timer(EntrySink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * @return the time spent in the forwarded events (nanoseconds)
+         */
+        long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            sink.begin();
+        }
+
+        @Override
+        public void startFile(String id) throws IOException {
+            sink.startFile(id);
+        }
+
+        @Override
+        public void entry(Entry entry) throws IOException {
+            long t = System.nanoTime();
+            sink.entry(entry);
+            nanos += System.nanoTime() - t;
+        }
+
+        @Override
+        public void error(String message) throws IOException {
+            sink.error(message);
+        }
+
+        @Override
+        public void endFile() throws IOException {
+            sink.endFile();
+        }
+
+        @Override
+        public void end() throws IOException {
+            sink.end();
+        }
+
+        @Override
+        public void close() throws IOException {
+            sink.close();
+        }
+    }
+
+    private static String number(double x) {
+        if (Double.isInfinite(x)) {
+            return "+Inf";
+        } else if (x == Math.rint(x) && Math.abs(x) < 1e15) {
+            return String.valueOf((long) x);
+        } else {
+            return String.format(Locale.ROOT, "%.9g", x).replaceFirst("\\.?0+(e|$)", "$1");
+        }
+    }
+
+    /**
+     * @return the statistics as a JSON object
+     */
+    public synchronized String toJSON() {
+        StringBuilder builder = new StringBuilder("{");
+        builder.append("\"elapsed\":").append(number((System.nanoTime() - start) * 1e-9));
+        builder.append(",\"files\":").append(files.size());
+        builder.append(",\"errors\":").append(errors.get());
+        builder.append(",\"tags\":{");
+        for (Entry.Tag tag : Entry.Tag.values()) {
+            builder.append(tag.ordinal() > 0 ? "," : "");
+            JSONSink.quote(builder, tag.getName()).append(':').append(getCount(tag));
+        }
+        builder.append("},\"stages\":{");
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = getHistogram(stage);
+            builder.append(stage.ordinal() > 0 ? "," : "");
+            JSONSink.quote(builder, stage.getName()).append(":{");
+            builder.append("\"count\":").append(histogram.getCount());
+            builder.append(",\"sum\":").append(number(histogram.getSum()));
+            builder.append(",\"max\":").append(number(histogram.getMax()));
+            builder.append(",\"p50\":").append(number(histogram.quantile(0.5)));
+            builder.append(",\"p90\":").append(number(histogram.quantile(0.9)));
+            builder.append(",\"p99\":").append(number(histogram.quantile(0.99)));
+            builder.append(",\"buckets\":[");
+            for (int n = 0; n < BUCKETS; ++n) {
+                builder.append(n > 0 ? "," : "").append(histogram.getBucket(n));
+            }
+            builder.append("]}");
+        }
+        builder.append("},\"perFile\":[");
+        boolean first = true;
+        for (Map.Entry<String, long[]> item : files.entrySet()) {
+            builder.append(first ? "{" : ",{");
+            JSONSink.quote(builder, "file").append(':');
+            JSONSink.quote(builder, item.getKey());
+            for (Entry.Tag tag : Entry.Tag.values()) {
+                builder.append(',');
+                JSONSink.quote(builder, tag.getName()).append(':')
+                        .append(item.getValue()[tag.ordinal()]);
+            }
+            builder.append(",\"errors\":").append(item.getValue()[TAGS]).append('}');
+            first = false;
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * Escape a Prometheus label value
+     */
+    private static String label(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * @return the statistics in the Prometheus text exposition format
+     */
+    public synchronized String toPrometheus() {
+        List<String> lines = new ArrayList<>();
+        lines.add("# HELP split_stage_seconds Time spent per page in every processing stage.");
+        lines.add("# TYPE split_stage_seconds histogram");
+        for (Stage stage : Stage.values()) {
+            Histogram histogram = getHistogram(stage);
+            String name = stage.getName();
+            long cumulative = 0;
+            for (int n = 0; n < BUCKETS; ++n) {
+                cumulative += histogram.getBucket(n);
+                lines.add("split_stage_seconds_bucket{stage=\"" + name + "\",le=\""
+                        + number(Histogram.bound(n)) + "\"} " + cumulative);
+            }
+            lines.add("split_stage_seconds_sum{stage=\"" + name + "\"} "
+                    + number(histogram.getSum()));
+            lines.add("split_stage_seconds_count{stage=\"" + name + "\"} "
+                    + histogram.getCount());
+        }
+        lines.add("# HELP split_entries_total Entries found, by tag.");
+        lines.add("# TYPE split_entries_total counter");
+        for (Entry.Tag tag : Entry.Tag.values()) {
+            lines.add("split_entries_total{tag=\"" + tag.getName() + "\"} " + getCount(tag));
+        }
+        lines.add("# HELP split_files_total Files processed.");
+        lines.add("# TYPE split_files_total counter");
+        lines.add("split_files_total " + files.size());
+        lines.add("# HELP split_errors_total Files which could not be processed.");
+        lines.add("# TYPE split_errors_total counter");
+        lines.add("split_errors_total " + errors.get());
+        lines.add("# HELP split_file_entries_total Entries found in every file, by tag.");
+        lines.add("# TYPE split_file_entries_total counter");
+        for (Map.Entry<String, long[]> item : files.entrySet()) {
+            String file = label(item.getKey());
+            for (Entry.Tag tag : Entry.Tag.values()) {
+                long count = item.getValue()[tag.ordinal()];
+                if (count > 0) {
+                    lines.add("split_file_entries_total{file=\"" + file + "\",tag=\""
+                            + tag.getName() + "\"} " + count);
+                }
+            }
+        }
+        lines.add("# HELP split_run_seconds Duration of the run.");
+        lines.add("# TYPE split_run_seconds gauge");
+        lines.add("split_run_seconds " + number((System.nanoTime() - start) * 1e-9));
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write the statistics to a JSON file (base.json) and a Prometheus text
+     * file (base.prom)
+     *
+     * @param base the file name without extension
+     * @throws IOException
+     */
+    public void write(String base) throws IOException {
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(base + ".json")), UTF8)) {
+            writer.write(toJSON());
+            writer.write('\n');
+        }
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(base + ".prom")), UTF8)) {
+            writer.write(toPrometheus());
+        }
+    }
+}
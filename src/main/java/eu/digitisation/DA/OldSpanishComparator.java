@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.text.CollationElementIterator;
+import java.text.RuleBasedCollator;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Compiled version of the OldSpanishCollator: the collation elements defined
+ * by the rules (including the ch and ll contractions) are stored in primitive
+ * tables and strings are compared with the same algorithm used by
+ * RuleBasedCollator (tertiary strength, canonical decomposition), so the
+ * ordering is identical. Instances are immutable and can be shared by
+ * concurrent threads; comparisons allocate no memory (only a per-thread
+ * buffer which grows with the longest string seen).
+ * <p>
+ * Strings containing combining marks, surrogates or characters whose
+ * decomposition interacts with a contraction cannot be handled one character
+ * at a time; their collation elements are obtained from the
+ * RuleBasedCollator itself.</p>
+ * <p>
+ * Sort keys are byte arrays (primary, secondary and tertiary weights) whose
+ * unsigned lexicographic order is the order of the strings.</p>
+ *
+ * @author R.C.C
+ */
+public class OldSpanishComparator implements Comparator<String> {
+
+    private final static int NULLORDER = CollationElementIterator.NULLORDER;
+    private final static int UNMAPPED = 0x7FFF0000; // element for unmapped chars
+    private final static OldSpanishComparator instance
+            = new OldSpanishComparator((RuleBasedCollator) OldSpanishCollator.getInstance());
+
+    private final RuleBasedCollator collator; // elements of complex strings
+    private final int[] index;      // per char: (offset << 4) | number of elements
+    private final int[] elements;   // collation elements of all mapped chars
+    private final boolean[] complex; // chars requiring the full algorithm
+    private final char[][] contractions; // second chars of contractions
+    private final int[][] contracted;    // the element of every contraction
+
+    private final ThreadLocal<int[][]> buffers = new ThreadLocal<int[][]>() {
+        @Override
+        protected int[][] initialValue() {
+            return new int[][]{new int[64], new int[64]};
+        }
+    };
+
+    /**
+     * @return the shared comparator for the old Spanish rules
+     */
+    public static OldSpanishComparator getInstance() {
+        return instance;
+    }
+
+    /**
+     * Compile the collation tables of a RuleBasedCollator
+     *
+     * @param collator a rule based collator
+     */
+    public OldSpanishComparator(RuleBasedCollator collator) {
+        int[] buffer = new int[65536];
+        int size = 0;
+        boolean[] continuation = new boolean[65536];
+
+        this.collator = collator;
+        index = new int[65536];
+        complex = new boolean[65536];
+        contractions = new char[65536][];
+        contracted = new int[65536][];
+        for (int c = 0; c < 65536; ++c) {
+            String s = String.valueOf((char) c);
+            CollationElementIterator it = collator.getCollationElementIterator(s);
+            int start = size;
+            int e;
+            while ((e = it.next()) != NULLORDER) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, 2 * size);
+                }
+                buffer[size++] = e;
+            }
+            if (size - start == 2 && buffer[start] == UNMAPPED
+                    && buffer[start + 1] == c << 16) {
+                size = start; // unmapped: computed on the fly
+            } else {
+                index[c] = (start << 4) | (size - start);
+            }
+            complex[c] = Character.isSurrogate((char) c) || isMark(c)
+                    || size == start || size - start > 15;
+        }
+        elements = Arrays.copyOf(buffer, size);
+        // contractions (only pairs of chars with a single element)
+        for (String token : collator.getRules().split("[<,;&=\\s]+")) {
+            if (token.length() > 1) {
+                char first = token.charAt(0);
+                CollationElementIterator it = collator.getCollationElementIterator(token);
+                int e = it.next();
+                if (token.length() == 2 && it.next() == NULLORDER) {
+                    int k = contractions[first] == null ? 0 : contractions[first].length;
+                    contractions[first] = contractions[first] == null
+                            ? new char[1] : Arrays.copyOf(contractions[first], k + 1);
+                    contracted[first] = contracted[first] == null
+                            ? new int[1] : Arrays.copyOf(contracted[first], k + 1);
+                    contractions[first][k] = token.charAt(1);
+                    contracted[first][k] = e;
+                    continuation[token.charAt(1)] = true;
+                } else {
+                    complex[first] = true;
+                }
+            }
+        }
+        // chars whose decomposition may complete a contraction
+        for (int c = 0; c < 65536; ++c) {
+            if (!complex[c]) {
+                String s = Normalizer.normalize(String.valueOf((char) c),
+                        Normalizer.Form.NFD);
+                if (s.charAt(0) != c && continuation[s.charAt(0)]) {
+                    complex[c] = true;
+                }
+            }
+        }
+    }
+
+    private static boolean isMark(int c) {
+        int type = Character.getType(c);
+        return type == Character.NON_SPACING_MARK
+                || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK;
+    }
+
+    private static int indexOf(char[] list, char c) {
+        for (int k = 0; k < list.length; ++k) {
+            if (list[k] == c) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param s a string
+     * @return true if the string can be processed one char at a time
+     */
+    private boolean isSimple(String s) {
+        for (int n = 0; n < s.length(); ++n) {
+            if (complex[s.charAt(n)]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Store the collation elements of a string in a buffer
+     *
+     * @param s a string
+     * @param buffer the output buffer (it grows if too small)
+     * @return the buffer containing the elements, followed by NULLORDER
+     */
+    private int[] expand(String s, int[] buffer) {
+        int size = 0;
+
+        if (!isSimple(s)) {
+            CollationElementIterator it = collator.getCollationElementIterator(s);
+            int e;
+            while ((e = it.next()) != NULLORDER) {
+                if (buffer.length < size + 2) {
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                }
+                buffer[size++] = e;
+            }
+            buffer[size] = NULLORDER;
+            return buffer;
+        }
+        for (int n = 0; n < s.length(); ++n) {
+            char c = s.charAt(n);
+            if (buffer.length < size + 17) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length + 17);
+            }
+            char[] list = contractions[c];
+            if (list != null && n + 1 < s.length()) {
+                int k = indexOf(list, s.charAt(n + 1));
+                if (k >= 0) {
+                    buffer[size++] = contracted[c][k];
+                    ++n;
+                    continue;
+                }
+            }
+            int entry = index[c];
+            if (entry == 0) {
+                buffer[size++] = UNMAPPED;
+                buffer[size++] = c << 16;
+            } else {
+                int start = entry >>> 4;
+                int end = start + (entry & 0xF);
+                for (int k = start; k < end; ++k) {
+                    buffer[size++] = elements[k];
+                }
+            }
+        }
+        buffer[size] = NULLORDER;
+        return buffer;
+    }
+
+    @Override
+    public int compare(String source, String target) {
+        int[][] buffer = buffers.get();
+        int[] s = buffer[0] = expand(source, buffer[0]);
+        int[] t = buffer[1] = expand(target, buffer[1]);
+        return compare(s, t);
+    }
+
+    /**
+     * @param s a string
+     * @return the primary part of the sort key of the string (the sort key of
+     * every string with the same letters, regardless of case and accents,
+     * starts with these bytes followed by two zero bytes)
+     */
+    public byte[] getPrimaryKey(String s) {
+        int[][] buffer = buffers.get();
+        int[] elements = buffer[0] = expand(s, buffer[0]);
+        int length = 0;
+        while (elements[length] != NULLORDER) {
+            ++length;
+        }
+        byte[] key = new byte[2 * length];
+        int size = 0;
+        for (int n = 0; n < length; ++n) {
+            int primary = CollationElementIterator.primaryOrder(elements[n]);
+            if (primary != 0) {
+                key[size++] = (byte) (primary >>> 8);
+                key[size++] = (byte) primary;
+            }
+        }
+        return Arrays.copyOf(key, size);
+    }
+
+    /**
+     * @param s a string
+     * @return the sort key of the string
+     */
+    public byte[] getSortKey(String s) {
+        int[][] buffer = buffers.get();
+        int[] elements = buffer[0] = expand(s, buffer[0]);
+        int length = 0;
+        while (elements[length] != NULLORDER) {
+            ++length;
+        }
+        byte[] key = new byte[6 * length + 3];
+        int size = 0;
+        for (int n = 0; n < length; ++n) {
+            int primary = CollationElementIterator.primaryOrder(elements[n]);
+            if (primary != 0) {
+                key[size++] = (byte) (primary >>> 8);
+                key[size++] = (byte) primary;
+            }
+        }
+        key[size++] = 0;
+        key[size++] = 0;
+        for (int n = 0; n < length; ++n) {
+            size = putWeight(key, size, CollationElementIterator.secondaryOrder(elements[n]));
+        }
+        key[size++] = 0;
+        for (int n = 0; n < length; ++n) {
+            size = putWeight(key, size, CollationElementIterator.tertiaryOrder(elements[n]));
+        }
+        return Arrays.copyOf(key, size);
+    }
+
+    /**
+     * Append a secondary or tertiary weight (0 to 255) to a sort key: weights
+     * below 254 are stored as one byte (1 to 254) and the last two as the
+     * escape byte 255 followed by 1 or 2, so that no weight is written as the
+     * zero terminator and the unsigned order of the bytes is that of the
+     * weights.
+     *
+     * @return the new size of the key
+     */
+    private static int putWeight(byte[] key, int size, int weight) {
+        if (weight < 254) {
+            key[size++] = (byte) (weight + 1);
+        } else {
+            key[size++] = (byte) 255;
+            key[size++] = (byte) (weight - 253);
+        }
+        return size;
+    }
+
+    /**
+     * Compare two sort keys
+     *
+     * @param first a sort key
+     * @param second another sort key
+     * @return a negative integer, zero, or a positive integer as the first key
+     * is less than, equal to, or greater than the second.
+     */
+    public static int compareKeys(byte[] first, byte[] second) {
+        int length = Math.min(first.length, second.length);
+        for (int n = 0; n < length; ++n) {
+            int diff = (first[n] & 0xFF) - (second[n] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return first.length - second.length;
+    }
+
+    /**
+     * Compare two sequences of collation elements as RuleBasedCollator does
+     * with tertiary strength
+     */
+    private static int compare(int[] source, int[] target) {
+        int result = 0;
+        boolean checkSecTer = true;
+        boolean checkTertiary = true;
+        int i = 0;
+        int j = 0;
+        int sOrder = 0;
+        int tOrder = 0;
+        boolean gets = true;
+        boolean gett = true;
+
+        while (true) {
+            if (gets) {
+                sOrder = source[i++];
+            } else {
+                gets = true;
+            }
+            if (gett) {
+                tOrder = target[j++];
+            } else {
+                gett = true;
+            }
+            if (sOrder == NULLORDER || tOrder == NULLORDER) {
+                break;
+            }
+            int pSOrder = CollationElementIterator.primaryOrder(sOrder);
+            int pTOrder = CollationElementIterator.primaryOrder(tOrder);
+            if (sOrder == tOrder) {
+                continue;
+            }
+            if (pSOrder != pTOrder) {
+                if (sOrder == 0) {
+                    gett = false;
+                } else if (tOrder == 0) {
+                    gets = false;
+                } else if (pSOrder == 0) {
+                    if (checkSecTer) {
+                        result = 1;
+                        checkSecTer = false;
+                    }
+                    gett = false;
+                } else if (pTOrder == 0) {
+                    if (checkSecTer) {
+                        result = -1;
+                        checkSecTer = false;
+                    }
+                    gets = false;
+                } else {
+                    return pSOrder < pTOrder ? -1 : 1;
+                }
+            } else if (checkSecTer) {
+                short secSOrder = CollationElementIterator.secondaryOrder(sOrder);
+                short secTOrder = CollationElementIterator.secondaryOrder(tOrder);
+                if (secSOrder != secTOrder) {
+                    result = secSOrder < secTOrder ? -1 : 1;
+                    checkSecTer = false;
+                } else if (checkTertiary) {
+                    short terSOrder = CollationElementIterator.tertiaryOrder(sOrder);
+                    short terTOrder = CollationElementIterator.tertiaryOrder(tOrder);
+                    if (terSOrder != terTOrder) {
+                        result = terSOrder < terTOrder ? -1 : 1;
+                        checkTertiary = false;
+                    }
+                }
+            }
+        }
+        if (sOrder != NULLORDER) {
+            do {
+                if (CollationElementIterator.primaryOrder(sOrder) != 0) {
+                    return 1;
+                } else if (CollationElementIterator.secondaryOrder(sOrder) != 0
+                        && checkSecTer) {
+                    result = 1;
+                    checkSecTer = false;
+                }
+            } while ((sOrder = source[i++]) != NULLORDER);
+        } else if (tOrder != NULLORDER) {
+            do {
+                if (CollationElementIterator.primaryOrder(tOrder) != 0) {
+                    return -1;
+                } else if (CollationElementIterator.secondaryOrder(tOrder) != 0
+                        && checkSecTer) {
+                    result = -1;
+                    checkSecTer = false;
+                }
+            } while ((tOrder = target[j++]) != NULLORDER);
+        }
+        return result;
+    }
+}
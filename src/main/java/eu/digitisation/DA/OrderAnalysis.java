@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import eu.digitisation.text.StringNormalizer;
+import java.io.File;
+import java.io.IOException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Global analysis of the alphabetical order of the entries in a whole
+ * collection. Split decides whether a header is out of order by comparing it
+ * with the last entry accepted, so a single wrong entry (for instance, a
+ * misrecognized lemma far ahead in the alphabet) makes all the following
+ * entries look wrong. Here the whole sequence of lemmas is collected first and
+ * the out-of-order entries are the smallest set whose removal leaves the rest
+ * sorted: the complement of a longest non-decreasing subsequence of their
+ * collation keys, computed in O(n log n) time and linear memory.
+ * <p>
+ * Connectors (single letters such as "Y") are left out of the sequence and
+ * classified against the preceding ordered entry, except before the first
+ * lemma, where they are lemmas (as in Split, with no last entry). A past participle
+ * following its infinitive (BIRLAR, BIRLADO) is also left out, since it
+ * breaks the order on purpose. Other headers are classified as Split does,
+ * since their classification does not depend on the order.</p>
+ *
+ * @author R.C.C.
+ */
+public class OrderAnalysis {
+
+    // kinds of headers
+    private final static int LEMMA = 0;     // uppercase first word
+    private final static int TYPO = 1;      // uppercase after l/I correction
+    private final static int CONNECTOR = 2; // single-letter connector
+    private final static int OTHER = 3;     // classified independently
+
+    private final SplitEngine engine;
+    private final List<String> files;    // file identifiers
+    private final List<Integer> starts;  // index of the first header in file
+    private final List<Boolean> failed;  // the file could not be read
+    private final List<Region> heads;    // all headers, in order
+
+    /**
+     * @param engine the engine defining the collation, connectors and the
+     * classification of headers
+     */
+    public OrderAnalysis(SplitEngine engine) {
+        this.engine = engine;
+        this.files = new ArrayList<>();
+        this.starts = new ArrayList<>();
+        this.failed = new ArrayList<>();
+        this.heads = new ArrayList<>();
+    }
+
+    /**
+     * Add the headers in a file
+     *
+     * @param file the file identifier
+     * @param regions the headers in the file, in reading order
+     */
+    public void add(String file, List<Region> regions) {
+        files.add(file);
+        starts.add(heads.size());
+        failed.add(false);
+        heads.addAll(regions);
+    }
+
+    /**
+     * Add a file which could not be read
+     *
+     * @param file the file identifier
+     */
+    public void fail(String file) {
+        files.add(file);
+        starts.add(heads.size());
+        failed.add(true);
+    }
+
+    /**
+     * Add the headers in a collection of files
+     *
+     * @param inputs the input files (or archives, see Pages), in dictionary
+     * order
+     * @throws IOException if an archive cannot be read
+     */
+    public void add(List<File> inputs) throws IOException {
+        try (Pages pages = new Pages(inputs)) {
+            while (pages.next()) {
+                try {
+                    add(pages.id(), engine.headers(pages.open()));
+                } catch (IOException ex) {
+                    fail(pages.id());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of headers collected
+     */
+    public int size() {
+        return heads.size();
+    }
+
+    /**
+     * The positions of a longest non-decreasing subsequence
+     *
+     * @param values a sequence of integers
+     * @return for every position, true if the value belongs to the
+     * subsequence
+     */
+    static boolean[] longestNonDecreasing(int[] values) {
+        int n = values.length;
+        int[] tails = new int[n];  // tails[k]: end of best subsequence of length k+1
+        int[] previous = new int[n];
+        int length = 0;
+        for (int i = 0; i < n; ++i) {
+            // first subsequence whose tail is greater than values[i]
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] <= values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                ++length;
+            }
+        }
+        boolean[] selected = new boolean[n];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            selected[i] = true;
+        }
+        return selected;
+    }
+
+    /**
+     * @return the collation key of a word, or null if the collator provides
+     * none
+     */
+    private static byte[] key(Comparator<String> comparator, String word) {
+        Object collator = comparator; // java.text.Collator is a Comparator<Object>
+        if (collator instanceof OldSpanishComparator) {
+            return ((OldSpanishComparator) collator).getSortKey(word);
+        } else if (collator instanceof Collator) {
+            return ((Collator) collator).getCollationKey(word).toByteArray();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Replace words by their rank in the collation order (equal words get
+     * the same rank)
+     *
+     * @param words a list of words
+     * @return the rank of every word
+     */
+    int[] ranks(final List<String> words) {
+        final Comparator<String> collator = engine.getCollator();
+        final byte[][] keys = new byte[words.size()][];
+        for (int n = 0; n < keys.length; ++n) {
+            keys[n] = key(collator, words.get(n));
+        }
+        Integer[] order = new Integer[keys.length];
+        for (int n = 0; n < order.length; ++n) {
+            order[n] = n;
+        }
+        Comparator<Integer> comparator = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                byte[] a = keys[first];
+                byte[] b = keys[second];
+                return (a != null && b != null)
+                        ? OldSpanishComparator.compareKeys(a, b)
+                        : collator.compare(words.get(first), words.get(second));
+            }
+        };
+        Arrays.sort(order, comparator);
+        int[] ranks = new int[order.length];
+        int rank = 0;
+        for (int n = 0; n < order.length; ++n) {
+            if (n > 0 && comparator.compare(order[n - 1], order[n]) != 0) {
+                ++rank;
+            }
+            ranks[order[n]] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * Classify all the headers collected and send the resulting entries to a
+     * sink, file by file
+     *
+     * @param sink the destination of the entries
+     * @return the last ordered entry
+     * @throws IOException if the entries cannot be written
+     */
+    public String split(EntrySink sink) throws IOException {
+        String connectors = engine.getConnectors();
+        int size = heads.size();
+        int[] kinds = new int[size];
+        String[] words = new String[size];
+        List<String> lemmas = new ArrayList<>();
+        for (int n = 0; n < size; ++n) {
+            String head = heads.get(n).getText();
+            String start = SplitEngine.firstWord(head).replace('ñ', 'Ñ');
+            WordType type = WordType.typeOf(start);
+            kinds[n] = OTHER;
+            if (head.isEmpty()) {
+                continue;
+            } else if (type == WordType.UPPERCASE) {
+                // before any lemma, a connector is a lemma too (as in the
+                // greedy classification with no last entry)
+                kinds[n] = start.length() == 1 && !lemmas.isEmpty()
+                        && connectors.indexOf(start.charAt(0)) >= 0
+                                ? CONNECTOR : LEMMA;
+                words[n] = start;
+            } else if (type == WordType.MIXEDCASE
+                    && !SplitEngine.isSentenceHead(head)) {
+                String s = start.replace('l', 'I');
+                if (WordType.typeOf(s) == WordType.UPPERCASE) {
+                    kinds[n] = TYPO;
+                    words[n] = s;
+                }
+            }
+            if (kinds[n] == LEMMA || kinds[n] == TYPO) {
+                lemmas.add(words[n]);
+            }
+        }
+
+        // Ranks of lemmas in collation order
+        int[] ranks = ranks(lemmas);
+        int[] positions = new int[lemmas.size()];  // header of every lemma
+        for (int n = 0, k = 0; n < size; ++n) {
+            if (kinds[n] == LEMMA || kinds[n] == TYPO) {
+                positions[k++] = n;
+            }
+        }
+
+        // Participles after their infinitive are not in the sequence (and
+        // the forms of a participle, BIRLADO, BIRLADA, follow the same one)
+        boolean[] participle = new boolean[ranks.length];
+        int[] values = new int[ranks.length];
+        int count = 0;
+        int infinitive = -1;  // the last lemma in the sequence
+        for (int k = 0; k < ranks.length; ++k) {
+            if (infinitive >= 0 && ranks[k] < ranks[infinitive]
+                    && engine.isParticiple(lemmas.get(k), lemmas.get(infinitive))) {
+                participle[k] = true;
+            } else {
+                values[count++] = ranks[k];
+                infinitive = k;
+            }
+        }
+        boolean[] ordered = longestNonDecreasing(Arrays.copyOf(values, count));
+
+        // Decisions
+        Entry.Tag[] tags = new Entry.Tag[size];
+        String[] reasons = new String[size];
+        for (int k = 0, j = 0; k < ranks.length; ++k) {
+            int n = positions[k];
+            if (participle[k]) {
+                // a misrecognized participle is still reported as a typo
+                tags[n] = kinds[n] == TYPO ? Entry.Tag.ITYPO : Entry.Tag.PASTPART;
+            } else if (ordered[j++]) {
+                tags[n] = kinds[n] == TYPO ? Entry.Tag.ITYPO : Entry.Tag.ENTRY;
+            } else {
+                tags[n] = Entry.Tag.CHECK;
+                reasons[n] = "sort";
+            }
+        }
+
+        String last = "";
+        int lastRank = -1;
+        for (int f = 0, k = 0; f < files.size(); ++f) {
+            String file = files.get(f);
+            sink.startFile(file);
+            if (failed.get(f)) {
+                sink.error("Wrong file");
+            }
+            int end = f + 1 < files.size() ? starts.get(f + 1) : size;
+            for (int n = starts.get(f); n < end; ++n) {
+                Region region = heads.get(n);
+                String head = region.getText();
+                switch (kinds[n]) {
+                    case LEMMA:
+                    case TYPO:
+                        int rank = ranks[k];
+                        if (tags[n] == Entry.Tag.ENTRY && rank == lastRank) {
+                            tags[n] = Entry.Tag.SUBENTRY;
+                        }
+                        if (!participle[k] && reasons[n] == null) {
+                            // in the ordered sequence
+                            last = words[n];
+                            lastRank = rank;
+                        }
+                        sink.entry(new Entry(tags[n], reasons[n] == null
+                                ? StringNormalizer.trim(head) : head,
+                                reasons[n], null, file, region.getId()));
+                        ++k;
+                        break;
+                    case CONNECTOR:
+                        int first = words[n].codePointAt(0);
+                        int ref = last.isEmpty() ? -1 : last.codePointAt(0);
+                        sink.entry(new Entry(first == ref || first == ref + 1
+                                ? Entry.Tag.CHECK : Entry.Tag.SKIP, head, null, null,
+                                file, region.getId()));
+                        break;
+                    default:
+                        // classification independent of the last entry
+                        for (Entry entry : engine.split(file,
+                                Collections.singletonList(region), "").getEntries()) {
+                            sink.entry(entry);
+                        }
+                }
+            }
+            sink.endFile();
+        }
+        return last;
+    }
+}
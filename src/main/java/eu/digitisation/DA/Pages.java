@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The sequence of PAGE XML pages contained in a list of inputs. Inputs are
+ * plain XML files or archives: gzip-compressed files (.gz, a single page),
+ * zip files (.zip) and compressed tar files (.tar.gz, .tgz). Archive members
+ * are returned in archive order and read sequentially from a channel on the
+ * archive, so nothing is extracted to disk and only the current member is
+ * held in memory (and only if it is read as a byte array). Members whose
+ * name does not end with .xml are skipped. An archive which cannot be read
+ * yields a page (identified by the archive name) whose content cannot be
+ * read either, so that the error is reported at the right position.
+ * <p>
+ * Usage: {@code while (pages.next()) { ... pages.open() ... }}</p>
+ *
+ * @author R.C.C.
+ */
+public class Pages implements Closeable {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Iterator<File> inputs;
+    private File input;        // the current input
+    private InputStream is;    // the current archive (null for plain files)
+    private Tar tar;           // the current tar archive
+    private boolean single;    // the current input is a gzipped page
+    private String name;       // the current member of the archive
+    private String id;         // the current page identifier
+    private IOException failure; // the current archive cannot be read
+
+    /**
+     * @param inputs XML files or archives of XML files
+     */
+    public Pages(List<File> inputs) {
+        this.inputs = inputs.iterator();
+    }
+
+    /**
+     * @param file a file name
+     * @return true if the file is an archive
+     */
+    public static boolean isArchive(File file) {
+        String s = file.getName().toLowerCase();
+        return s.endsWith(".gz") || s.endsWith(".tgz") || s.endsWith(".zip");
+    }
+
+    /**
+     * Open an input as a stream reading from a byte channel
+     */
+    private static InputStream channel(File file) throws IOException {
+        return new BufferedInputStream(Channels.newInputStream(
+                Files.newByteChannel(file.toPath())), 1 << 16);
+    }
+
+    /**
+     * Move to the next page
+     *
+     * @return false if there are no more pages
+     * @throws IOException if an archive cannot be read
+     */
+    public boolean next() throws IOException {
+        failure = null;
+        while (true) {
+            if (is != null) {
+                try {
+                    String member = nextMember();
+                    if (member != null) {
+                        name = member;
+                        id = input + "!" + member;
+                        return true;
+                    }
+                } catch (IOException ex) {
+                    return fail(ex);
+                }
+                close();
+            }
+            if (!inputs.hasNext()) {
+                input = null;
+                id = name = null;
+                return false;
+            }
+            input = inputs.next();
+            String s = input.getName().toLowerCase();
+            single = false;
+            tar = null;
+            try {
+                if (s.endsWith(".tar.gz") || s.endsWith(".tgz")) {
+                    is = new GZIPInputStream(channel(input), 1 << 16);
+                    tar = new Tar(is);
+                } else if (s.endsWith(".gz")) {
+                    is = new GZIPInputStream(channel(input), 1 << 16);
+                    single = true;
+                } else if (s.endsWith(".zip")) {
+                    is = new ZipInputStream(channel(input), UTF8);
+                } else {
+                    name = null;
+                    id = input.toString();
+                    return true;
+                }
+            } catch (IOException ex) {
+                return fail(ex);
+            }
+        }
+    }
+
+    /**
+     * Make the current input a page which cannot be read and skip the rest
+     * of it
+     */
+    private boolean fail(IOException ex) throws IOException {
+        failure = ex;
+        name = null;
+        id = input.toString();
+        try {
+            close();
+        } catch (IOException e) {
+            // already failed
+        }
+        return true;
+    }
+
+    /**
+     * @return the name of the next XML member in the current archive or null
+     * if there are no more members
+     */
+    private String nextMember() throws IOException {
+        if (single) {
+            single = false;
+            String s = input.getName();
+            return s.substring(0, s.length() - 3);
+        } else if (tar != null) {
+            String member;
+            while ((member = tar.next()) != null) {
+                if (member.toLowerCase().endsWith(".xml")) {
+                    return member;
+                }
+            }
+            return null;
+        } else if (is instanceof ZipInputStream) {
+            ZipEntry entry;
+            while ((entry = ((ZipInputStream) is).getNextEntry()) != null) {
+                if (!entry.isDirectory()
+                        && entry.getName().toLowerCase().endsWith(".xml")) {
+                    return entry.getName();
+                }
+            }
+            return null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @return the identifier of the current page: the file name or, for
+     * archive members, the archive name followed by "!" and the member name
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * @return the current input file
+     */
+    public File input() {
+        return input;
+    }
+
+    /**
+     * @return the current page as a plain file or null if the page is an
+     * archive member (or an archive which cannot be read)
+     */
+    public File file() {
+        return is == null && failure == null ? input : null;
+    }
+
+    /**
+     * @return the name of the current archive member or null if the current
+     * page is a plain file
+     */
+    public String member() {
+        return name;
+    }
+
+    /**
+     * @return a stream with the content of the current page. For archive
+     * members, the stream can only be read once, before the next call to
+     * next(); closing it does not close the archive.
+     * @throws IOException
+     */
+    public InputStream open() throws IOException {
+        if (failure != null) {
+            throw failure;
+        } else if (is == null) {
+            return channel(input);
+        } else {
+            InputStream member = tar == null ? is : tar.stream();
+            return new FilterInputStream(member) {
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    /**
+     * @return the content of the current page
+     * @throws IOException
+     */
+    public byte[] read() throws IOException {
+        if (failure != null) {
+            throw failure;
+        } else if (is == null) {
+            return Files.readAllBytes(input.toPath());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream member = open()) {
+            int n;
+            while ((n = member.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (is != null) {
+            InputStream stream = is;
+            is = null;
+            tar = null;
+            stream.close();
+        }
+    }
+
+    /**
+     * Sequential reader of a tar (ustar, GNU or pax) archive. Only regular
+     * files are returned.
+     */
+    static class Tar {
+
+        private final InputStream is;
+        private final byte[] header = new byte[512];
+        private long remaining;   // unread bytes in the current member
+        private long padding;     // bytes up to the next header
+
+        Tar(InputStream is) {
+            this.is = is;
+        }
+
+        private void skip(long n) throws IOException {
+            while (n > 0) {
+                long skipped = is.skip(n);
+                if (skipped <= 0) {
+                    if (is.read() < 0) {
+                        throw new EOFException("Truncated tar archive");
+                    }
+                    skipped = 1;
+                }
+                n -= skipped;
+            }
+        }
+
+        private byte[] readFully(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int size = 0;
+            while (size < length) {
+                int n = is.read(bytes, size, length - size);
+                if (n < 0) {
+                    throw new EOFException("Truncated tar archive");
+                }
+                size += n;
+            }
+            return bytes;
+        }
+
+        private static String string(byte[] bytes, int offset, int length) {
+            int end = offset;
+            while (end < offset + length && bytes[end] != 0) {
+                ++end;
+            }
+            return new String(bytes, offset, end - offset, UTF8);
+        }
+
+        private static long octal(byte[] bytes, int offset, int length) {
+            long value = 0;
+            for (int n = offset; n < offset + length; ++n) {
+                byte b = bytes[n];
+                if (b >= '0' && b <= '7') {
+                    value = 8 * value + (b - '0');
+                } else if (value > 0 || (b != ' ' && b != 0)) {
+                    break;
+                }
+            }
+            return value;
+        }
+
+        /**
+         * The path in a pax extended header, if any
+         */
+        private static String paxPath(byte[] data) {
+            String s = new String(data, UTF8);
+            int n = 0;
+            while (n < s.length()) {
+                int space = s.indexOf(' ', n);
+                if (space < 0) {
+                    break;
+                }
+                int length = Integer.parseInt(s.substring(n, space));
+                String record = s.substring(space + 1, n + length - 1);
+                if (record.startsWith("path=")) {
+                    return record.substring(5);
+                }
+                n += length;
+            }
+            return null;
+        }
+
+        /**
+         * @return the name of the next regular file or null at the end of
+         * the archive
+         */
+        String next() throws IOException {
+            String longName = null;
+            skip(remaining + padding);
+            remaining = padding = 0;
+            while (true) {
+                int n = 0;
+                while (n < 512) {
+                    int k = is.read(header, n, 512 - n);
+                    if (k < 0) {
+                        return null;
+                    }
+                    n += k;
+                }
+                if (header[0] == 0) {
+                    return null; // end of archive
+                }
+                long size = octal(header, 124, 12);
+                long pad = (512 - size % 512) % 512;
+                byte type = header[156];
+                if (type == 'L' || type == 'x') {
+                    byte[] data = readFully((int) size);
+                    skip(pad);
+                    longName = type == 'L' ? string(data, 0, data.length)
+                            : paxPath(data);
+                    continue;
+                }
+                String name = string(header, 0, 100);
+                String prefix = string(header, 345, 155);
+                if (longName != null) {
+                    name = longName;
+                } else if (!prefix.isEmpty() && header[257] == 'u') {
+                    name = prefix + "/" + name;
+                }
+                if (type == '0' || type == 0) {
+                    remaining = size;
+                    padding = pad;
+                    return name;
+                }
+                skip(size + pad);
+                longName = null;
+            }
+        }
+
+        /**
+         * @return a stream with the content of the current member
+         */
+        InputStream stream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int b = is.read();
+                    if (b >= 0) {
+                        --remaining;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int n = is.read(b, off, (int) Math.min(len, remaining));
+                    if (n > 0) {
+                        remaining -= n;
+                    }
+                    return n;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recognition of past participles of a verb (APOSTADO, APOSTADA, APOSTADOS
+ * after APOSTAR; PUESTO after PONER; ABSTENIDO after ABSTENERSE). The rules
+ * (see Participles.txt) pair infinitive endings with participle endings;
+ * they are compiled into a trie of reversed infinitive endings, so that the
+ * rules applicable to an infinitive are found by reading it backwards once.
+ * The participle prefixes of the last infinitive are cached, since the same
+ * entry is usually compared with several headers. Words are expected in
+ * uppercase.
+ * <p>
+ * Matchers are immutable (but for the cache, which is safely replaced) and
+ * can be shared by concurrent threads.</p>
+ *
+ * @author R.C.C.
+ */
+public class ParticipleMatcher {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Node root = new Node();  // reversed infinitive endings
+    private final List<String> clitics = new ArrayList<>();
+    private String[] inflections = {""};   // masculine singular ending first
+    private volatile Stems cache;          // of the last infinitive
+
+    /**
+     * A node in the trie of reversed infinitive endings
+     */
+    private static class Node {
+
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        String[] participles;  // endings, without the masculine ending
+
+        Node child(char c) {
+            for (int n = 0; n < labels.length; ++n) {
+                if (labels[n] == c) {
+                    return children[n];
+                }
+            }
+            return null;
+        }
+
+        Node add(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                labels = Arrays.copyOf(labels, labels.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                labels[labels.length - 1] = c;
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    /**
+     * The participles of an infinitive: every prefix followed by any
+     * inflection
+     */
+    private static class Stems {
+
+        final String infinitive;
+        final String[] prefixes;
+
+        Stems(String infinitive, String[] prefixes) {
+            this.infinitive = infinitive;
+            this.prefixes = prefixes;
+        }
+    }
+
+    /**
+     * Create a matcher with rules in text format: lines "clitic S",
+     * "inflection M F..." and "I P" (infinitive ending and participle
+     * ending); empty lines and lines starting with # are ignored
+     *
+     * @param reader the rules
+     * @throws IOException if the rules cannot be read or are wrong
+     */
+    public ParticipleMatcher(Reader reader) throws IOException {
+        List<String[]> rules = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            if (tokens[0].equals("clitic") && tokens.length == 2) {
+                clitics.add(tokens[1]);
+            } else if (tokens[0].equals("inflection") && tokens.length > 1) {
+                inflections = Arrays.copyOfRange(tokens, 1, tokens.length);
+            } else if (tokens.length == 2) {
+                rules.add(tokens);
+            } else {
+                throw new IOException("Wrong participle rule: " + line);
+            }
+        }
+        for (String[] rule : rules) {
+            String ending = rule[1];
+            if (!ending.endsWith(inflections[0])) {
+                throw new IOException("Participle " + ending + " does not end with "
+                        + inflections[0]);
+            }
+            add(rule[0], ending.substring(0, ending.length() - inflections[0].length()));
+        }
+    }
+
+    private static class Holder {
+
+        static final ParticipleMatcher DEFAULT = load();
+
+        private static ParticipleMatcher load() {
+            InputStream is = ParticipleMatcher.class.getResourceAsStream("/Participles.txt");
+            if (is == null) {
+                throw new IllegalStateException("Missing resource Participles.txt");
+            }
+            try (Reader reader = new InputStreamReader(is, UTF8)) {
+                return new ParticipleMatcher(reader);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the matcher with the rules in /Participles.txt
+     */
+    public static ParticipleMatcher getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * Add a rule
+     *
+     * @param infinitive an infinitive ending
+     * @param participle the participle ending without the masculine
+     * singular ending
+     */
+    private void add(String infinitive, String participle) {
+        Node node = root;
+        for (int n = infinitive.length() - 1; n >= 0; --n) {
+            node = node.add(infinitive.charAt(n));
+        }
+        if (node.participles == null) {
+            node.participles = new String[]{participle};
+        } else {
+            node.participles = Arrays.copyOf(node.participles, node.participles.length + 1);
+            node.participles[node.participles.length - 1] = participle;
+        }
+    }
+
+    /**
+     * Collect the participle prefixes of an infinitive
+     */
+    private void prefixes(String infinitive, List<String> list) {
+        Node node = root;
+        for (int n = infinitive.length() - 1; n >= 0; --n) {
+            node = node.child(infinitive.charAt(n));
+            if (node == null) {
+                break;
+            } else if (node.participles != null) {
+                String stem = infinitive.substring(0, n);
+                for (String participle : node.participles) {
+                    list.add(stem + participle);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the participle prefixes of a word (cached)
+     */
+    private Stems stems(String word) {
+        Stems stems = cache;
+        if (stems == null || !stems.infinitive.equals(word)) {
+            List<String> list = new ArrayList<>();
+            prefixes(word, list);
+            for (String clitic : clitics) {
+                if (word.length() > clitic.length() && word.endsWith(clitic)) {
+                    prefixes(word.substring(0, word.length() - clitic.length()), list);
+                }
+            }
+            stems = new Stems(word, list.toArray(new String[list.size()]));
+            cache = stems;
+        }
+        return stems;
+    }
+
+    /**
+     * @param head a word
+     * @param last another word
+     * @return true if the word is a past participle (in any gender and
+     * number) of the verb whose infinitive is the other word
+     */
+    public boolean isParticiple(String head, String last) {
+        for (String prefix : stems(last).prefixes) {
+            if (head.startsWith(prefix)) {
+                int length = head.length() - prefix.length();
+                for (String inflection : inflections) {
+                    if (inflection.length() == length
+                            && head.startsWith(inflection, prefix.length())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
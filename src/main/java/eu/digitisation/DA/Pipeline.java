@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Two-phase processing of a collection of files: headers are extracted from
+ * the pages in parallel (parsing and header extraction do not depend on other
+ * pages) while the classification of headers, which depends on the last entry
+ * found in previous pages, is performed sequentially in file order. The output
+ * is identical to that of a sequential run. Archive members are read (in
+ * archive order) by the calling thread and parsed from memory, so at most
+ * a window of pages is held in memory.
+ *
+ * @author R.C.C.
+ */
+public class Pipeline {
+
+    private final int threads;  // number of extraction threads
+    private final int window;   // maximum number of pages held in memory
+
+    /**
+     * @param threads the number of threads extracting headers
+     */
+    public Pipeline(int threads) {
+        this.threads = threads;
+        this.window = 4 * threads;
+    }
+
+    /**
+     * Extract headers from a file (phase 1 task)
+     */
+    private static Callable<List<String>> task(final File file) {
+        return new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws IOException {
+                return Split.headers(file);
+            }
+        };
+    }
+
+    /**
+     * Extract headers from the content of an archive member (phase 1 task)
+     */
+    private static Callable<List<String>> task(final byte[] content) {
+        return new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws IOException {
+                return Split.headers(new ByteArrayInputStream(content));
+            }
+        };
+    }
+
+    /**
+     * A task reporting a page which could not be read
+     */
+    private static Callable<List<String>> task(final IOException failure) {
+        return new Callable<List<String>>() {
+            @Override
+            public List<String> call() throws IOException {
+                throw failure;
+            }
+        };
+    }
+
+    /**
+     * Submit the extraction of headers in the current page
+     */
+    private static Future<List<String>> submit(ExecutorService executor,
+            Pages pages) {
+        File file = pages.file();
+        if (file != null) {
+            return executor.submit(task(file));
+        }
+        try {
+            return executor.submit(task(pages.read()));
+        } catch (IOException ex) {
+            return executor.submit(task(ex));
+        }
+    }
+
+    /**
+     * Classify the headers in a collection of files.
+     *
+     * @param files the input files (or archives, see Pages), in dictionary
+     * order
+     * @param last the last entry found before the first file
+     * @param sink the destination of the entries
+     * @return the last entry after processing all files
+     * @throws IOException if the entries cannot be written
+     * @throws InterruptedIOException if the thread is interrupted
+     * (with the interrupt status set)
+     */
+    public String split(List<File> files, String last, EntrySink sink)
+            throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<String> ids = new ArrayDeque<>();
+        Deque<Future<List<String>>> pending = new ArrayDeque<>();
+
+        try (Pages pages = new Pages(files)) {
+            boolean more = true;
+            while (true) {
+                while (more && pending.size() < window) {
+                    more = pages.next();
+                    if (more) {
+                        ids.add(pages.id());
+                        pending.add(submit(executor, pages));
+                    }
+                }
+                if (pending.isEmpty()) {
+                    break;
+                }
+                sink.startFile(ids.remove());
+                List<String> heads;
+                try {
+                    heads = pending.remove().get();
+                } catch (ExecutionException ex) {
+                    heads = null;
+                    if (ex.getCause() instanceof IOException) {
+                        sink.error("Wrong file");
+                    } else if (ex.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) ex.getCause();
+                    } else {
+                        throw new RuntimeException(ex.getCause());
+                    }
+                }
+                if (heads != null) {
+                    last = Split.split(heads, last, sink);
+                }
+                sink.endFile();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted after " + last);
+        } finally {
+            executor.shutdownNow();
+        }
+        return last;
+    }
+}
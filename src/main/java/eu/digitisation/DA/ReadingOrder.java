@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Reading order of the regions in a PAGE XML document, as defined by the
+ * ReadingOrder/OrderedGroup/RegionRefIndexed elements. Regions are ordered on
+ * the parsed document itself, without reading the file again and without
+ * modifying the document.
+ *
+ * @author R.C.C.
+ */
+public class ReadingOrder {
+
+    /**
+     * @param doc a PAGE XML document
+     * @return the index in the reading order of every referenced region id
+     * (regions whose index is not a number are left out)
+     */
+    public static Map<String, Integer> indices(Document doc) {
+        Map<String, Integer> map = new HashMap<>();
+        NodeList refs = doc.getElementsByTagName("RegionRefIndexed");
+        for (int n = 0; n < refs.getLength(); ++n) {
+            Element ref = (Element) refs.item(n);
+            String id = ref.getAttribute("regionRef");
+            String index = ref.getAttribute("index");
+            if (!id.isEmpty() && !index.isEmpty()) {
+                try {
+                    map.put(id, Integer.valueOf(index.trim()));
+                } catch (NumberFormatException ex) {
+                    // unordered
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Sort regions in reading order. Regions which are not referenced in the
+     * reading order follow all others, in their original order.
+     *
+     * @param regions a list of region elements in document order
+     * @param doc the PAGE XML document containing the regions
+     * @return the list of regions in reading order (the input list itself, if
+     * it was already sorted)
+     */
+    public static List<Element> sort(List<Element> regions, Document doc) {
+        final Map<String, Integer> indices = indices(doc);
+        Comparator<Element> comparator = new Comparator<Element>() {
+            @Override
+            public int compare(Element first, Element second) {
+                return Integer.compare(position(first), position(second));
+            }
+
+            private int position(Element e) {
+                Integer index = indices.get(e.getAttribute("id"));
+                return index == null ? Integer.MAX_VALUE : index;
+            }
+        };
+
+        for (int n = 1; n < regions.size(); ++n) {
+            if (comparator.compare(regions.get(n - 1), regions.get(n)) > 0) {
+                List<Element> sorted = new ArrayList<>(regions);
+                Collections.sort(sorted, comparator);  // stable
+                return sorted;
+            }
+        }
+        return regions;
+    }
+}
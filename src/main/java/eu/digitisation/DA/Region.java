@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+/**
+ * The textual content of a TextRegion in a PAGE XML file
+ *
+ * @author R.C.C.
+ */
+public class Region {
+
+    private final String id;    // the region identifier
+    private final String text;  // the textual content
+
+    public Region(String id, String text) {
+        this.id = id;
+        this.text = text;
+    }
+
+    /**
+     * @return the region identifier
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the textual content of the region (as given by
+     * Element.getTextContent())
+     */
+    public String getText() {
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof Region) {
+            Region other = (Region) o;
+            return (id == null ? other.id == null : id.equals(other.id))
+                    && (text == null ? other.text == null : text.equals(other.text));
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (id == null ? 0 : id.hashCode()) + (text == null ? 0 : text.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return id + ": " + text;
+    }
+}
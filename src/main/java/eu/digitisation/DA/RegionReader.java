@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming (StAX) reader of the paragraph regions in a PAGE XML file.
+ * Regions are returned in reading order, as defined by the RegionRefIndexed
+ * elements in the ReadingOrder section of the page (regions not referenced
+ * there follow, in document order). Only the text of paragraph regions is
+ * kept: coordinates and other elements are skipped as they are read.
+ * <p>
+ * The text of a region is the concatenation of all character data inside the
+ * TextRegion element, as returned by Element.getTextContent() for the DOM
+ * element. Regions are buffered only when the document order differs from
+ * the reading order.</p>
+ *
+ * @author R.C.C.
+ */
+public class RegionReader implements Closeable {
+
+    private final static XMLInputFactory factory = XMLInputFactory.newInstance();
+
+    static {
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    private final InputStream is;
+    private final XMLStreamReader reader;
+    private final String type;               // the type of selected regions
+    private final Map<String, Integer> index; // position in reading order
+    private final List<String> order;        // region ids in reading order
+    private int position;                    // next region in reading order
+    private final Map<String, Region> pending; // regions read in advance
+    private final List<Region> unordered;    // regions not in reading order
+    private final StringBuilder text;        // reusable text buffer
+    private String image;                    // the page image file name
+    private boolean eof;
+
+    /**
+     * Marker for regions in the reading order which are not selected
+     */
+    private final static Region SKIPPED = new Region(null, null);
+
+    /**
+     * Create a reader of paragraph regions
+     *
+     * @param is an input stream with PAGE XML content
+     * @throws IOException
+     */
+    public RegionReader(InputStream is) throws IOException {
+        this(is, "paragraph");
+    }
+
+    /**
+     * Create a reader of regions of the given type
+     *
+     * @param is an input stream with PAGE XML content (closed by close, or
+     * here if the content cannot be read)
+     * @param type the type attribute of the selected regions
+     * @throws IOException
+     */
+    public RegionReader(InputStream is, String type) throws IOException {
+        this.is = is;
+        this.type = type;
+        this.index = new HashMap<>();
+        this.order = new ArrayList<>();
+        this.pending = new HashMap<>();
+        this.unordered = new ArrayList<>();
+        this.text = new StringBuilder();
+        try {
+            reader = factory.createXMLStreamReader(is);
+        } catch (XMLStreamException ex) {
+            is.close();
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Create a reader of paragraph regions
+     *
+     * @param file a PAGE XML file
+     * @throws IOException
+     */
+    public RegionReader(File file) throws IOException {
+        this(new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    /**
+     * Read the ReadingOrder section (a region whose index is not a number is
+     * left out of the order)
+     */
+    private void readOrder() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+                if (reader.getLocalName().equals("RegionRefIndexed")) {
+                    String ref = reader.getAttributeValue(null, "regionRef");
+                    String value = reader.getAttributeValue(null, "index");
+                    if (ref != null && value != null) {
+                        try {
+                            index.put(ref, Integer.valueOf(value.trim()));
+                        } catch (NumberFormatException ex) {
+                            // unordered
+                        }
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            }
+        }
+        order.addAll(index.keySet());
+        Collections.sort(order, new Comparator<String>() {
+            @Override
+            public int compare(String first, String second) {
+                return index.get(first).compareTo(index.get(second));
+            }
+        });
+    }
+
+    /**
+     * Read the content of the current TextRegion element
+     *
+     * @param selected true if the region type is the selected one
+     * @return the region read
+     */
+    private Region readRegion(boolean selected) throws XMLStreamException {
+        String id = reader.getAttributeValue(null, "id");
+        int depth = 1;
+
+        text.setLength(0);
+        while (depth > 0) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    --depth;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (selected) {
+                        text.append(reader.getTextCharacters(),
+                                reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+            }
+        }
+        return selected ? new Region(id, text.toString()) : new Region(id, null);
+    }
+
+    /**
+     * @return the next region in reading order which has been already read,
+     * or null if it has not been read yet. Regions not in the reading order
+     * are returned once all the ordered ones are done.
+     */
+    private Region nextPending() {
+        while (position < order.size()) {
+            Region region = pending.remove(order.get(position));
+            if (region == null && !eof) {
+                return null;
+            } else {
+                ++position;  // at the end of the document, skip missing ids
+                if (region != null && region != SKIPPED) {
+                    return region;
+                }
+            }
+        }
+        return unordered.isEmpty() ? null : unordered.remove(0);
+    }
+
+    /**
+     * @return the next selected region in reading order or null if there are
+     * no more regions
+     * @throws IOException
+     */
+    public Region next() throws IOException {
+        try {
+            Region region = nextPending();
+            while (region == null && !eof) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (name.equals("ReadingOrder")) {
+                        readOrder();
+                    } else if (name.equals("Page")) {
+                        image = reader.getAttributeValue(null, "imageFilename");
+                    } else if (name.equals("TextRegion")) {
+                        boolean selected = type.equals(reader.getAttributeValue(null, "type"));
+                        Region current = readRegion(selected);
+                        String id = current.getId();
+                        if (id != null && index.containsKey(id)) {
+                            pending.put(id, selected ? current : SKIPPED);
+                        } else if (selected) {
+                            unordered.add(current);
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_DOCUMENT) {
+                    eof = true;
+                }
+                region = nextPending();
+            }
+            return region;
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * @return the image file name of the page (null if unknown or if the Page
+     * element has not been read yet)
+     */
+    public String getImage() {
+        return image;
+    }
+
+    /**
+     * @return the list of all remaining selected regions in reading order
+     * @throws IOException
+     */
+    public List<Region> readAll() throws IOException {
+        List<Region> list = new ArrayList<>();
+        Region region;
+        while ((region = next()) != null) {
+            list.add(region);
+        }
+        return list;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        } finally {
+            is.close();
+        }
+    }
+}
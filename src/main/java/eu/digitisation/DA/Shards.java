@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classification of a collection of pages by several processes. The ordered
+ * list of inputs is split into contiguous shards, and every shard is
+ * processed by a separate worker JVM as if it were the whole collection
+ * (starting with an empty last entry). Workers keep the headers of every page
+ * (see HeaderDump) and their entries and last entry. The merge writes the
+ * shards in order; since only the first pages of a shard may depend on the
+ * true last entry of the previous shards, the pages of a shard are
+ * classified again, from the stored headers, until the last entry after a
+ * page agrees with the one found by the worker; the remaining pages are
+ * copied. The output is identical to that of a single-process run.
+ *
+ * @author R.C.C.
+ */
+public class Shards {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static Entry.Tag[] TAGS = Entry.Tag.values();
+
+    private final SplitEngine engine;
+    private int reclassified;  // pages classified again by the merge
+
+    /**
+     * @param engine the engine extracting and classifying headers (the
+     * workers use the default engine)
+     */
+    public Shards(SplitEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @return the number of pages classified again at shard boundaries in
+     * the last merge
+     */
+    public int getReclassified() {
+        return reclassified;
+    }
+
+    /**
+     * Split a list of inputs into contiguous shards of similar size
+     *
+     * @param files the inputs, in dictionary order
+     * @param n the number of shards
+     * @return at most n non-empty shards
+     */
+    public static List<List<File>> partition(List<File> files, int n) {
+        List<List<File>> shards = new ArrayList<>();
+        int size = files.size();
+        for (int k = 0; k < n; ++k) {
+            int from = (int) ((long) size * k / n);
+            int to = (int) ((long) size * (k + 1) / n);
+            if (to > from) {
+                shards.add(new ArrayList<>(files.subList(from, to)));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Split a list of inputs into contiguous shards of similar size without
+     * splitting directories (for instance, A_B-style volume directories)
+     *
+     * @param files the inputs, in dictionary order
+     * @param n the maximum number of shards
+     * @return the shards, each containing whole runs of files in the same
+     * directory
+     */
+    public static List<List<File>> partitionByDirectory(List<File> files, int n) {
+        // positions where a new directory starts
+        List<Integer> boundaries = new ArrayList<>();
+        for (int i = 1; i < files.size(); ++i) {
+            File dir = files.get(i).getAbsoluteFile().getParentFile();
+            if (dir == null || !dir.equals(files.get(i - 1).getAbsoluteFile().getParentFile())) {
+                boundaries.add(i);
+            }
+        }
+        // cut at the boundary closest to every ideal cut
+        List<List<File>> shards = new ArrayList<>();
+        int from = 0;
+        for (int k = 1; k < n; ++k) {
+            double target = (double) files.size() * k / n;
+            int best = -1;
+            for (int boundary : boundaries) {
+                if (boundary > from && (best < 0
+                        || Math.abs(boundary - target) < Math.abs(best - target))) {
+                    best = boundary;
+                }
+            }
+            if (best > 0) {
+                shards.add(new ArrayList<>(files.subList(from, best)));
+                from = best;
+            }
+        }
+        if (from < files.size()) {
+            shards.add(new ArrayList<>(files.subList(from, files.size())));
+        }
+        return shards;
+    }
+
+    /**
+     * The entries found by a worker in every page. As with header dumps, the
+     * results are written to a temporary file which only replaces the target
+     * when committed. Strings are written as UTF-8 bytes preceded by their
+     * length (an int, -1 for null), since writeUTF is limited to 65535
+     * bytes.
+     */
+    static class Results implements Closeable {
+
+        private final File file;
+        private final File tmp;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        private String last;
+        private List<Entry> entries;
+        private boolean committed;
+
+        private Results(File file, boolean write) throws IOException {
+            this.file = file;
+            this.tmp = new File(file.getPath() + ".tmp");
+            if (write) {
+                out = new DataOutputStream(new BufferedOutputStream(
+                        new FileOutputStream(tmp), 1 << 16));
+                in = null;
+            } else {
+                in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(file), 1 << 16));
+                out = null;
+            }
+        }
+
+        static Results writer(File file) throws IOException {
+            return new Results(file, true);
+        }
+
+        static Results reader(File file) throws IOException {
+            return new Results(file, false);
+        }
+
+        private void string(String s) throws IOException {
+            if (s == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = s.getBytes(UTF8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        private String string() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, UTF8);
+        }
+
+        /**
+         * Add the results of a page
+         *
+         * @param entries the entries in the page
+         * @param last the last entry after the page
+         */
+        void add(List<Entry> entries, String last) throws IOException {
+            string(last);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeByte(entry.getTag().ordinal());
+                string(entry.getText());
+                string(entry.getReason());
+                string(entry.getPriority());
+                string(entry.getRegion());
+            }
+        }
+
+        /**
+         * Read the results of the next page
+         */
+        void next() throws IOException {
+            last = string();
+            int size = in.readInt();
+            entries = new ArrayList<>(size);
+            for (int n = 0; n < size; ++n) {
+                Entry.Tag tag = TAGS[in.readByte()];
+                String text = string();
+                String reason = string();
+                String priority = string();
+                String region = string();
+                entries.add(new Entry(tag, text, reason, priority, null, region));
+            }
+        }
+
+        String getLast() {
+            return last;
+        }
+
+        List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Complete the results and replace the target file with them
+         */
+        void commit() throws IOException {
+            out.close();
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null) {
+                in.close();
+            } else if (!committed) {
+                try {
+                    out.close();
+                } finally {
+                    tmp.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Process a shard: extract the headers in every page, write them to a
+     * dump and write the entries found starting with an empty last entry
+     *
+     * @param files the inputs in the shard, in dictionary order
+     * @param dump the header dump
+     * @param results the results file
+     * @throws IOException
+     */
+    public void work(List<File> files, File dump, File results) throws IOException {
+        String last = "";
+        try (Pages pages = new Pages(files);
+                HeaderDump.Writer writer = new HeaderDump.Writer(dump);
+                Results output = Results.writer(results)) {
+            while (pages.next()) {
+                List<Region> heads;
+                String image;
+                try (RegionReader reader = new RegionReader(pages.open(), engine.getType())) {
+                    heads = engine.headers(reader);
+                    image = reader.getImage();
+                } catch (IOException ex) {
+                    writer.error(pages.id());
+                    output.add(new ArrayList<Entry>(), last);
+                    continue;
+                }
+                writer.add(pages.id(), image, heads);
+                SplitEngine.Result result = engine.split(null, heads, last);
+                last = result.getLast();
+                output.add(result.getEntries(), last);
+            }
+            writer.commit();
+            output.commit();
+        }
+    }
+
+    /**
+     * Merge the output of the workers
+     *
+     * @param dumps the header dumps of the shards, in order
+     * @param results the results files of the shards, in order
+     * @param last the last entry found before the first shard
+     * @param sink the destination of the entries
+     * @return the last entry after all shards
+     * @throws IOException
+     */
+    public String merge(List<File> dumps, List<File> results, String last,
+            EntrySink sink) throws IOException {
+        reclassified = 0;
+        for (int k = 0; k < dumps.size(); ++k) {
+            // the worker assumed an empty last entry before the shard
+            boolean copy = last.isEmpty();
+            try (HeaderDump.Reader reader = new HeaderDump.Reader(dumps.get(k));
+                    Results input = Results.reader(results.get(k))) {
+                while (reader.next()) {
+                    input.next();
+                    sink.startFile(reader.id());
+                    if (reader.failed()) {
+                        sink.error("Wrong file");
+                    } else {
+                        List<Entry> entries;
+                        if (copy) {
+                            entries = input.getEntries();
+                            last = input.getLast();
+                        } else {
+                            SplitEngine.Result result = engine.split(null,
+                                    reader.regions(), last);
+                            entries = result.getEntries();
+                            last = result.getLast();
+                            ++reclassified;
+                        }
+                        for (Entry entry : entries) {
+                            sink.entry(entry);
+                        }
+                    }
+                    // the remaining pages depend only on the last entry
+                    copy = copy || last.equals(input.getLast());
+                    sink.endFile();
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Classify a collection of inputs with one worker process per shard
+     *
+     * @param shards the shards, in dictionary order
+     * @param dir a directory for the intermediate files
+     * @param sink the destination of the entries
+     * @return the last entry after all shards
+     * @throws IOException if a worker fails or the output cannot be written
+     */
+    public String run(List<List<File>> shards, File dir, EntrySink sink)
+            throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java";
+        List<Process> processes = new ArrayList<>();
+        List<File> dumps = new ArrayList<>();
+        List<File> results = new ArrayList<>();
+        try {
+            for (int k = 0; k < shards.size(); ++k) {
+                File list = new File(dir, "shard-" + k + ".txt");
+                List<String> lines = new ArrayList<>();
+                for (File file : shards.get(k)) {
+                    lines.add(file.getPath());
+                }
+                Files.write(list.toPath(), lines, UTF8);
+                dumps.add(new File(dir, "shard-" + k + ".dump"));
+                results.add(new File(dir, "shard-" + k + ".results"));
+                ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+                        System.getProperty("java.class.path"), Shards.class.getName(),
+                        "-worker", list.getPath(), dumps.get(k).getPath(),
+                        results.get(k).getPath());
+                builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                processes.add(builder.start());
+            }
+            for (int k = 0; k < processes.size(); ++k) {
+                if (processes.get(k).waitFor() != 0) {
+                    throw new IOException("Worker " + k + " failed");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        } finally {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        return merge(dumps, results, "", sink);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Print the entries in a collection of files using several processes
+     *
+     * @param args XML files or archives of XML files, in dictionary order,
+     * optionally preceded by the options "-p n" (number of worker processes,
+     * default 4), "-d" (do not split directories), "-o file" (output file)
+     * and "-j" (JSON lines output)
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 4 && args[0].equals("-worker")) {
+            List<File> files = new ArrayList<>();
+            for (String line : Files.readAllLines(new File(args[1]).toPath(), UTF8)) {
+                files.add(new File(line));
+            }
+            new Shards(SplitEngine.getDefault()).work(files, new File(args[2]),
+                    new File(args[3]));
+            return;
+        }
+        int processes = 4;
+        boolean directories = false;
+        String output = null;
+        boolean json = false;
+        int first = 0;
+        while (first < args.length && args[first].startsWith("-")) {
+            if (args[first].equals("-p") && first + 1 < args.length) {
+                processes = Integer.parseInt(args[first + 1]);
+                first += 2;
+            } else if (args[first].equals("-o") && first + 1 < args.length) {
+                output = args[first + 1];
+                first += 2;
+            } else if (args[first].equals("-d")) {
+                directories = true;
+                ++first;
+            } else if (args[first].equals("-j")) {
+                json = true;
+                ++first;
+            } else {
+                break;
+            }
+        }
+        if (args.length == first) {
+            System.err.println("Usage: Shards [-p processes] [-d] [-o outfile] [-j] file1.xml file2.xml ...");
+        } else {
+            List<File> files = new ArrayList<>();
+            for (int n = first; n < args.length; ++n) {
+                files.add(new File(args[n]));
+            }
+            List<List<File>> shards = directories
+                    ? partitionByDirectory(files, processes) : partition(files, processes);
+            EntrySink sink;
+            if (output == null) {
+                sink = json ? new JSONSink(System.out, 1000)
+                        : new XMLSink(System.out, Charset.defaultCharset(), 1000);
+            } else {
+                File file = new File(output);
+                sink = json ? new JSONSink(file, 0) : new XMLSink(file, 0);
+            }
+            File dir = Files.createTempDirectory("shards").toFile();
+            try {
+                Shards instance = new Shards(SplitEngine.getDefault());
+                sink.begin();
+                instance.run(shards, dir, sink);
+                sink.end();
+                System.err.println(shards.size() + " shards, "
+                        + instance.getReclassified() + " pages classified again");
+            } finally {
+                delete(dir);
+                if (output != null) {
+                    sink.close();
+                }
+            }
+        }
+    }
+}
@@ -17,26 +17,21 @@
  */
 package eu.digitisation.DA;
 
-import static eu.digitisation.DA.WordType.LOWERCASE;
-import static eu.digitisation.DA.WordType.MIXEDCASE;
-import static eu.digitisation.DA.WordType.UPPERCASE;
-import eu.digitisation.layout.SortPageXML;
 import eu.digitisation.log.Messages;
 import eu.digitisation.text.CharFilter;
-import eu.digitisation.text.StringNormalizer;
-import eu.digitisation.xml.DocumentParser;
-import eu.digitisation.xml.XPathFilter;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.text.Collator;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import javax.xml.xpath.XPathExpressionException;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
 
 /**
  *
@@ -66,23 +61,25 @@ import org.w3c.dom.Element;
  */
 public class Split {
 
-    static XPathFilter selector;     // Selects XML elements with relevant content
-    final static Collator collator;  // Defines the lexicographic order
-    static CharFilter cfilter;       // Map PUA characters to standard characters
-
-    static {
-        String[] inclusions = {"TextRegion[@type='paragraph']"};
-        InputStream is = Split.class.getResourceAsStream("/UnicodeCharEquivalences.csv");
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        try {
-            selector = new XPathFilter(inclusions, null);
-        } catch (XPathExpressionException ex) {
-            Messages.severe(ex.getMessage());
+    // One XML parser per thread (DocumentBuilder is not thread-safe)
+    final static ThreadLocal<DocumentBuilder> builder = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            try {
+                return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            } catch (ParserConfigurationException ex) {
+                Messages.severe(ex.getMessage());
+                return null;
+            }
         }
-        collator = OldSpanishCollator.getInstance();
-        cfilter = new CharFilter(true);
-        cfilter.addCSV(reader);
-    }
+    };
+    // The default engine: all configuration lives there
+    final static SplitEngine engine = SplitEngine.getDefault();
+    final static Comparator<String> collator = engine.getCollator(); // Defines the lexicographic order
+    final static CharFilter cfilter = engine.getFilter(); // Map PUA characters to standard characters
+    final static CharTranslator translator = engine.getTranslator(); // Compiled version of cfilter
+    static boolean streaming;        // Read pages with StAX instead of DOM
+    static Metrics metrics;          // Run statistics (null if not collected)
 
     /**
      *
@@ -90,37 +87,7 @@ public class Split {
      * @return the longest prefix of the text containing only uppercase letters
      */
     protected static String header(String text) {
-        StringBuilder builder = new StringBuilder();
-        String[] tokens = cfilter.translate(text).split("\\p{Space}+");
-
-        for (String token : tokens) {
-            // remove leading and trailing punctuation & spaces
-            String word = StringNormalizer.trim(token);
-            if (word.length() > 0) {
-                switch (WordType.typeOf(word)) {
-                    case UPPERCASE: // header word
-                        if (builder.length() > 0) {
-                            builder.append(' ');
-                        }
-                        builder.append(token);
-                        break;
-                    case LOWERCASE:
-                        // end of header reached
-                        return builder.toString();
-                    case MIXEDCASE:
-                        if (WordType.isFirstWordInSentence(word)) {
-                            // end of header reached
-                            return builder.toString();
-                        } else { // striking content: it must be anylised
-                            if (builder.length() > 0) {
-                                builder.append(' ');
-                            }
-                            builder.append(token);
-                        }
-                }
-            }
-        }
-        return builder.toString();
+        return engine.header(text);
     }
 
     /**
@@ -131,20 +98,73 @@ public class Split {
      * @throws IOException
      */
     protected static String header(Element e) throws IOException {
-        String text = e.getTextContent().trim();
-        return header(text);
+        return engine.header(e);
     }
 
     /**
      *
      * @param doc an XML document
-     * @return the firstWord sentences in every selected textual element
+     * @return the firstWord sentences in every selected textual element, in
+     * reading order
      * @throws IOException
      */
     public static List<String> headers(Document doc) throws IOException {
+        return texts(engine.headers(doc));
+    }
+
+    /**
+     * @param regions a list of regions
+     * @return the text of every region
+     */
+    private static List<String> texts(List<Region> regions) {
+        List<String> list = new ArrayList<>(regions.size());
+        for (Region region : regions) {
+            list.add(region.getText());
+        }
+        return list;
+    }
+
+    /**
+     * Parse a PAGE XML file. Safe to call from concurrent threads.
+     *
+     * @param file a PAGE XML file
+     * @return the XML document
+     * @throws IOException
+     */
+    protected static Document load(File file) throws IOException {
+        try {
+            return builder.get().parse(file);
+        } catch (SAXException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Parse PAGE XML content. Safe to call from concurrent threads.
+     *
+     * @param is an input stream with PAGE XML content
+     * @return the XML document
+     * @throws IOException
+     */
+    protected static Document load(InputStream is) throws IOException {
+        try {
+            return builder.get().parse(is);
+        } catch (SAXException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     *
+     * @param reader a reader of PAGE XML regions
+     * @return the firstWord sentences in every region returned by the reader
+     * @throws IOException
+     */
+    public static List<String> headers(RegionReader reader) throws IOException {
         List<String> list = new ArrayList<>();
-        for (Element e : selector.selectElements(doc)) {
-            String head = header(e);
+        Region region;
+        while ((region = reader.next()) != null) {
+            String head = header(region.getText().trim());
             if (!head.isEmpty()) {
                 list.add(head);
             }
@@ -154,17 +174,70 @@ public class Split {
 
     /**
      *
-     * @param text a string of text
-     * @return the first word (sequence of consecutive letters) in the text
+     * @param file a PAGE XML file
+     * @return the headers in the file, in reading order
+     * @throws IOException
      */
-    private static String firstWord(String text) {
-        if (text.length() > 0 && Character.isLetter(text.charAt(0))) {
-            return text.split("[^\\p{L}]+")[0];
+    public static List<String> headers(File file) throws IOException {
+        if (metrics != null) {
+            if (streaming) {
+                try (RegionReader reader = new RegionReader(file)) {
+                    return texts(engine.headers(reader, metrics));
+                }
+            } else {
+                long t = System.nanoTime();
+                Document doc = load(file);
+                metrics.record(Metrics.Stage.PARSE, t);
+                return texts(engine.headers(doc, metrics));
+            }
+        } else if (streaming) {
+            try (RegionReader reader = new RegionReader(file)) {
+                return headers(reader);
+            }
         } else {
-            return "";
+            return headers(load(file));
         }
     }
 
+    /**
+     *
+     * @param is an input stream with PAGE XML content (it is closed)
+     * @return the headers in the page, in reading order
+     * @throws IOException
+     */
+    public static List<String> headers(InputStream is) throws IOException {
+        if (metrics != null) {
+            if (streaming) {
+                try (RegionReader reader = new RegionReader(is, engine.getType())) {
+                    return texts(engine.headers(reader, metrics));
+                }
+            } else {
+                Document doc;
+                try (InputStream in = is) {
+                    long t = System.nanoTime();
+                    doc = load(in);
+                    metrics.record(Metrics.Stage.PARSE, t);
+                }
+                return texts(engine.headers(doc, metrics));
+            }
+        } else if (streaming) {
+            return texts(engine.headers(is));
+        } else {
+            try (InputStream in = is) {
+                return headers(load(in));
+            }
+        }
+    }
+
+    /**
+     *
+     * @param text a string of text
+     * @return the first word (sequence of consecutive letters) in the text
+     */
+    protected static String firstWord(String text) {
+        return SplitEngine.firstWord(text);
+    }
+
     /**
      * Test if a string can be the initial segment of a new sentence or
      * paragraph: punctuation (optional) followed by a mixed case word with only
@@ -176,83 +249,67 @@ public class Split {
      * preceded by punctuation)
      */
     public static boolean isSentenceHead(String text) {
-        if (text.length() > 0) {
-            return text.matches("(\\p{Punct}|\\p{Space})*\\p{Lu}[\\p{L}&&[^\\p{Lu}]]*((\\p{Punct}|\\p{Space}).*)?");
-        } else {
-            return false;
-        }
+        return SplitEngine.isSentenceHead(text);
     }
 
+    /**
+     * Classify the headers in a file and print the resulting entries
+     *
+     * @param ifile the input file
+     * @param last the last entry found in previous files
+     * @return the last entry after processing this file
+     * @throws IOException
+     */
     public static String split(File ifile, String last) throws IOException {
-        Document doc = SortPageXML.isSorted(ifile) ? DocumentParser.parse(ifile)
-                : SortPageXML.sorted(DocumentParser.parse(ifile));
-
-        for (String head : headers(doc)) {
-            if (!head.isEmpty()) {
-                String start = firstWord(head).replaceAll("ñ", "Ñ"); // no N tilde
-                WordType type = WordType.typeOf(start);
-                //System.out.println(text);
-                if (type == WordType.UPPERCASE) {
-                    // Discard connectors
-                    if (start.length() == 1 && start.matches("[AOY]")
-                            && last.length() > 0) {
-                        int first = Character.codePointAt(start, 0);
-                        int ref = Character.codePointAt(last, 0);
-                        if (first == ref || first == ref + 1) {
-                            System.out.println("<check>" + head + "</check>");
-                        } else {
-                            System.out.println("<skip>" + head + "</skip>");
-                        }
-
-                    } else {
-                        int n = collator.compare(last, start);
-                        if (n < 0) {
-                            System.out.println("<entry>"
-                                    + StringNormalizer.trim(head) + "</entry>");
-                            last = start;
-                        } else if (n == 0) {
-                            System.out.println("  <subentry>"
-                                    + StringNormalizer.trim(head) + "</subentry>");
-                        } else if (isParticiple(start, last)) {
-                            System.out.println("<PastPart>"
-                                    + StringNormalizer.trim(head) + "</PastPart>");
-                        } else {
-                            System.out.println("<check reason=\"sort\">"
-                                    + head + "</check>");
-                            last = start;
-                        }
-                    }
-                } else if (type == WordType.MIXEDCASE) {
-                    if (isSentenceHead(head)) {
-                        // this should not happen
-                        System.out.println("<skip>" + head + "</skip>");
-
-                    } else {
-                        String s = start.replaceAll("l", "I");
-                        if (WordType.typeOf(s) == WordType.UPPERCASE) {
-                            // wrong transcription
-                            System.out.println("<Itypo>"
-                                    + StringNormalizer.trim(head) + "</Itypo>");
-                            last = s;
+        return split(headers(ifile), last);
+    }
 
-                        } else if (WordType.isPunct(start)) {
-                            System.out.println("<skip reason=\"punt\">"
-                                    + head + "</skip>");
-                        } else if (WordType.nearlyUpper(start)) {
-                            // a single mismatch
-                            System.out.println("<check priority=\"high\">"
-                                    + head + "</check>");
-                        } else {
-                            System.out.println("<check priority=\"low\">"
-                                    + head + "</check>");
-                        }
-                    }
-                }
-            }
+    /**
+     * Classify a sequence of headers and print the resulting entries
+     *
+     * @param heads the headers in a page, in reading order
+     * @param last the last entry found in previous pages
+     * @return the last entry after processing these headers
+     */
+    public static String split(List<String> heads, String last) {
+        XMLSink sink = new XMLSink(System.out, Charset.defaultCharset(), 0);
+        try {
+            last = split(heads, last, sink);
+            sink.flush();
+        } catch (IOException ex) {
+            Messages.severe(ex.getMessage());
         }
         return last;
     }
 
+    /**
+     * Classify a sequence of headers and send the resulting entries to a
+     * sink. This is the order-dependent part of the process: every decision
+     * depends on the last entry accepted so far.
+     *
+     * @param heads the headers in a page, in reading order
+     * @param last the last entry found in previous pages
+     * @param sink the destination of the entries
+     * @return the last entry after processing these headers
+     * @throws IOException if the entries cannot be written
+     */
+    public static String split(List<String> heads, String last, EntrySink sink)
+            throws IOException {
+        List<Region> regions = new ArrayList<>(heads.size());
+        for (String head : heads) {
+            regions.add(new Region(null, head));
+        }
+        if (metrics != null) {
+            Metrics.Timer timer = new Metrics.Timer(sink);
+            long t = System.nanoTime();
+            last = engine.split(regions, last, null, timer);
+            metrics.add(Metrics.Stage.CLASSIFY, System.nanoTime() - t - timer.getNanos());
+            metrics.add(Metrics.Stage.OUTPUT, timer.getNanos());
+            return last;
+        }
+        return engine.split(regions, last, null, sink);
+    }
+
     /**
      * Check if an entry can be a past participle of the preceding word
      *
@@ -261,9 +318,7 @@ public class Split {
      * @return true if head is a past participle entry after the last word
      */
     protected static boolean isParticiple(String head, String last) {
-        //System.out.println("="+last.replaceFirst("[AEI]R$", ""));
-        return last.replaceFirst("[AEI]R(SE)?$", "")
-                .equals(head.replaceFirst("[AI]DO$", ""));
+        return engine.isParticiple(head, last);
     }
 
     /**
@@ -273,37 +328,264 @@ public class Split {
      * @throws java.io.IOException
      */
     public static void viewHeaders(File file) throws IOException {
-        Document doc = SortPageXML.isSorted(file) ? DocumentParser.parse(file)
-                : SortPageXML.sorted(DocumentParser.parse(file));
-        for (String head : headers(doc)) {
+        for (String head : headers(file)) {
             System.out.println(head);
         }
     }
 
     /**
-     * Print entries in a collection of files
+     * Classify the headers in a collection of files, one file after another
      *
-     * @param args XML file names
+     * @param files the input files (or archives, see Pages), in dictionary
+     * order
+     * @param last the last entry found before the first file
+     * @param sink the destination of the entries
+     * @return the last entry after processing all files
+     * @throws IOException if the entries cannot be written
      */
-    public static void main(String[] args) {
-        if (args.length == 0) {
-            System.err.println("Usage: Split file1.xml file2.xml ...");
-        } else {
-            String lastEntry = "";
-            System.out.println("<DA>");
-            for (String arg : args) {
-                File file = new File(arg);
-                System.out.println("<file>");
-                System.out.println("<id>" + file + "</id>");
-                //Split.viewHeaders(file);  
+    public static String process(List<File> files, String last, EntrySink sink)
+            throws IOException {
+        try (Pages pages = new Pages(files)) {
+            while (pages.next()) {
+                sink.startFile(pages.id());
+                last = process(pages, last, sink);
+                sink.endFile();
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Classify the headers in the current page (the caller sends the
+     * startFile and endFile events)
+     *
+     * @param pages a sequence of pages
+     * @param last the last entry found before this page
+     * @param sink the destination of the entries
+     * @return the last entry after processing the page
+     * @throws IOException if the entries cannot be written
+     */
+    public static String process(Pages pages, String last, EntrySink sink)
+            throws IOException {
+        List<String> heads;
+        try {
+            File file = pages.file();
+            heads = file != null ? headers(file) : headers(pages.open());
+        } catch (IOException ex) {
+            sink.error("Wrong file");
+            return last;
+        }
+        return split(heads, last, sink);
+    }
+
+    /**
+     * Classify the headers in a collection of files and add the entries to a
+     * lemma index, with the image and region where they were found
+     *
+     * @param files the input files (or archives, see Pages), in dictionary
+     * order
+     * @param last the last entry found before the first file
+     * @param sink the destination of the entries
+     * @param index the index of the entries
+     * @return the last entry after processing all files
+     * @throws IOException if the entries cannot be written
+     */
+    public static String process(List<File> files, String last, EntrySink sink,
+            LemmaIndex.Writer index) throws IOException {
+        try (Pages pages = new Pages(files)) {
+            while (pages.next()) {
+                sink.startFile(pages.id());
+                SplitEngine.Result result;
                 try {
-                    lastEntry = Split.split(file, lastEntry);
+                    result = engine.split(pages.id(), pages.open(), last);
                 } catch (IOException ex) {
-                    System.out.println("Wrong file");
+                    result = null;
+                    sink.error("Wrong file");
+                }
+                if (result != null) {
+                    for (Entry entry : result.getEntries()) {
+                        sink.entry(entry);
+                        index.add(entry, result.getImage());
+                    }
+                    last = result.getLast();
+                }
+                sink.endFile();
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Print entries in a collection of files
+     *
+     * @param args XML files or archives of XML files (.gz, .zip, .tar.gz),
+     * optionally preceded by the options "-t n" (extract headers with n
+     * concurrent threads), "-s" (streaming XML reader), "-o file" (output
+     * file), "-j" (JSON lines output), "-i dir" (incremental run keeping a
+     * manifest in the given directory), "-g" (global alphabetical order
+     * analysis, see OrderAnalysis), "-x file" (write a lemma index, see
+     * LemmaIndex), "-f k" (suggest for every entry to be checked the
+     * closest accepted headword within k edits and write the suggestions to
+     * the output file name followed by ".suggestions", see SuggestionSink),
+     * "-m name" (write the time spent in every stage and the number of
+     * entries of every tag to name.json and name.prom, see Metrics) and
+     * "-d file" (only extract the headers and write them to a binary dump,
+     * see HeaderDump).
+     * With the option "-r file", the headers are read from a dump instead
+     * of XML files. The options -t (with more than one thread), -i, -g, -b,
+     * -x, -d and -r select how the files are processed and cannot be
+     * combined; -d accepts no output options.
+     * @throws java.io.IOException if the output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = 1;
+        int first = 0;
+        String output = null;
+        boolean json = false;
+        String manifest = null;
+        boolean global = false;
+        String index = null;
+        int distance = 0;
+        String statistics = null;
+        String dump = null;
+        String replay = null;
+        boolean bodies = false;
+        while (first < args.length && args[first].startsWith("-")) {
+            if (args[first].equals("-t") && first + 1 < args.length) {
+                threads = Integer.parseInt(args[first + 1]);
+                first += 2;
+            } else if (args[first].equals("-o") && first + 1 < args.length) {
+                output = args[first + 1];
+                first += 2;
+            } else if (args[first].equals("-x") && first + 1 < args.length) {
+                index = args[first + 1];
+                first += 2;
+            } else if (args[first].equals("-f") && first + 1 < args.length) {
+                distance = Integer.parseInt(args[first + 1]);
+                first += 2;
+            } else if (args[first].equals("-d") && first + 1 < args.length) {
+                dump = args[first + 1];
+                first += 2;
+            } else if (args[first].equals("-r") && first + 1 < args.length) {
+                replay = args[first + 1];
+                first += 2;
+            } else if (args[first].equals("-m") && first + 1 < args.length) {
+                statistics = args[first + 1];
+                first += 2;
+            } else if (args[first].equals("-i") && first + 1 < args.length) {
+                manifest = args[first + 1];
+                first += 2;
+            } else if (args[first].equals("-s")) {
+                streaming = true;
+                ++first;
+            } else if (args[first].equals("-j")) {
+                json = true;
+                ++first;
+            } else if (args[first].equals("-g")) {
+                global = true;
+                ++first;
+            } else if (args[first].equals("-b")) {
+                bodies = true;
+                ++first;
+            } else {
+                break;
+            }
+        }
+        // the options selecting how the files are processed
+        List<String> modes = new ArrayList<>();
+        for (String[] option : new String[][]{{"-d", dump}, {"-r", replay},
+            {"-x", index}, {"-b", bodies ? "" : null}, {"-g", global ? "" : null},
+            {"-i", manifest}, {"-t", threads > 1 ? "" : null}}) {
+            if (option[1] != null) {
+                modes.add(option[0]);
+            }
+        }
+        String conflict = null;
+        if (modes.size() > 1) {
+            conflict = "Options " + modes.get(0) + " and " + modes.get(1)
+                    + " cannot be combined";
+        } else if (dump != null && (output != null || json || distance > 0
+                || statistics != null)) {
+            conflict = "Option -d writes no entries: -o, -j, -f and -m are not allowed";
+        } else if (distance > 0 && output == null) {
+            conflict = "Option -f writes the suggestions next to the output: -o is required";
+        } else if (replay != null && args.length > first) {
+            conflict = "Option -r reads no XML files";
+        }
+        if (conflict != null || (args.length == first && replay == null)) {
+            if (conflict != null) {
+                System.err.println(conflict);
+            }
+            System.err.println("Usage: Split [-t threads | -i manifestdir | -g | -b | -x indexfile] [-s] [-o outfile [-f distance]] [-j] [-m metricsfile] file1.xml file2.xml ...");
+            System.err.println("       Split -d dumpfile file1.xml file2.xml ...");
+            System.err.println("       Split [-o outfile [-f distance]] [-j] [-m metricsfile] -r dumpfile");
+            if (conflict != null) {
+                System.exit(2);
+            }
+        } else if (dump != null) {
+            List<File> files = new ArrayList<>();
+            for (int n = first; n < args.length; ++n) {
+                files.add(new File(args[n]));
+            }
+            int pages = HeaderDump.dump(engine, files, new File(dump));
+            System.err.println(pages + " pages dumped");
+        } else {
+            List<File> files = new ArrayList<>();
+            for (int n = first; n < args.length; ++n) {
+                files.add(new File(args[n]));
+            }
+            EntrySink sink;
+            if (output == null) {
+                sink = json ? new JSONSink(System.out, 1000)
+                        : new XMLSink(System.out, Charset.defaultCharset(), 1000);
+            } else {
+                File file = new File(output);
+                sink = json ? new JSONSink(file, 0) : new XMLSink(file, 0);
+            }
+            if (distance > 0) {
+                File file = new File(output + ".suggestions");
+                EntrySink suggestions = json ? new JSONSink(file, 0) : new XMLSink(file, 0);
+                sink = new SuggestionSink(sink, suggestions,
+                        FuzzyMatcher.Weights.getDefault(), distance);
+            }
+            if (statistics != null) {
+                metrics = new Metrics();
+                sink = metrics.counter(sink);
+            }
+            try {
+                sink.begin();
+                if (replay != null) {
+                    HeaderDump.classify(engine, new File(replay), "", sink);
+                } else if (index != null) {
+                    LemmaIndex.Writer writer = new LemmaIndex.Writer();
+                    process(files, "", sink, writer);
+                    writer.write(new File(index));
+                    System.err.println(writer.size() + " lemmas indexed");
+                } else if (bodies) {
+                    Assembler.process(engine, files, "", sink);
+                } else if (global) {
+                    OrderAnalysis analysis = new OrderAnalysis(engine);
+                    analysis.add(files);
+                    analysis.split(sink);
+                } else if (manifest != null) {
+                    Incremental incremental = new Incremental(new File(manifest));
+                    incremental.process(files, "", sink);
+                    System.err.println(incremental.getProcessed() + " files processed, "
+                            + incremental.getReused() + " unchanged");
+                } else if (threads > 1) {
+                    new Pipeline(threads).split(files, "", sink);
+                } else {
+                    process(files, "", sink);
+                }
+                sink.end();
+                if (metrics != null) {
+                    metrics.write(statistics);
+                }
+            } finally {
+                if (output != null) {
+                    sink.close();
                 }
-                System.out.println("</file>");
             }
-            System.out.println("</DA>");
         }
     }
 }
@@ -0,0 +1,611 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import eu.digitisation.log.Messages;
+import eu.digitisation.text.CharFilter;
+import eu.digitisation.text.StringNormalizer;
+import eu.digitisation.xml.XPathFilter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import javax.xml.xpath.XPathExpressionException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Header extraction and classification with a fixed configuration: the
+ * character filter applied to the text, the collator defining the
+ * alphabetical order, the type of the regions containing entries, the
+ * single-letter connectors which do not start entries and the rules
+ * recognizing past participles (see ParticipleMatcher). Engines are
+ * immutable and can be shared by any number of threads: the state of a
+ * collection of pages (the last entry found) is passed explicitly, and
+ * results are returned as Entry objects (tag, text, reason, priority, file
+ * and region identifiers) instead of being printed.
+ * <p>
+ * The collator must be thread-safe (java.text.Collator instances are
+ * synchronized, so they are safe but serialize the comparisons;
+ * OldSpanishComparator is not synchronized).</p>
+ *
+ * @author R.C.C.
+ */
+public class SplitEngine {
+
+    private final CharFilter filter;      // maps PUA characters to standard characters
+    private final CharTranslator translator; // compiled version of filter
+    private final Comparator<String> collator; // defines the lexicographic order
+    private final String type;            // type of regions containing entries
+    private final String connectors;      // single letters which are not entries
+    private final ParticipleMatcher participles; // past participle rules
+
+    // Reusable tokenizers of region text
+    private final ThreadLocal<Tokenizer> tokenizers = new ThreadLocal<Tokenizer>() {
+        @Override
+        protected Tokenizer initialValue() {
+            return new Tokenizer(translator);
+        }
+    };
+    // Selects XML elements with relevant content (XPath is not thread-safe)
+    private final ThreadLocal<XPathFilter> selector = new ThreadLocal<XPathFilter>() {
+        @Override
+        protected XPathFilter initialValue() {
+            try {
+                String[] inclusions = {"TextRegion[@type='" + type + "']"};
+                return new XPathFilter(inclusions, null);
+            } catch (XPathExpressionException ex) {
+                Messages.severe(ex.getMessage());
+                return null;
+            }
+        }
+    };
+
+    /**
+     * The default configuration, created on first use
+     */
+    private static class Default {
+
+        final static SplitEngine instance = new SplitEngine(defaultFilter(),
+                OldSpanishComparator.getInstance(), ParticipleMatcher.getDefault());
+    }
+
+    /**
+     * Create an engine
+     *
+     * @param filter the character filter applied to region text (in
+     * compatibility mode)
+     * @param collator the alphabetical order of entries
+     * @param type the type attribute of the regions containing entries
+     * @param connectors the single-letter words (uppercase) which never start
+     * an entry
+     * @param participles the rules recognizing past participles
+     */
+    public SplitEngine(CharFilter filter, Comparator<String> collator,
+            String type, String connectors, ParticipleMatcher participles) {
+        this.filter = filter;
+        this.translator = new CharTranslator(filter);
+        this.collator = collator;
+        this.type = type;
+        this.connectors = connectors;
+        this.participles = participles;
+    }
+
+    /**
+     * Create an engine for paragraph regions with the Spanish connectors (A, O
+     * and Y)
+     *
+     * @param filter the character filter applied to region text (in
+     * compatibility mode)
+     * @param collator the alphabetical order of entries
+     * @param participles the rules recognizing past participles
+     */
+    public SplitEngine(CharFilter filter, Comparator<String> collator,
+            ParticipleMatcher participles) {
+        this(filter, collator, "paragraph", "AOY", participles);
+    }
+
+    /**
+     * @return the shared engine with the default configuration (the filter
+     * in /UnicodeCharEquivalences.csv, the old Spanish collation and the
+     * rules in /Participles.txt)
+     */
+    public static SplitEngine getDefault() {
+        return Default.instance;
+    }
+
+    /**
+     * @return the character filter defined by /UnicodeCharEquivalences.csv
+     */
+    public static CharFilter defaultFilter() {
+        InputStream is = SplitEngine.class.getResourceAsStream("/UnicodeCharEquivalences.csv");
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+        CharFilter cfilter = new CharFilter(true);
+        cfilter.addCSV(reader);
+        return cfilter;
+    }
+
+    public CharFilter getFilter() {
+        return filter;
+    }
+
+    CharTranslator getTranslator() {
+        return translator;
+    }
+
+    public Comparator<String> getCollator() {
+        return collator;
+    }
+
+    /**
+     * @return the rules recognizing past participles
+     */
+    public ParticipleMatcher getParticiples() {
+        return participles;
+    }
+
+    /**
+     * @return the type attribute of the regions containing entries
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * @return the single-letter words which never start an entry
+     */
+    public String getConnectors() {
+        return connectors;
+    }
+
+    /**
+     *
+     * @param text a string
+     * @return the longest prefix of the text containing only uppercase letters
+     */
+    public String header(String text) {
+        return header(tokenizers.get().reset(text));
+    }
+
+    /**
+     *
+     * @param e a document element
+     * @return the longest prefix of the textual content containing only
+     * uppercase letters
+     */
+    public String header(Node e) {
+        return header(tokenizers.get().reset(e));
+    }
+
+    /**
+     *
+     * @param tokens a tokenizer of a text
+     * @return the longest prefix of the text containing only uppercase
+     * letters (no more tokens are read once the prefix ends)
+     */
+    private static String header(Tokenizer tokens) {
+        StringBuilder builder = new StringBuilder();
+
+        while (tokens.next()) {
+            String token = tokens.token();
+            // remove leading and trailing punctuation & spaces
+            String word = StringNormalizer.trim(token);
+            if (word.length() > 0) {
+                switch (WordType.typeOf(word)) {
+                    case UPPERCASE: // header word
+                        if (builder.length() > 0) {
+                            builder.append(' ');
+                        }
+                        builder.append(token);
+                        break;
+                    case LOWERCASE:
+                        // end of header reached
+                        return builder.toString();
+                    case MIXEDCASE:
+                        if (WordType.isFirstWordInSentence(word)) {
+                            // end of header reached
+                            return builder.toString();
+                        } else { // striking content: it must be anylised
+                            if (builder.length() > 0) {
+                                builder.append(' ');
+                            }
+                            builder.append(token);
+                        }
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param doc a PAGE XML document
+     * @return the regions containing entries, in reading order
+     */
+    List<Element> select(Document doc) {
+        return ReadingOrder.sort(selector.get().selectElements(doc), doc);
+    }
+
+    /**
+     *
+     * @param doc a PAGE XML document
+     * @return the non-empty headers (region identifier and header text) in
+     * the document, in reading order
+     */
+    public List<Region> headers(Document doc) {
+        List<Region> list = new ArrayList<>();
+        for (Element e : select(doc)) {
+            String head = header(e);
+            if (!head.isEmpty()) {
+                list.add(new Region(e.getAttribute("id"), head));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Extract the headers in a document and record the time spent in region
+     * selection, reordering and header extraction
+     *
+     * @param doc a PAGE XML document
+     * @param metrics the run statistics
+     * @return the non-empty headers in the document, in reading order
+     */
+    List<Region> headers(Document doc, Metrics metrics) {
+        long t = System.nanoTime();
+        List<Element> elements = selector.get().selectElements(doc);
+        t = metrics.record(Metrics.Stage.SELECT, t);
+        elements = ReadingOrder.sort(elements, doc);
+        t = metrics.record(Metrics.Stage.REORDER, t);
+        List<Region> list = new ArrayList<>();
+        for (Element e : elements) {
+            String head = header(e);
+            if (!head.isEmpty()) {
+                list.add(new Region(e.getAttribute("id"), head));
+            }
+        }
+        metrics.record(Metrics.Stage.HEADER, t);
+        return list;
+    }
+
+    /**
+     *
+     * @param is an input stream with PAGE XML content (it is closed)
+     * @return the non-empty headers (region identifier and header text) in
+     * the page, in reading order
+     * @throws IOException if the content cannot be read or parsed
+     */
+    public List<Region> headers(InputStream is) throws IOException {
+        try (RegionReader reader = new RegionReader(is, type)) {
+            return headers(reader);
+        }
+    }
+
+    /**
+     * @param reader a reader of PAGE XML regions
+     * @return the non-empty headers in the regions returned by the reader
+     */
+    List<Region> headers(RegionReader reader) throws IOException {
+        List<Region> list = new ArrayList<>();
+        Region region;
+        while ((region = reader.next()) != null) {
+            String head = header(region.getText().trim());
+            if (!head.isEmpty()) {
+                list.add(new Region(region.getId(), head));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Extract the headers read by a streaming reader and record the time
+     * spent in header extraction and in parsing (which includes the
+     * selection of regions)
+     *
+     * @param reader a reader of PAGE XML regions
+     * @param metrics the run statistics
+     * @return the non-empty headers in the regions returned by the reader
+     */
+    List<Region> headers(RegionReader reader, Metrics metrics) throws IOException {
+        List<Region> list = new ArrayList<>();
+        long start = System.nanoTime();
+        long extraction = 0;
+        Region region;
+        while ((region = reader.next()) != null) {
+            long t = System.nanoTime();
+            String head = header(region.getText().trim());
+            if (!head.isEmpty()) {
+                list.add(new Region(region.getId(), head));
+            }
+            extraction += System.nanoTime() - t;
+        }
+        metrics.add(Metrics.Stage.PARSE, System.nanoTime() - start - extraction);
+        metrics.add(Metrics.Stage.HEADER, extraction);
+        return list;
+    }
+
+    /**
+     *
+     * @param text a string of text
+     * @return the first word (sequence of consecutive letters) in the text
+     */
+    public static String firstWord(String text) {
+        if (text.length() > 0 && Character.isLetter(text.charAt(0))) {
+            int n = 0;
+            while (n < text.length()) {
+                int c = text.codePointAt(n);
+                if (!Character.isLetter(c)) {
+                    break;
+                }
+                n += Character.charCount(c);
+            }
+            return text.substring(0, n);
+        } else {
+            return "";
+        }
+    }
+
+    /**
+     * Test if a string can be the initial segment of a new sentence or
+     * paragraph: punctuation (optional) followed by a mixed case word with only
+     * the initial letter is uppercase and ended by optional punctuation/space
+     *
+     * @param text word a string
+     * @return true if the string can be the initial segment of a new sentence
+     * or paragraph
+     */
+    public static boolean isSentenceHead(String text) {
+        int n = 0;
+        int c;
+        // leading punctuation and spaces
+        while (n < text.length() && (WordType.isPunct(c = text.charAt(n))
+                || Tokenizer.isSpace((char) c))) {
+            ++n;
+        }
+        if (n == text.length() || !WordType.isUpper(c = text.codePointAt(n))) {
+            return false;
+        }
+        n += Character.charCount(c);
+        while (n < text.length()
+                && WordType.isNotUpperLetter(c = text.codePointAt(n))) {
+            n += Character.charCount(c);
+        }
+        if (n < text.length()) {
+            c = text.charAt(n);
+            if (!WordType.isPunct(c) && !Tokenizer.isSpace((char) c)) {
+                return false;
+            }
+            // the rest must be a single line
+            for (++n; n < text.length(); ++n) {
+                c = text.charAt(n);
+                if (c == '\n' || c == '\r' || c == '\u0085'
+                        || c == '\u2028' || c == '\u2029') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a header is a past participle (in any gender and number) of
+     * the last entry, according to the participle rules of this engine
+     *
+     * @param head a header
+     * @param last the last entry
+     * @return true if the header is the past participle of the last entry
+     */
+    public boolean isParticiple(String head, String last) {
+        return participles.isParticiple(head, last);
+    }
+
+    /**
+     * Classify a sequence of headers
+     *
+     * @param heads the headers (region identifier and text)
+     * @param last the last entry found before the first header
+     * @param file the identifier of the file containing the headers (may be
+     * null)
+     * @param sink the destination of the entries
+     * @return the last entry after processing all headers
+     * @throws IOException if the entries cannot be written
+     */
+    public String split(List<Region> heads, String last, String file,
+            EntrySink sink) throws IOException {
+        for (Region region : heads) {
+            String head = region.getText();
+            String id = region.getId();
+            if (!head.isEmpty()) {
+                String start = firstWord(head).replace('ñ', 'Ñ'); // no N tilde
+                WordType wtype = WordType.typeOf(start);
+                if (wtype == WordType.UPPERCASE) {
+                    // Discard connectors
+                    if (start.length() == 1 && connectors.indexOf(start.charAt(0)) >= 0
+                            && last.length() > 0) {
+                        int first = Character.codePointAt(start, 0);
+                        int ref = Character.codePointAt(last, 0);
+                        if (first == ref || first == ref + 1) {
+                            sink.entry(new Entry(Entry.Tag.CHECK, head, null, null, file, id));
+                        } else {
+                            sink.entry(new Entry(Entry.Tag.SKIP, head, null, null, file, id));
+                        }
+
+                    } else {
+                        int n = collator.compare(last, start);
+                        if (n < 0) {
+                            sink.entry(new Entry(Entry.Tag.ENTRY,
+                                    StringNormalizer.trim(head), null, null, file, id));
+                            last = start;
+                        } else if (n == 0) {
+                            sink.entry(new Entry(Entry.Tag.SUBENTRY,
+                                    StringNormalizer.trim(head), null, null, file, id));
+                        } else if (isParticiple(start, last)) {
+                            sink.entry(new Entry(Entry.Tag.PASTPART,
+                                    StringNormalizer.trim(head), null, null, file, id));
+                        } else {
+                            sink.entry(new Entry(Entry.Tag.CHECK, head,
+                                    "sort", null, file, id));
+                            last = start;
+                        }
+                    }
+                } else if (wtype == WordType.MIXEDCASE) {
+                    if (isSentenceHead(head)) {
+                        // this should not happen
+                        sink.entry(new Entry(Entry.Tag.SKIP, head, null, null, file, id));
+
+                    } else {
+                        String s = start.replace('l', 'I');
+                        if (WordType.typeOf(s) == WordType.UPPERCASE) {
+                            // wrong transcription
+                            sink.entry(new Entry(Entry.Tag.ITYPO,
+                                    StringNormalizer.trim(head), null, null, file, id));
+                            last = s;
+
+                        } else if (WordType.isPunct(start)) {
+                            sink.entry(new Entry(Entry.Tag.SKIP, head,
+                                    "punt", null, file, id));
+                        } else if (WordType.nearlyUpper(start)) {
+                            // a single mismatch
+                            sink.entry(new Entry(Entry.Tag.CHECK, head,
+                                    null, "high", file, id));
+                        } else {
+                            sink.entry(new Entry(Entry.Tag.CHECK, head,
+                                    null, "low", file, id));
+                        }
+                    }
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * The entries found in a page
+     */
+    public static class Result {
+
+        private final List<Entry> entries;
+        private final String last;
+        private final String image;
+
+        Result(List<Entry> entries, String last, String image) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.last = last;
+            this.image = image;
+        }
+
+        /**
+         * @return the entries, in reading order
+         */
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return the last entry after the page (to be passed when
+         * processing the next page)
+         */
+        public String getLast() {
+            return last;
+        }
+
+        /**
+         * @return the image file name of the page or null if unknown
+         */
+        public String getImage() {
+            return image;
+        }
+    }
+
+    /**
+     * A sink collecting entries in a list
+     */
+    private static class Collector implements EntrySink {
+
+        final List<Entry> entries = new ArrayList<>();
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void startFile(String id) {
+        }
+
+        @Override
+        public void entry(Entry entry) {
+            entries.add(entry);
+        }
+
+        @Override
+        public void error(String message) {
+        }
+
+        @Override
+        public void endFile() {
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Classify a sequence of headers
+     *
+     * @param file the identifier of the file containing the headers (may be
+     * null)
+     * @param heads the headers (region identifier and text)
+     * @param last the last entry found before the first header
+     * @return the entries and the last entry after the headers
+     */
+    public Result split(String file, List<Region> heads, String last) {
+        Collector collector = new Collector();
+        try {
+            last = split(heads, last, file, collector);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // never thrown by collector
+        }
+        return new Result(collector.entries, last, null);
+    }
+
+    /**
+     * Extract and classify the headers in a page
+     *
+     * @param file the identifier of the page (may be null)
+     * @param page an input stream with PAGE XML content (it is closed)
+     * @param last the last entry found before this page
+     * @return the entries, the last entry after the page and the page image
+     * @throws IOException if the page cannot be read or parsed
+     */
+    public Result split(String file, InputStream page, String last)
+            throws IOException {
+        try (RegionReader reader = new RegionReader(page, type)) {
+            Result result = split(file, headers(reader), last);
+            return new Result(result.entries, result.last, reader.getImage());
+        }
+    }
+}
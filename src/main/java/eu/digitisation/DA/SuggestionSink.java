@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A sink which forwards the events to another sink and finds for every entry
+ * needing a check the closest accepted headword (see FuzzyMatcher). Since the
+ * headwords are only known after the last file, the suggestions are written
+ * at the end to a separate sink: for every file with suggestions, a startFile
+ * event, the entries to be checked (with their suggestion, and the same region
+ * identifiers as in the main output) and an endFile event. Only the headwords
+ * and the entries to be checked are kept in memory.
+ *
+ * @author R.C.C.
+ */
+public class SuggestionSink implements EntrySink {
+
+    private final static int MIN_LENGTH = 3; // shorter words are not matched
+
+    private final EntrySink sink;
+    private final EntrySink suggestionSink;
+    private final FuzzyMatcher.Weights weights;
+    private final int distance;
+    private final Set<String> headwords = new LinkedHashSet<>();
+    private final List<Check> checks = new ArrayList<>();
+    private String file;   // the current file identifier
+    private int files;     // the number of files started
+    private int suggestions;
+
+    /**
+     * An entry to be checked and the file where it was found
+     */
+    private static class Check {
+
+        final int number;   // the file number
+        final String file;
+        final Entry entry;
+
+        Check(int number, String file, Entry entry) {
+            this.number = number;
+            this.file = file;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Create a sink
+     *
+     * @param sink the destination of the entries
+     * @param suggestionSink the destination of the suggestions
+     * @param weights the confusion weights
+     * @param distance the maximum number of edits between a word and its
+     * suggestion
+     */
+    public SuggestionSink(EntrySink sink, EntrySink suggestionSink,
+            FuzzyMatcher.Weights weights, int distance) {
+        this.sink = sink;
+        this.suggestionSink = suggestionSink;
+        this.weights = weights;
+        this.distance = distance;
+    }
+
+    /**
+     * @return the number of suggestions made
+     */
+    public int getSuggestions() {
+        return suggestions;
+    }
+
+    @Override
+    public void begin() throws IOException {
+        sink.begin();
+    }
+
+    @Override
+    public void startFile(String id) throws IOException {
+        file = id;
+        ++files;
+        sink.startFile(id);
+    }
+
+    @Override
+    public void entry(Entry entry) throws IOException {
+        if (entry.getTag() == Entry.Tag.CHECK) {
+            checks.add(new Check(files, file, entry));
+        } else if (entry.getTag() != Entry.Tag.SKIP) {
+            headwords.add(LemmaIndex.lemma(entry));
+        }
+        sink.entry(entry);
+    }
+
+    @Override
+    public void error(String message) throws IOException {
+        sink.error(message);
+    }
+
+    @Override
+    public void endFile() throws IOException {
+        sink.endFile();
+    }
+
+    /**
+     * End the output and write the suggestions for the entries to be checked
+     *
+     * @throws IOException
+     */
+    @Override
+    public void end() throws IOException {
+        sink.end();
+        FuzzyMatcher matcher = new FuzzyMatcher(headwords, weights, distance);
+        Check previous = null;  // the last check with a suggestion
+        suggestionSink.begin();
+        for (Check check : checks) {
+            String word = FuzzyMatcher.word(check.entry.getText());
+            String suggestion = word.length() < MIN_LENGTH
+                    ? null : matcher.suggest(word);
+            if (suggestion != null) {
+                if (previous == null || previous.number != check.number) {
+                    if (previous != null) {
+                        suggestionSink.endFile();
+                    }
+                    suggestionSink.startFile(check.file);
+                }
+                suggestionSink.entry(check.entry.suggest(suggestion));
+                previous = check;
+                ++suggestions;
+            }
+        }
+        if (previous != null) {
+            suggestionSink.endFile();
+        }
+        checks.clear();
+        suggestionSink.end();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sink.close();
+        } finally {
+            suggestionSink.close();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import org.w3c.dom.Node;
+
+/**
+ * Lazy tokenizer of the translated text of a region. Tokens are the maximal
+ * sequences of non-space (\p{Space}) characters in the translated text, the
+ * same returned by {@code translate(text).split("\\p{Space}+")} (except for
+ * empty strings). The source text is only read (from the DOM text nodes of
+ * an element, if the source is an element) and translated as far as needed
+ * to deliver the tokens requested, one white-space delimited segment at a
+ * time, so that the tail of a long paragraph is never processed when only
+ * its first words are required.
+ * <p>
+ * A tokenizer is reusable (see reset) but not thread-safe.</p>
+ *
+ * @author R.C.C.
+ */
+class Tokenizer {
+
+    private final CharTranslator translator;
+    private final StringBuilder text;  // source text read so far (DOM)
+    private final StringBuilder out;   // translated text
+    private CharSequence input;        // the source text
+    private Node root;                 // the source element
+    private Node node;                 // next DOM node (null when exhausted)
+    private int translated;            // input chars translated so far
+    private int start;                 // start of current token in out
+    private int end;                   // end of current token in out
+
+    /**
+     * @param translator the translator applied to the source text
+     */
+    Tokenizer(CharTranslator translator) {
+        this.translator = translator;
+        this.text = new StringBuilder(256);
+        this.out = new StringBuilder(256);
+    }
+
+    /**
+     * Start tokenizing a text
+     *
+     * @param s the source text
+     * @return this tokenizer
+     */
+    Tokenizer reset(String s) {
+        input = s;
+        root = node = null;
+        return restart();
+    }
+
+    /**
+     * Start tokenizing the textual content of a DOM node (the text returned
+     * by Node.getTextContent())
+     *
+     * @param e the source element
+     * @return this tokenizer
+     */
+    Tokenizer reset(Node e) {
+        text.setLength(0);
+        input = text;
+        root = e;
+        node = e.getFirstChild();
+        return restart();
+    }
+
+    private Tokenizer restart() {
+        out.setLength(0);
+        translated = start = end = 0;
+        return this;
+    }
+
+    /**
+     * Space characters as defined by \p{Space}
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /**
+     * Append the content of the next text node in the source element
+     *
+     * @return false if there are no more text nodes
+     */
+    private boolean read() {
+        while (node != null) {
+            Node current = node;
+            short type = current.getNodeType();
+            Node child = (type == Node.ELEMENT_NODE
+                    || type == Node.ENTITY_REFERENCE_NODE)
+                    ? current.getFirstChild() : null;
+            if (child != null) {
+                node = child;
+            } else {
+                Node n = current;
+                while (n != root && n.getNextSibling() == null) {
+                    n = n.getParentNode();
+                }
+                node = (n == root) ? null : n.getNextSibling();
+            }
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                text.append(current.getNodeValue());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translate the next segment of the source text (optional white space
+     * followed by non-space characters)
+     *
+     * @return false if the whole source text has been translated
+     */
+    private boolean more() {
+        int n = translated;
+        boolean word = false;  // non-space chars found
+        while (true) {
+            while (n < input.length() && (!word || !isSpace(input.charAt(n)))) {
+                word |= !isSpace(input.charAt(n));
+                ++n;
+            }
+            if (n < input.length() || !read()) {
+                break;
+            }
+        }
+        if (!translator.isCompiled()) {
+            while (read()) {
+                // the whole text must be translated at once
+            }
+            n = input.length();
+        }
+        if (n == translated) {
+            return false;
+        }
+        translator.translate(input, translated, n, out);
+        translated = n;
+        return true;
+    }
+
+    /**
+     * Move to the next token
+     *
+     * @return false if there are no more tokens
+     */
+    boolean next() {
+        int n = end;
+        while (true) {
+            while (n < out.length() && isSpace(out.charAt(n))) {
+                ++n;
+            }
+            if (n < out.length()) {
+                break;
+            } else if (!more()) {
+                start = end = n;
+                return false;
+            }
+        }
+        start = n;
+        while (true) {
+            while (n < out.length() && !isSpace(out.charAt(n))) {
+                ++n;
+            }
+            if (n < out.length() || !more()) {
+                break;
+            }
+        }
+        end = n;
+        return true;
+    }
+
+    /**
+     * @return the current token
+     */
+    String token() {
+        return out.substring(start, end);
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running classification of the PAGE XML files in a directory. The
+ * pages (files ending with .xml, in file name order) are classified once at
+ * start; then the directory is watched and every batch of new, modified or
+ * deleted pages is processed as soon as the directory has been quiet for a
+ * short delay. Only the changed pages are parsed (by a pool of threads), and
+ * pages are classified again only from the first change onward: a page is
+ * skipped if neither its headers nor the last entry before it changed. The
+ * entries of all pages are then written to the output file, which is
+ * replaced atomically. An output file in the watched directory is not taken
+ * as a page. A batch which fails (for instance, because the output cannot be
+ * written) is reported and its changes are processed again with the next one.
+ *
+ * @author R.C.C.
+ */
+public class Watcher implements Closeable, Runnable {
+
+    private final SplitEngine engine;
+    private final File dir;
+    private final File output;
+    private final String ignored;        // output file name if in the directory
+    private final long delay;            // quiet time before a batch (ms)
+    private final ExecutorService pool;
+    private final WatchService watch;
+    private final TreeMap<String, Page> pages = new TreeMap<>(); // by file name
+    private volatile boolean closed;
+    private int batches;         // batches processed
+    private int classified;      // pages classified in the last batch
+
+    /**
+     * The state of a page
+     */
+    private static class Page {
+
+        final File file;
+        List<Region> heads;   // null if the file cannot be read
+        boolean changed;      // headers changed since last classification
+        String in;            // last entry before the page
+        String out;           // last entry after the page
+        List<Entry> entries;
+
+        Page(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Create a watcher (the directory is not read until run or update is
+     * called)
+     *
+     * @param engine the engine extracting and classifying headers
+     * @param dir the directory with PAGE XML files
+     * @param output the output file (XML)
+     * @param threads the number of threads parsing pages
+     * @param delay the time (in milliseconds) without changes in the
+     * directory before a batch of changes is processed
+     * @throws IOException if the directory cannot be watched
+     */
+    public Watcher(SplitEngine engine, File dir, File output, int threads, long delay)
+            throws IOException {
+        this.engine = engine;
+        this.dir = dir;
+        this.output = output;
+        this.ignored = dir.getCanonicalFile().equals(output.getCanonicalFile().getParentFile())
+                ? output.getName() : null;
+        this.delay = delay;
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.watch = FileSystems.getDefault().newWatchService();
+        dir.toPath().register(watch, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private boolean isPage(String name) {
+        return name.endsWith(".xml") && !name.equals(ignored);
+    }
+
+    /**
+     * @return the names of all pages in the directory
+     */
+    private List<String> list() {
+        List<String> names = new ArrayList<>();
+        String[] files = dir.list();
+        if (files != null) {
+            for (String name : files) {
+                if (isPage(name)) {
+                    names.add(name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Extract the headers in a page
+     */
+    private List<Region> headers(File file) {
+        try {
+            return engine.headers(new BufferedInputStream(new FileInputStream(file)));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Process a batch of changes: parse the given pages (those which no
+     * longer exist are removed), classify the pages from the first change
+     * onward and write the output
+     *
+     * @param names the file names of the changed pages
+     * @return the number of pages classified
+     * @throws IOException if the output cannot be written
+     */
+    public synchronized int update(Collection<String> names) throws IOException {
+        Set<String> changes = new TreeSet<>(names);
+        List<Page> parsed = new ArrayList<>();
+        List<Future<List<Region>>> results = new ArrayList<>();
+        for (String name : changes) {
+            final File file = new File(dir, name);
+            if (file.isFile()) {
+                Page page = pages.get(name);
+                if (page == null) {
+                    page = new Page(file);
+                    pages.put(name, page);
+                }
+                parsed.add(page);
+                results.add(pool.submit(new Callable<List<Region>>() {
+                    @Override
+                    public List<Region> call() {
+                        return headers(file);
+                    }
+                }));
+            } else {
+                pages.remove(name);
+            }
+        }
+        for (int n = 0; n < parsed.size(); ++n) {
+            Page page = parsed.get(n);
+            List<Region> heads;
+            try {
+                heads = results.get(n).get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            } catch (ExecutionException ex) {
+                heads = null;
+            }
+            // a touched page with the same headers is not changed
+            page.changed |= heads == null ? page.heads != null : !heads.equals(page.heads);
+            page.heads = heads;
+        }
+
+        classified = 0;
+        String last = "";
+        if (!changes.isEmpty()) {
+            Map.Entry<String, Page> previous = pages.lowerEntry(changes.iterator().next());
+            if (previous != null) {
+                last = previous.getValue().out;
+            }
+            for (Page page : pages.tailMap(changes.iterator().next(), true).values()) {
+                if (page.changed || !last.equals(page.in)) {
+                    page.in = last;
+                    if (page.heads == null) {
+                        page.entries = Collections.emptyList();
+                        page.out = last;
+                    } else {
+                        SplitEngine.Result result = engine.split(page.file.getPath(),
+                                page.heads, last);
+                        page.entries = result.getEntries();
+                        page.out = result.getLast();
+                    }
+                    page.changed = false;
+                    ++classified;
+                }
+                last = page.out;
+            }
+        }
+        write();
+        ++batches;
+        return classified;
+    }
+
+    /**
+     * Write the entries of all pages (the output file is replaced
+     * atomically)
+     */
+    private void write() throws IOException {
+        File tmp = new File(output.getPath() + ".tmp");
+        boolean written = false;
+        try (XMLSink sink = new XMLSink(tmp, 0)) {
+            sink.begin();
+            for (Page page : pages.values()) {
+                sink.startFile(page.file.getPath());
+                if (page.heads == null) {
+                    sink.error("Wrong file");
+                } else {
+                    for (Entry entry : page.entries) {
+                        sink.entry(entry);
+                    }
+                }
+                sink.endFile();
+            }
+            sink.end();
+            written = true;
+        } finally {
+            if (!written) {
+                tmp.delete();
+            }
+        }
+        Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the last entry after all pages
+     */
+    public synchronized String getLast() {
+        return pages.isEmpty() ? "" : pages.lastEntry().getValue().out;
+    }
+
+    /**
+     * @return the number of batches processed
+     */
+    public synchronized int getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of pages classified in the last batch
+     */
+    public synchronized int getClassified() {
+        return classified;
+    }
+
+    /**
+     * Add the page names in the events of a key to a set of changes
+     *
+     * @return false if the key is no longer valid (the directory cannot be
+     * watched any more)
+     */
+    private boolean collect(WatchKey key, Set<String> changes) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changes.addAll(list());
+                synchronized (this) {
+                    changes.addAll(pages.keySet());
+                }
+            } else {
+                String name = ((Path) event.context()).getFileName().toString();
+                if (isPage(name)) {
+                    changes.add(name);
+                }
+            }
+        }
+        return key.reset();
+    }
+
+    /**
+     * Classify all pages and then process changes until the watcher is
+     * closed. The changes in a batch which fails are kept and processed
+     * again with the next batch. The watcher is closed if the directory is
+     * deleted or cannot be accessed any more.
+     */
+    @Override
+    public void run() {
+        try {
+            Set<String> changes = new TreeSet<>(list());
+            batch(changes);
+            boolean valid = true;
+            while (!closed && valid) {
+                valid = collect(watch.take(), changes);
+                // wait until the directory is quiet (but not forever)
+                long limit = System.currentTimeMillis() + 10 * delay;
+                WatchKey key;
+                while (valid && System.currentTimeMillis() < limit
+                        && (key = watch.poll(delay, TimeUnit.MILLISECONDS)) != null) {
+                    valid = collect(key, changes);
+                }
+                if (valid && !changes.isEmpty()) {
+                    batch(changes);
+                }
+            }
+            if (!valid) {
+                System.err.println("Directory " + dir + " can no longer be watched");
+                close();
+            }
+        } catch (ClosedWatchServiceException ex) {
+            // closed
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * Process a batch of changes, which are removed from the set only if
+     * the batch succeeds
+     */
+    private void batch(Set<String> changes) {
+        try {
+            update(changes);
+            changes.clear();
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Batch of " + changes.size() + " changes failed, "
+                    + "retrying with the next one: " + ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watch.close();
+        pool.shutdown();
+    }
+
+    /**
+     * Watch a directory and keep the classification of its pages up to date
+     *
+     * @param args the directory, optionally preceded by the options "-o
+     * file" (output file, default entries.xml), "-t threads" (default 4) and
+     * "-d delay" (milliseconds without changes before processing them,
+     * default 500)
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String output = "entries.xml";
+        int threads = 4;
+        long delay = 500;
+        int first = 0;
+        while (first + 1 < args.length && args[first].startsWith("-")) {
+            if (args[first].equals("-o")) {
+                output = args[first + 1];
+            } else if (args[first].equals("-t")) {
+                threads = Integer.parseInt(args[first + 1]);
+            } else if (args[first].equals("-d")) {
+                delay = Long.parseLong(args[first + 1]);
+            } else {
+                break;
+            }
+            first += 2;
+        }
+        if (args.length != first + 1) {
+            System.err.println("Usage: Watcher [-o outfile] [-t threads] [-d delay] dir");
+        } else {
+            Watcher watcher = new Watcher(SplitEngine.getDefault(),
+                    new File(args[first]), new File(output), threads, delay);
+            watcher.run();
+        }
+    }
+}
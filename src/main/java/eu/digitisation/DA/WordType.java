@@ -32,19 +32,64 @@ public enum WordType {
 
     UPPERCASE, LOWERCASE, MIXEDCASE, PUNCT, UNKNOWN;
 
+    /*
+     * The classification scans the code points in the word once, without
+     * regular expressions. Letter classes follow java.util.regex: \p{L} is
+     * any Unicode letter, \p{Lu} an uppercase letter (general category Lu)
+     * and \p{Punct} one of the ASCII punctuation characters.
+     */
+    /**
+     * @param c a Unicode code point
+     * @return true if c is an uppercase letter (\p{Lu})
+     */
+    static boolean isUpper(int c) {
+        return Character.getType(c) == Character.UPPERCASE_LETTER;
+    }
+
+    /**
+     * @param c a Unicode code point
+     * @return true if c is a letter which is not uppercase
+     * ([\p{L}&&[^\p{Lu}]])
+     */
+    static boolean isNotUpperLetter(int c) {
+        return Character.isLetter(c) && !isUpper(c);
+    }
+
+    /**
+     * @param c a Unicode code point
+     * @return true if c is an ASCII punctuation character (\p{Punct})
+     */
+    static boolean isPunct(int c) {
+        return (c >= '!' && c <= '/') || (c >= ':' && c <= '@')
+                || (c >= '[' && c <= '`') || (c >= '{' && c <= '~');
+    }
+
     public static WordType typeOf(String word) {
-        if (word.matches("\\p{L}+")) {
-            if (word.matches("\\p{Lu}+")) {
-                return UPPERCASE;
-            } else if (word.matches("[\\p{L}&&[^\\p{Lu}]]+")) {
-                return LOWERCASE;
+        boolean upper = false;   // contains uppercase letters
+        boolean lower = false;   // contains other letters
+        boolean punct = false;   // contains punctuation
+
+        for (int n = 0; n < word.length();) {
+            int c = word.codePointAt(n);
+            if (Character.isLetter(c)) {
+                if (isUpper(c)) {
+                    upper = true;
+                } else {
+                    lower = true;
+                }
+            } else if (isPunct(c)) {
+                punct = true;
             } else {
-                return MIXEDCASE;
+                return UNKNOWN;
             }
-        } else if (word.matches("\\p{Punct}+")) {
-            return PUNCT;
+            n += Character.charCount(c);
+        }
+        if (punct) {
+            return (upper || lower) ? UNKNOWN : PUNCT;
+        } else if (upper) {
+            return lower ? MIXEDCASE : UPPERCASE;
         } else {
-            return UNKNOWN;
+            return lower ? LOWERCASE : UNKNOWN;
         }
     }
 
@@ -57,7 +102,25 @@ public enum WordType {
      * letter is uppercase and all trailing letters are lowercase
      */
     public static boolean isFirstWordInSentence(String word) {
-        return word.matches("\\p{Punct}*\\p{Lu}[\\p{L}&&[^\\p{Lu}]]*");
+        int n = 0;
+        // \p{Punct}*
+        while (n < word.length() && isPunct(word.charAt(n))) {
+            ++n;
+        }
+        // \p{Lu}
+        if (n == word.length() || !isUpper(word.codePointAt(n))) {
+            return false;
+        }
+        n += Character.charCount(word.codePointAt(n));
+        // [\p{L}&&[^\p{Lu}]]*
+        while (n < word.length()) {
+            int c = word.codePointAt(n);
+            if (!isNotUpperLetter(c)) {
+                return false;
+            }
+            n += Character.charCount(c);
+        }
+        return true;
     }
 
     /**
@@ -67,7 +130,21 @@ public enum WordType {
      * greater than 2 and it contains a single lowercase character
      */
     public static boolean nearlyUpper(String word) {
-        return word.matches("\\p{Lu}+\\p{L}\\p{Lu}+|\\p{L}\\p{Lu}{2,}|\\p{Lu}{2,}\\p{L}");
+        // \p{Lu}+\p{L}\p{Lu}+|\p{L}\p{Lu}{2,}|\p{Lu}{2,}\p{L}: at least
+        // three letters, all of them uppercase but at most one
+        int length = 0;
+        int others = 0;
+        for (int n = 0; n < word.length();) {
+            int c = word.codePointAt(n);
+            if (!Character.isLetter(c)) {
+                return false;
+            } else if (!isUpper(c) && ++others > 1) {
+                return false;
+            }
+            ++length;
+            n += Character.charCount(c);
+        }
+        return length > 2;
     }
 
     /**
@@ -76,6 +153,11 @@ public enum WordType {
      * @return true if s is a string of punctuation characters
      */
     public static boolean isPunct(String s) {
-        return s.length() > 0 && s.matches("\\p{Punct}+");
+        for (int n = 0; n < s.length(); ++n) {
+            if (!isPunct(s.charAt(n))) {
+                return false;
+            }
+        }
+        return s.length() > 0;
     }
 }
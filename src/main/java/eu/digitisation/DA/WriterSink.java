@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Base class for sinks writing text to a buffered writer. The writer is
+ * flushed after every batch of entries (if a batch size is given), at the end
+ * of the output and when the sink is closed.
+ *
+ * @author R.C.C.
+ */
+abstract class WriterSink implements EntrySink {
+
+    final static int BUFFER_SIZE = 1 << 16;
+    final static String EOL = System.getProperty("line.separator");
+
+    private final Writer writer;
+    private final int batch;   // entries per flush (0 = no explicit flush)
+    private int count;         // entries since last flush
+
+    /**
+     * @param writer the output writer
+     * @param batch the number of entries written between flushes (0 means
+     * that the output is only flushed when the buffer is full)
+     */
+    WriterSink(Writer writer, int batch) {
+        this.writer = writer instanceof BufferedWriter
+                ? writer : new BufferedWriter(writer, BUFFER_SIZE);
+        this.batch = batch;
+    }
+
+    WriterSink(OutputStream os, Charset charset, int batch) {
+        this(new OutputStreamWriter(os, charset), batch);
+    }
+
+    WriterSink(WritableByteChannel channel, Charset charset, int batch) {
+        this(Channels.newWriter(channel, charset.newEncoder(), BUFFER_SIZE), batch);
+    }
+
+    WriterSink(File file, Charset charset, int batch) throws IOException {
+        this(new FileOutputStream(file), charset, batch);
+    }
+
+    /**
+     * Write a line of text
+     */
+    void println(String s) throws IOException {
+        writer.write(s);
+        writer.write(EOL);
+    }
+
+    /**
+     * Count an entry and flush if a batch is complete
+     */
+    void count() throws IOException {
+        if (batch > 0 && ++count >= batch) {
+            writer.flush();
+            count = 0;
+        }
+    }
+
+    /**
+     * Flush the buffered output
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        writer.flush();
+        count = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * XML output: one element per entry, with the same layout as the former
+ * console output of Split, but with text and attribute values escaped. The
+ * body of an entry, if known, follows the header in a body element.
+ *
+ * @author R.C.C.
+ */
+public class XMLSink extends WriterSink {
+
+    public XMLSink(Writer writer, int batch) {
+        super(writer, batch);
+    }
+
+    public XMLSink(OutputStream os, Charset charset, int batch) {
+        super(os, charset, batch);
+    }
+
+    public XMLSink(WritableByteChannel channel, int batch) {
+        super(channel, Charset.forName("UTF-8"), batch);
+    }
+
+    public XMLSink(File file, int batch) throws IOException {
+        super(file, Charset.forName("UTF-8"), batch);
+    }
+
+    /**
+     * @param s a string
+     * @return the string with XML special characters escaped
+     */
+    static String escape(String s) {
+        StringBuilder builder = null;
+        for (int n = 0; n < s.length(); ++n) {
+            char c = s.charAt(n);
+            String replacement;
+            switch (c) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = "&quot;";
+                    break;
+                default:
+                    replacement = null;
+            }
+            if (replacement != null && builder == null) {
+                builder = new StringBuilder(s.length() + 16);
+                builder.append(s, 0, n);
+            }
+            if (builder != null) {
+                if (replacement == null) {
+                    builder.append(c);
+                } else {
+                    builder.append(replacement);
+                }
+            }
+        }
+        return builder == null ? s : builder.toString();
+    }
+
+    @Override
+    public void begin() throws IOException {
+        println("<DA>");
+    }
+
+    @Override
+    public void startFile(String id) throws IOException {
+        println("<file>");
+        println("<id>" + escape(id) + "</id>");
+    }
+
+    @Override
+    public void entry(Entry entry) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        String name = entry.getTag().getName();
+        if (entry.getTag() == Entry.Tag.SUBENTRY) {
+            builder.append("  ");
+        }
+        builder.append('<').append(name);
+        if (entry.getReason() != null) {
+            builder.append(" reason=\"").append(escape(entry.getReason())).append('"');
+        }
+        if (entry.getPriority() != null) {
+            builder.append(" priority=\"").append(escape(entry.getPriority())).append('"');
+        }
+        if (entry.getSuggestion() != null) {
+            builder.append(" suggestion=\"").append(escape(entry.getSuggestion())).append('"');
+        }
+        builder.append('>').append(escape(entry.getText()));
+        if (entry.getBody() != null) {
+            builder.append("<body>").append(escape(entry.getBody())).append("</body>");
+        }
+        builder.append("</").append(name).append('>');
+        println(builder.toString());
+        count();
+    }
+
+    @Override
+    public void error(String message) throws IOException {
+        println(escape(message));
+    }
+
+    @Override
+    public void endFile() throws IOException {
+        println("</file>");
+    }
+
+    @Override
+    public void end() throws IOException {
+        println("</DA>");
+        flush();
+    }
+}
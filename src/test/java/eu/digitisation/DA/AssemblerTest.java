@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class AssemblerTest {
+
+    File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("DA").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testRegions() throws Exception {
+        System.out.println("Assembler regions");
+        String eol = System.getProperty("line.separator");
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        Assembler assembler = new Assembler(SplitEngine.getDefault(), sink, "");
+        sink.begin();
+        assembler.startFile("p1");
+        assembler.region("r0", "la qual");  // no entry open yet
+        assembler.region("r1", " APOSTAR. v. a. Dar dine-\nro  en\n");
+        assembler.region("r2", "juego. Lat. sponsio");
+        assembler.endFile();
+        assembler.startFile("p2");
+        assembler.region("r1", "de la caſa");
+        assembler.endFile();
+        assembler.startFile("p3");
+        assembler.region("r1", "APOSTADO, DA. p. p.");
+        assembler.region("r2", "Y tambien");
+        assembler.region("r3", "BAXO. adv. -");
+        assembler.region("r4", "Lat.");
+        assembler.endFile();
+        assertEquals("BAXO", assembler.finish());
+        sink.end();
+        assertEquals("<DA>" + eol
+                + "<file>" + eol + "<id>p1</id>" + eol
+                + "<entry>APOSTAR<body>v. a. Dar dinero en juego. Lat. sponsio de la casa</body></entry>" + eol
+                + "</file>" + eol
+                + "<file>" + eol + "<id>p2</id>" + eol + "</file>" + eol
+                + "<file>" + eol + "<id>p3</id>" + eol
+                + "<PastPart>APOSTADO, DA<body>p. p. Y tambien</body></PastPart>" + eol
+                + "<entry>BAXO<body>adv. - Lat.</body></entry>" + eol
+                + "</file>" + eol
+                + "</DA>" + eol, writer.toString());
+    }
+
+    @Test
+    public void testHeaderEnd() throws Exception {
+        System.out.println("Assembler header end");
+        SplitEngine engine = SplitEngine.getDefault();
+        String[][] cases = {{"\u2014 ABAD, s. m. Lat. abbas", "s. m. Lat. abbas"},
+            {"1 ABACO. s. m. Tabla", "s. m. Tabla"},
+            {"ABAD \u2014 MAYOR. s. m.", "s. m."},
+            {"(2) A ABAD, adv. de lugar", "adv. de lugar"}};
+        for (String[] pair : cases) {
+            String text = pair[0];
+            String head = engine.header(text);
+            assertEquals(text, pair[1], text.substring(Assembler.end(text, head)).trim());
+        }
+
+        StringWriter writer = new StringWriter();
+        JSONSink sink = new JSONSink(writer, 0);
+        Assembler assembler = new Assembler(engine, sink, "");
+        assembler.startFile("p1");
+        assembler.region("r1", "\u2014 ABAD, s. m. Lat. abbas");
+        assembler.region("r2", "12 ABADESA. s. f.");
+        assembler.endFile();
+        assembler.finish();
+        sink.flush();
+        assertEquals("{\"file\":\"p1\",\"tag\":\"entry\",\"text\":\"ABAD\",\"body\":\"s. m. Lat. abbas\"}"
+                + System.getProperty("line.separator")
+                + "{\"file\":\"p1\",\"tag\":\"entry\",\"text\":\"ABADESA\",\"body\":\"s. f.\"}"
+                + System.getProperty("line.separator"), writer.toString());
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        System.out.println("Assembler pages");
+        List<File> files = new PageGenerator(7).generate(dir, 10);
+        File wrong = new File(dir, "pc-wrong.xml");
+        Files.write(wrong.toPath(), "<PcGts>".getBytes("UTF-8"));
+        files.add(4, wrong);
+
+        StringWriter expected = new StringWriter();
+        XMLSink sink = new XMLSink(expected, 0);
+        String last = Split.process(files, "", sink);
+        sink.flush();
+        StringWriter writer = new StringWriter();
+        sink = new XMLSink(writer, 0);
+        assertEquals(last, Assembler.process(SplitEngine.getDefault(), files, "", sink));
+        sink.flush();
+        String output = writer.toString();
+
+        // the same entries (but skipped headers) in the same files
+        assertEquals(expected.toString().replaceAll("<skip[^\n]*\n", ""),
+                output.replaceAll("<body>[^<]*</body>", ""));
+        assertTrue(output.contains("Wrong file"));
+
+        // all words in the regions are either in a header or in a body
+        int words = 0;
+        for (File file : files) {
+            if (file != wrong) {
+                try (RegionReader reader = new RegionReader(file)) {
+                    Region region;
+                    while ((region = reader.next()) != null) {
+                        words += region.getText().trim().split("\\s+").length;
+                    }
+                }
+            }
+        }
+        int found = 0;
+        for (String line : output.split("\n")) {
+            int start = line.indexOf("<body>");
+            if (start > 0) {
+                String body = line.substring(start + 6, line.indexOf("</body>"));
+                String head = line.substring(line.indexOf('>') + 1, start);
+                found += head.split(" ").length;
+                found += body.isEmpty() ? 0 : body.split(" ").length;
+            }
+        }
+        assertEquals(words, found);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class CharTranslatorTest {
+
+    @Test
+    public void testSample() throws Exception {
+        System.out.println("translate sample");
+        try (RegionReader reader = new RegionReader(
+                CharTranslatorTest.class.getResourceAsStream("/pc-00444931.xml"))) {
+            Region region;
+            while ((region = reader.next()) != null) {
+                String text = region.getText();
+                assertEquals(Split.cfilter.translate(text), Split.translator.translate(text));
+            }
+        }
+    }
+
+    @Test
+    public void testAppend() {
+        System.out.println("translate append");
+        String text = "A\u017Fsi \u00E9 \uFB01n";
+        StringBuilder buffer = new StringBuilder("> ");
+        Split.translator.translate(text, buffer);
+        assertEquals("> " + Split.cfilter.translate(text), buffer.toString());
+        // text requiring normalization across characters
+        text = "e\u0301 n\u0303 \u1100\u1161";
+        buffer.setLength(2);
+        Split.translator.translate(text, buffer);
+        assertEquals("> " + Split.cfilter.translate(text), buffer.toString());
+    }
+
+    @Test
+    public void testRandom() {
+        System.out.println("translate random");
+        List<Integer> alphabet = new ArrayList<>();
+        for (int c = 0x20; c < 0x250; ++c) {
+            alphabet.add(c);
+        }
+        for (int c = 0x300; c < 0x370; ++c) {
+            alphabet.add(c);
+        }
+        for (String key : Split.cfilter.keySet()) {
+            for (int n = 0; n < 20; ++n) {
+                alphabet.add(key.codePointAt(0));
+            }
+        }
+        int[] extra = {0x17F, 0xFB01, 0xFF21, 0x1100, 0x1161, 0x11A8, 0xAC00,
+            0x0B47, 0x0B3E, 0x2126, 0x212B, 0x304B, 0x3099, 0x0344, 0x0F73,
+            0x1E9B, 0x00A0, 0x3000, 0x00BD, 0x2460, 0x0958, 0xD800, 0xDC00,
+            0xE000, 0x1D15E, 0x1D400, 0x1F600, 0x11099, 0x110BA};
+        for (int c : extra) {
+            for (int n = 0; n < 20; ++n) {
+                alphabet.add(c);
+            }
+        }
+        Random random = new Random(0);
+        for (int n = 0; n < 200000; ++n) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int k = 0; k < length; ++k) {
+                builder.appendCodePoint(random.nextInt(10) == 0
+                        ? random.nextInt(0x30000)
+                        : alphabet.get(random.nextInt(alphabet.size())));
+            }
+            String s = builder.toString();
+            assertEquals(Split.cfilter.translate(s), Split.translator.translate(s));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class FuzzyMatcherTest {
+
+    private static String random(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int n = 0; n < length; ++n) {
+            builder.append((char) ('A' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+
+    @Test
+    public void testWeights() throws Exception {
+        System.out.println("FuzzyMatcher.Weights");
+        FuzzyMatcher.Weights weights = new FuzzyMatcher.Weights();
+        weights.addCSV(new StringReader("# comment\n0049, 006C, 0.2\n"
+                + "0052 004E, 004D, 0.4\nEADA, 0073 0074\n"), 0.5);
+        assertEquals(0, weights.distance("ABC", "ABC"), 0);
+        assertEquals(1, weights.distance("ABC", "ABD"), 0);
+        assertEquals(1, weights.distance("ABC", "AC"), 0);
+        assertEquals(0.2, weights.distance("APOSTAL", "APOSTAI"), 1e-9);
+        assertEquals(0.4, weights.distance("CORNO", "COMO"), 1e-9);
+        assertEquals(0.4, weights.distance("COMO", "CORNO"), 1e-9);
+        assertEquals(0.5, weights.distance("E", "STE"), 1e-9);
+        assertEquals(FuzzyMatcher.levenshtein("KITTEN", "SITTING"),
+                new FuzzyMatcher.Weights().distance("KITTEN", "SITTING"), 0);
+
+        // wrong lines are either skipped or rejected
+        String csv = "0049, 006C, 0.2\nXYZ, 006C\n0052, 004E, cheap\n0045, 0046, 0.3\n";
+        weights = new FuzzyMatcher.Weights();
+        weights.addCSV(new StringReader(csv), 0.5, true);
+        assertEquals(0.2, weights.distance("APOSTAL", "APOSTAI"), 1e-9);
+        assertEquals(0.3, weights.distance("E", "F"), 1e-9);
+        assertEquals(1, weights.distance("R", "N"), 0);
+        try {
+            new FuzzyMatcher.Weights().addCSV(new StringReader(csv), 0.5);
+            fail("Wrong confusion accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSuggest() {
+        System.out.println("FuzzyMatcher.suggest");
+        List<String> words = Arrays.asList("APOSTAL", "APOSTAR", "APOSTATA",
+                "COMO", "COLMO", "CORRO");
+        FuzzyMatcher matcher = new FuzzyMatcher(words,
+                FuzzyMatcher.Weights.getDefault(), 2);
+        assertEquals(6, matcher.size());
+        assertNull(matcher.suggest("apostal"));
+        assertEquals("APOSTAL", matcher.suggest("APOSTAI"));
+        assertEquals("APOSTAL", matcher.suggest("AP0STAL"));
+        assertEquals("COMO", matcher.suggest("CORNO"));
+        assertNull(matcher.suggest("XYZXYZ"));
+        assertEquals("APOSTAL", FuzzyMatcher.word("APOSTAL, s. m.").toUpperCase());
+        assertEquals("AP0STAL", FuzzyMatcher.word("- AP0STAL."));
+    }
+
+    @Test
+    public void testBruteForce() {
+        System.out.println("FuzzyMatcher vs. full scan");
+        Random random = new Random(7);
+        List<String> words = new ArrayList<>();
+        for (int n = 0; n < 100000; ++n) {
+            words.add(random(random, 4 + random.nextInt(8)));
+        }
+        FuzzyMatcher.Weights weights = FuzzyMatcher.Weights.getDefault();
+        long start = System.nanoTime();
+        FuzzyMatcher matcher = new FuzzyMatcher(words, weights, 2);
+        long built = System.nanoTime();
+        List<String> queries = new ArrayList<>();
+        for (int n = 0; n < 50; ++n) {
+            StringBuilder word = new StringBuilder(words.get(random.nextInt(words.size())));
+            word.setCharAt(random.nextInt(word.length()), (char) ('A' + random.nextInt(26)));
+            if (random.nextBoolean()) {
+                word.deleteCharAt(random.nextInt(word.length()));
+            }
+            queries.add(word.toString());
+        }
+        long time = 0;
+        for (String query : queries) {
+            long t = System.nanoTime();
+            String suggestion = matcher.suggest(query);
+            time += System.nanoTime() - t;
+            // full scan
+            String best = null;
+            double cost = Double.MAX_VALUE;
+            boolean exact = false;
+            for (String word : words) {
+                int d = FuzzyMatcher.levenshtein(query, word);
+                exact |= d == 0;
+                if (d <= 2) {
+                    double c = weights.distance(query, word);
+                    if (c < cost || (c == cost && word.compareTo(best) < 0)) {
+                        best = word;
+                        cost = c;
+                    }
+                }
+            }
+            assertEquals(query, exact ? null : best, suggestion);
+        }
+        System.out.println("Build " + (built - start) / 1000000 + " ms, "
+                + time / queries.size() / 1000 + " µs per query");
+    }
+
+    @Test
+    public void testSink() throws Exception {
+        System.out.println("SuggestionSink");
+        StringWriter writer = new StringWriter();
+        StringWriter suggestions = new StringWriter();
+        SuggestionSink sink = new SuggestionSink(new XMLSink(writer, 1),
+                new XMLSink(suggestions, 0), FuzzyMatcher.Weights.getDefault(), 2);
+        sink.begin();
+        sink.startFile("p1");
+        sink.entry(new Entry(Entry.Tag.CHECK, "AP0STAL. s. m.", "sort", null, null, "r1"));
+        sink.entry(new Entry(Entry.Tag.SKIP, "APOSTAR, v. a."));
+        sink.endFile();
+        sink.startFile("p2");
+        sink.error("Wrong file");
+        sink.endFile();
+        sink.startFile("p3");
+        sink.entry(new Entry(Entry.Tag.ENTRY, "APOSTAL, s. m."));
+        sink.entry(new Entry(Entry.Tag.CHECK, "Y. conj."));
+        sink.entry(new Entry(Entry.Tag.CHECK, "APOSTAL. otra"));
+        sink.entry(new Entry(Entry.Tag.CHECK, "APOSTAI. s. m.", "sort", null, null, "r4"));
+        sink.endFile();
+        // the entries are forwarded as they arrive, without suggestions
+        String output = writer.toString();
+        assertTrue(output, output.contains("AP0STAL. s. m."));
+        assertTrue(output, output.indexOf("p1") < output.indexOf("Wrong file"));
+        assertTrue(output, output.indexOf("Wrong file") < output.indexOf("p3"));
+        assertFalse(output, output.contains("suggestion="));
+        assertEquals("", suggestions.toString());
+        sink.end();
+        assertEquals(output, writer.toString().substring(0, output.length()));
+
+        String eol = System.getProperty("line.separator");
+        String sidecar = suggestions.toString();
+        assertEquals(2, sink.getSuggestions());
+        assertTrue(sidecar, sidecar.contains("<id>p1</id>" + eol + "<check"));
+        assertTrue(sidecar, sidecar.contains("suggestion=\"APOSTAL\">AP0STAL. s. m.</check>"));
+        assertTrue(sidecar, sidecar.contains("<id>p3</id>" + eol + "<check"));
+        assertTrue(sidecar, sidecar.contains("suggestion=\"APOSTAL\">APOSTAI. s. m.</check>"));
+        assertFalse(sidecar, sidecar.contains("p2"));
+        assertEquals(2, sidecar.split("suggestion=").length - 1);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class HeaderDumpTest {
+
+    File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("DA").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void testReadWrite() throws Exception {
+        System.out.println("HeaderDump read/write");
+        File file = new File(dir, "headers.dat");
+        try (HeaderDump.Writer writer = new HeaderDump.Writer(file)) {
+            writer.add("p1", "p1.tif", Arrays.asList(new Region("r1", "APOSTAL"),
+                    new Region(null, "AÑO"), new Region("r3", "")));
+            writer.error("p2");
+            writer.add("p3", null, new ArrayList<Region>());
+            assertEquals(3, writer.size());
+            writer.commit();
+        }
+        // a dump which is not committed does not replace the previous one
+        long length = file.length();
+        try (HeaderDump.Writer writer = new HeaderDump.Writer(file)) {
+            writer.add("p4", null, new ArrayList<Region>());
+        }
+        assertEquals(length, file.length());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        try (HeaderDump.Reader reader = new HeaderDump.Reader(file)) {
+            assertTrue(reader.next());
+            assertEquals("p1", reader.id());
+            assertEquals("p1.tif", reader.image());
+            assertFalse(reader.failed());
+            assertEquals("[r1: APOSTAL, null: AÑO, r3: ]", reader.regions().toString());
+            assertTrue(reader.next());
+            assertEquals("p2", reader.id());
+            assertTrue(reader.failed());
+            assertTrue(reader.next());
+            assertNull(reader.image());
+            assertTrue(reader.regions().isEmpty());
+            assertFalse(reader.next());
+        }
+        // truncated dump
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+        try (HeaderDump.Reader reader = new HeaderDump.Reader(file)) {
+            assertTrue(reader.next());
+            assertTrue(reader.next());
+            reader.next();
+            fail("Truncated dump not detected");
+        } catch (IOException ex) {
+            // expected
+        }
+        // not a dump
+        File other = new File(dir, "other.dat");
+        Files.write(other.toPath(), "<xml/>".getBytes("UTF-8"));
+        try {
+            new HeaderDump.Reader(other).close();
+            fail("Wrong magic number not detected");
+        } catch (IOException ex) {
+            assertEquals("Not a header dump", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testClassify() throws Exception {
+        System.out.println("HeaderDump classify");
+        List<File> files = new PageGenerator(5).generate(dir, 12);
+        File wrong = new File(dir, "pc-wrong.xml");
+        Files.write(wrong.toPath(), "<PcGts>".getBytes("UTF-8"));
+        files.add(6, wrong);
+
+        StringWriter expected = new StringWriter();
+        XMLSink sink = new XMLSink(expected, 0);
+        Split.process(files, "", sink);
+        sink.flush();
+
+        SplitEngine engine = SplitEngine.getDefault();
+        File file = new File(dir, "headers.dat");
+        assertEquals(13, HeaderDump.dump(engine, files, file));
+        long size = 0;
+        for (File page : files) {
+            size += page.length();
+        }
+        assertTrue(file.length() * 10 < size);
+        StringWriter writer = new StringWriter();
+        sink = new XMLSink(writer, 0);
+        assertEquals(Split.process(files, "", new XMLSink(new StringWriter(), 0)),
+                HeaderDump.classify(engine, file, "", sink));
+        sink.flush();
+        assertEquals(expected.toString(), writer.toString());
+        assertTrue(writer.toString().contains("Wrong file"));
+
+        // the region identifiers are kept
+        try (HeaderDump.Reader reader = new HeaderDump.Reader(file)) {
+            assertTrue(reader.next());
+            assertEquals(files.get(0).getPath(), reader.id());
+            assertEquals("pc-00000000.tif", reader.image());
+            assertTrue(reader.regions().get(0).getId().startsWith("r"));
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class IncrementalTest {
+
+    File dir;
+    File manifest;
+    List<File> files;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("DA").toFile();
+        manifest = new File(dir, "manifest");
+        files = new PageGenerator(1).generate(new File(dir, "pages"), 8);
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private String full() throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        Split.process(files, "", sink);
+        sink.flush();
+        return writer.toString();
+    }
+
+    private String incremental(Incremental incremental) throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        incremental.process(files, "", sink);
+        sink.flush();
+        return writer.toString();
+    }
+
+    @Test
+    public void testProcess() throws Exception {
+        System.out.println("incremental process");
+        String expected = full();
+        Incremental incremental = new Incremental(manifest);
+        assertEquals(expected, incremental(incremental));
+        assertEquals(8, incremental.getProcessed());
+
+        incremental = new Incremental(manifest);
+        assertEquals(expected, incremental(incremental));
+        assertEquals(0, incremental.getProcessed());
+        assertEquals(8, incremental.getReused());
+
+        // change the text of a region in the fourth page
+        File page = files.get(3);
+        String content = new String(Files.readAllBytes(page.toPath()), "UTF-8");
+        Files.write(page.toPath(), content.replaceFirst("<Unicode>(\\p{Lu}+)",
+                "<Unicode>$1 que").getBytes("UTF-8"));
+        expected = full();
+        incremental = new Incremental(manifest);
+        assertEquals(expected, incremental(incremental));
+        assertTrue(incremental.getProcessed() >= 1);
+        assertTrue(incremental.getReused() >= 3);
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        System.out.println("incremental resume");
+        String expected = full();
+        Incremental incremental = new Incremental(manifest);
+        // a sink failing at the sixth file
+        XMLSink failing = new XMLSink(new StringWriter(), 0) {
+            int count = 0;
+
+            @Override
+            public void startFile(String id) throws IOException {
+                if (++count == 6) {
+                    throw new IOException("interrupted");
+                }
+                super.startFile(id);
+            }
+        };
+        try {
+            incremental.process(files, "", failing);
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertEquals(5, incremental.getProcessed());
+        }
+        incremental = new Incremental(manifest);
+        assertEquals(expected, incremental(incremental));
+        assertEquals(3, incremental.getProcessed());
+        assertEquals(5, incremental.getReused());
+    }
+
+    @Test
+    public void testTornLine() throws Exception {
+        System.out.println("incremental torn line");
+        String expected = full();
+        Incremental incremental = new Incremental(manifest);
+        assertEquals(expected, incremental(incremental));
+        // a crash while writing the record of the fourth file
+        final File journal = new File(manifest, "manifest.tsv");
+        List<String> lines = Files.readAllLines(journal.toPath(), Charset.forName("UTF-8"));
+        String torn = lines.remove(4);
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        builder.append(torn.substring(0, torn.length() / 2));
+        Files.write(journal.toPath(), builder.toString().getBytes("UTF-8"));
+
+        // the journal as left after the fourth file, if the run crashed then
+        final List<String> journaled = new ArrayList<>();
+        XMLSink sink = new XMLSink(new StringWriter(), 0) {
+            int count = 0;
+
+            @Override
+            public void startFile(String id) throws IOException {
+                if (++count == 5) {
+                    journaled.addAll(Files.readAllLines(journal.toPath(),
+                            Charset.forName("UTF-8")));
+                }
+                super.startFile(id);
+            }
+        };
+        incremental = new Incremental(manifest);
+        incremental.process(files, "", sink);
+        assertEquals(1, incremental.getProcessed());
+        String last = journaled.get(journaled.size() - 1);
+        assertEquals(torn, last);
+    }
+
+    @Test
+    public void testRemovedInputs() throws Exception {
+        System.out.println("incremental removed inputs");
+        Incremental incremental = new Incremental(manifest);
+        incremental(incremental);
+        assertEquals(9, manifest.list().length);  // journal and 8 stored files
+        files = files.subList(0, 5);
+        incremental = new Incremental(manifest);
+        assertEquals(full(), incremental(incremental));
+        assertEquals(5, incremental.getReused());
+        List<String> lines = Files.readAllLines(new File(manifest, "manifest.tsv").toPath(),
+                Charset.forName("UTF-8"));
+        assertEquals(6, lines.size());
+        assertEquals(6, manifest.list().length);
+    }
+
+    @Test
+    public void testRules() throws Exception {
+        System.out.println("incremental rules");
+        String expected = full();
+        Incremental incremental = new Incremental(manifest);
+        assertEquals(expected, incremental(incremental));
+        File journal = new File(manifest, "manifest.tsv");
+        List<String> lines = Files.readAllLines(journal.toPath(), Charset.forName("UTF-8"));
+        assertEquals("#DA-manifest 2\t" + Incremental.rules(SplitEngine.getDefault()),
+                lines.get(0));
+
+        // a manifest written with other rules is rebuilt
+        for (String header : new String[]{"#DA-manifest 1", "#DA-manifest 2\t0123"}) {
+            lines.set(0, header);
+            Files.write(journal.toPath(), lines, Charset.forName("UTF-8"));
+            incremental = new Incremental(manifest);
+            assertEquals(expected, incremental(incremental));
+            assertEquals(8, incremental.getProcessed());
+            assertEquals(0, incremental.getReused());
+            lines = Files.readAllLines(journal.toPath(), Charset.forName("UTF-8"));
+        }
+    }
+
+    /**
+     * The file and region identifiers of the entries sent to a sink
+     */
+    private static class IdSink extends XMLSink {
+
+        final StringBuilder ids = new StringBuilder();
+
+        IdSink() {
+            super(new StringWriter(), 0);
+        }
+
+        @Override
+        public void entry(Entry entry) throws IOException {
+            ids.append(entry.getFile()).append(' ').append(entry.getRegion()).append('\n');
+            super.entry(entry);
+        }
+    }
+
+    @Test
+    public void testReplayIds() throws Exception {
+        System.out.println("incremental replay ids");
+        // the entries found in a page keep their identifiers when replayed
+        String expected = null;
+        for (int run = 0; run < 2; ++run) {
+            Incremental incremental = new Incremental(manifest);
+            IdSink sink = new IdSink();
+            incremental.process(files, "", sink);
+            assertEquals(8 * run, incremental.getReused());
+            if (expected == null) {
+                expected = sink.ids.toString();
+            }
+            assertEquals(expected, sink.ids.toString());
+        }
+        assertFalse(expected.isEmpty());
+    }
+
+    @Test
+    public void testEscape() {
+        System.out.println("escape");
+        String s = "a\\tb\tc\nd\\\\0";
+        assertEquals(s, Incremental.unescape(Incremental.escape(s)));
+        assertNull(Incremental.unescape(Incremental.escape(null)));
+    }
+}
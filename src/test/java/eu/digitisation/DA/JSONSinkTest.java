@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.StringWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class JSONSinkTest {
+
+    @Test
+    public void testEntry() throws Exception {
+        System.out.println("JSONSink");
+        StringWriter writer = new StringWriter();
+        JSONSink sink = new JSONSink(writer, 0);
+        String eol = System.getProperty("line.separator");
+        sink.begin();
+        sink.startFile("p1.xml");
+        sink.entry(new Entry(Entry.Tag.ITYPO, "APOSSESSlONADO, DA"));
+        sink.entry(new Entry(Entry.Tag.SKIP, "\"\\", "punt", null));
+        sink.endFile();
+        sink.startFile("p2.xml");
+        sink.error("Wrong file");
+        sink.endFile();
+        sink.end();
+        assertEquals("{\"file\":\"p1.xml\",\"tag\":\"Itypo\",\"text\":\"APOSSESSlONADO, DA\"}" + eol
+                + "{\"file\":\"p1.xml\",\"tag\":\"skip\",\"text\":\"\\\"\\\\\",\"reason\":\"punt\"}" + eol
+                + "{\"file\":\"p2.xml\",\"error\":\"Wrong file\"}" + eol, writer.toString());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class LemmaIndexTest {
+
+    /**
+     * The entries whose lemmas satisfy from <= lemma < to (primary strength)
+     */
+    private static List<String> scan(List<Entry> entries, String from, String to) {
+        OldSpanishComparator collator = OldSpanishComparator.getInstance();
+        List<String> list = new ArrayList<>();
+        for (Entry entry : entries) {
+            byte[] key = collator.getPrimaryKey(LemmaIndex.lemma(entry));
+            if (OldSpanishComparator.compareKeys(key, collator.getPrimaryKey(from)) >= 0
+                    && (to == null || OldSpanishComparator.compareKeys(key,
+                            collator.getPrimaryKey(to)) < 0)) {
+                list.add(entry.getText());
+            }
+        }
+        return list;
+    }
+
+    private static List<String> texts(List<LemmaIndex.Hit> hits) {
+        List<String> list = new ArrayList<>();
+        for (LemmaIndex.Hit hit : hits) {
+            list.add(hit.getText());
+        }
+        return list;
+    }
+
+    private static List<String> sorted(List<String> list) {
+        String[] array = list.toArray(new String[list.size()]);
+        Arrays.sort(array);
+        return Arrays.asList(array);
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        System.out.println("LemmaIndex lookup");
+        File file = File.createTempFile("lemmas", ".idx");
+        file.deleteOnExit();
+        SplitEngine engine = SplitEngine.getDefault();
+        PageGenerator generator = new PageGenerator(13, 30);
+        LemmaIndex.Writer writer = new LemmaIndex.Writer(EnumSet.allOf(Entry.Tag.class));
+        List<Entry> entries = new ArrayList<>();
+        String last = "";
+        for (int n = 0; n < 60; ++n) {
+            String id = "p" + n;
+            SplitEngine.Result result = engine.split(id,
+                    new ByteArrayInputStream(generator.page(id).getBytes("UTF-8")), last);
+            for (Entry entry : result.getEntries()) {
+                writer.add(entry, result.getImage());
+                entries.add(entry);
+            }
+            last = result.getLast();
+        }
+        writer.write(file);
+
+        LemmaIndex index = new LemmaIndex(file);
+        assertEquals(entries.size(), index.size());
+        assertTrue(index.size() > 1000);
+        for (int n = 0; n < entries.size(); n += 37) {
+            Entry entry = entries.get(n);
+            String lemma = LemmaIndex.lemma(entry);
+            List<LemmaIndex.Hit> hits = index.exact(lemma.toLowerCase());
+            boolean found = false;
+            for (LemmaIndex.Hit hit : hits) {
+                assertEquals(lemma, LemmaIndex.lemma(new Entry(hit.getTag(), hit.getText())));
+                if (hit.getText().equals(entry.getText())
+                        && hit.getRegion().equals(entry.getRegion())
+                        && hit.getFile().equals(entry.getFile())) {
+                    assertEquals(entry.getTag(), hit.getTag());
+                    assertEquals(entry.getFile() + ".tif", hit.getImage());
+                    found = true;
+                }
+            }
+            assertTrue(lemma, found);
+        }
+        // ranges, compared with a full scan
+        String[][] ranges = {{"A", "B"}, {"CA", "CE"}, {"M", null}, {"ZZ", null}, {"", "AB"}};
+        for (String[] range : ranges) {
+            List<String> expected = scan(entries, range[0], range[1]);
+            List<LemmaIndex.Hit> hits = index.range(range[0], range[1], Integer.MAX_VALUE);
+            assertEquals(sorted(expected), sorted(texts(hits)));
+            assertEquals(Math.min(5, expected.size()),
+                    index.range(range[0], range[1], 5).size());
+        }
+        // prefixes
+        for (String prefix : new String[]{"A", "Ch", "PRE", "x", "QQQ"}) {
+            List<String> expected = new ArrayList<>();
+            OldSpanishComparator collator = OldSpanishComparator.getInstance();
+            byte[] key = collator.getPrimaryKey(prefix);
+            for (Entry entry : entries) {
+                byte[] k = collator.getPrimaryKey(LemmaIndex.lemma(entry));
+                if (k.length >= key.length
+                        && Arrays.equals(key, Arrays.copyOf(k, key.length))) {
+                    expected.add(entry.getText());
+                }
+            }
+            assertEquals(prefix, sorted(expected),
+                    sorted(texts(index.prefix(prefix, Integer.MAX_VALUE))));
+        }
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        System.out.println("Split with index");
+        File page = new File(LemmaIndexTest.class.getResource("/pc-00444931.xml").toURI());
+        File file = File.createTempFile("lemmas", ".idx");
+        file.deleteOnExit();
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        LemmaIndex.Writer builder = new LemmaIndex.Writer();
+        Split.process(Arrays.asList(page), "", sink, builder);
+        sink.flush();
+        builder.write(file);
+        LemmaIndex index = new LemmaIndex(file);
+        List<LemmaIndex.Hit> hits = index.exact("APOSTAL");
+        assertEquals(1, hits.size());
+        assertEquals("00444931.tif", hits.get(0).getImage());
+        assertEquals(page.toString(), hits.get(0).getFile());
+        assertNotNull(hits.get(0).getRegion());
+        assertTrue(writer.toString().contains("<entry>APOSTAL</entry>"));
+    }
+}
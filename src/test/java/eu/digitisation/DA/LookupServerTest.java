@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class LookupServerTest {
+
+    private static String get(int port, String request) throws Exception {
+        return send(port, "GET", request);
+    }
+
+    private static String send(int port, String method, String request) throws Exception {
+        URL url = new URL("http://localhost:" + port + request);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream is = status == 200
+                ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+        }
+        return status + " " + bytes.toString("UTF-8");
+    }
+
+    @Test
+    public void testCache() {
+        System.out.println("LookupServer.Cache");
+        LookupServer.Cache cache = new LookupServer.Cache(2);
+        cache.put("a", new byte[1]);
+        cache.put("b", new byte[2]);
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[3]);  // evicts b
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testServer() throws Exception {
+        System.out.println("LookupServer");
+        File page = new File(LookupServerTest.class.getResource("/pc-00444931.xml").toURI());
+        File file = File.createTempFile("lemmas", ".idx");
+        file.deleteOnExit();
+        LookupServer.build(Arrays.asList(page), file);
+        final LookupServer server = new LookupServer(new LemmaIndex(file), 0, 8, 100);
+        server.start();
+        try {
+            final int port = server.getPort();
+            String response = get(port, "/lookup?q=apostal");
+            assertTrue(response, response.startsWith("200 {\"hits\":[{\"text\":\"APOSTAL\","
+                    + "\"tag\":\"entry\""));
+            assertTrue(response, response.contains("\"image\":\"00444931.tif\""));
+            response = get(port, "/prefix?q=" + URLEncoder.encode("APOST", "UTF-8") + "&limit=2");
+            assertEquals(response, 2, response.split("\"text\"").length - 1);
+            response = get(port, "/range?from=APOSTA&to=APOSTAR");
+            assertTrue(response, response.contains("APOSTAMIENTO"));
+            assertFalse(response, response.contains("\"APOSTAR\""));
+            assertTrue(get(port, "/range?to=A").startsWith("400"));
+            assertTrue(get(port, "/prefix?q=A&limit=x").startsWith("400"));
+            // the method is checked before the cache
+            assertTrue(send(port, "DELETE", "/lookup?q=apostal").startsWith("405"));
+
+            // concurrent requests
+            final String expected = get(port, "/prefix?q=APOS");
+            ExecutorService executor = Executors.newFixedThreadPool(32);
+            try {
+                List<Future<String>> futures = new ArrayList<>();
+                for (int n = 0; n < 400; ++n) {
+                    final String request = n % 2 == 0 ? "/prefix?q=APOS"
+                            : "/lookup?q=APOSTAR" + (n % 10 == 1 ? "" : "&n=" + n);
+                    futures.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            return get(port, request);
+                        }
+                    }));
+                }
+                for (int n = 0; n < futures.size(); ++n) {
+                    String result = futures.get(n).get();
+                    if (n % 2 == 0) {
+                        assertEquals(expected, result);
+                    } else {
+                        assertTrue(result, result.startsWith("200"));
+                        assertEquals(4, result.split("APOSTAR").length - 1);
+                    }
+                }
+            } finally {
+                executor.shutdown();
+            }
+            assertTrue(server.getCache().getHits() >= 200);
+            assertEquals(100, server.getCache().size());
+        } finally {
+            server.stop(0);
+        }
+    }
+}
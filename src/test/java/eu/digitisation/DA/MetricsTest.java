@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class MetricsTest {
+
+    @Test
+    public void testHistogram() {
+        System.out.println("Metrics.Histogram");
+        assertEquals(0, Metrics.Histogram.bucket(0));
+        assertEquals(0, Metrics.Histogram.bucket(1000));
+        assertEquals(1, Metrics.Histogram.bucket(1001));
+        assertEquals(1, Metrics.Histogram.bucket(2000));
+        assertEquals(10, Metrics.Histogram.bucket(1000000));  // 1 ms < 1024 µs
+        assertEquals(27, Metrics.Histogram.bucket(Long.MAX_VALUE));
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        for (int n = 1; n <= 100; ++n) {
+            histogram.add(n * 1000L);  // 1 to 100 µs
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050e-6, histogram.getSum(), 1e-12);
+        assertEquals(100e-6, histogram.getMax(), 1e-12);
+        assertEquals(64e-6, histogram.quantile(0.5), 1e-12);
+        assertEquals(100e-6, histogram.quantile(0.99), 1e-12);
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("Metrics of a run");
+        File page = new File(MetricsTest.class.getResource("/pc-00444931.xml").toURI());
+        File wrong = File.createTempFile("wrong", ".xml");
+        wrong.deleteOnExit();
+        Metrics metrics = new Metrics();
+        StringWriter plain = new StringWriter();
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        EntrySink counter = metrics.counter(sink);
+        try {
+            Split.process(Arrays.asList(page), "", new XMLSink(plain, 0));
+            Split.metrics = metrics;
+            for (boolean streaming : new boolean[]{false, true}) {
+                Split.streaming = streaming;
+                Split.process(Arrays.asList(page, wrong), "", counter);
+            }
+        } finally {
+            Split.metrics = null;
+            Split.streaming = false;
+        }
+        sink.flush();
+        String output = writer.toString();
+        assertTrue(output.startsWith(plain.toString()));  // same output
+        long entries = 0;
+        for (Entry.Tag tag : Entry.Tag.values()) {
+            String element = "<" + tag.getName() + ">";
+            long count = output.split(element, -1).length - 1
+                    + output.split("<" + tag.getName() + " ", -1).length - 1;
+            assertEquals(tag.getName(), count, metrics.getCount(tag));
+            entries += count;
+        }
+        assertTrue(entries > 20);
+        assertEquals(2, metrics.getErrors());
+        assertEquals(2, metrics.getFiles());
+        assertEquals(2, metrics.getHistogram(Metrics.Stage.PARSE).getCount());
+        assertEquals(1, metrics.getHistogram(Metrics.Stage.REORDER).getCount());
+        assertEquals(2, metrics.getHistogram(Metrics.Stage.HEADER).getCount());
+        assertEquals(2, metrics.getHistogram(Metrics.Stage.CLASSIFY).getCount());
+        assertEquals(2, metrics.getHistogram(Metrics.Stage.OUTPUT).getCount());
+
+        String json = metrics.toJSON();
+        assertTrue(json, json.contains("\"files\":2,\"errors\":2,"));
+        assertTrue(json, json.contains("\"entry\":" + metrics.getCount(Entry.Tag.ENTRY)));
+        assertTrue(json, json.contains("\"parse\":{\"count\":2,"));
+
+        File base = File.createTempFile("metrics", "");
+        base.deleteOnExit();
+        metrics.write(base.getPath());
+        File prom = new File(base.getPath() + ".prom");
+        prom.deleteOnExit();
+        new File(base.getPath() + ".json").deleteOnExit();
+        List<String> lines = Files.readAllLines(prom.toPath());
+        assertTrue(lines.contains("split_stage_seconds_count{stage=\"reorder\"} 1"));
+        assertTrue(lines.contains("split_stage_seconds_bucket{stage=\"parse\",le=\"+Inf\"} 2"));
+        assertTrue(lines.contains("split_entries_total{tag=\"entry\"} "
+                + metrics.getCount(Entry.Tag.ENTRY)));
+        assertTrue(lines.contains("split_errors_total 2"));
+        for (String line : lines) {  // comment or sample
+            assertTrue(line, line.startsWith("# ")
+                    || line.matches("split_[a-z_]+(\\{.*\\})? [0-9.e+-]+"));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.text.Collator;
+import java.text.RuleBasedCollator;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class OldSpanishComparatorTest {
+
+    private static void check(Collator collator, OldSpanishComparator comparator,
+            String first, String second) {
+        int expected = Integer.signum(collator.compare(first, second));
+        assertEquals(first + " " + second, expected,
+                Integer.signum(comparator.compare(first, second)));
+        assertEquals(first + " " + second, expected,
+                Integer.signum(OldSpanishComparator.compareKeys(
+                        comparator.getSortKey(first), comparator.getSortKey(second))));
+    }
+
+    @Test
+    public void testOrder() {
+        System.out.println("Lexicographic order with OldSpanishComparator");
+        OldSpanishComparator comparator = OldSpanishComparator.getInstance();
+        assertTrue(comparator.compare("cuna", "chita") < 0);
+        assertTrue(comparator.compare("lápiz", "leer") < 0);
+        assertTrue(comparator.compare("CHOZA", "CIEGO") > 0);
+        assertTrue(comparator.compare("LUZ", "LLAMA") < 0);
+        assertTrue(comparator.compare("NUBE", "ÑANDU") < 0);
+        assertTrue(comparator.compare("ÑANDU", "OCASO") < 0);
+        assertEquals(0, comparator.compare("APOSTAR", "APOSTAR"));
+    }
+
+    /**
+     * The comparator must agree with the RuleBasedCollator on every pair of
+     * words in the sample page
+     */
+    @Test
+    public void testAgreement() throws Exception {
+        System.out.println("agreement with OldSpanishCollator");
+        Collator collator = OldSpanishCollator.getInstance();
+        OldSpanishComparator comparator = OldSpanishComparator.getInstance();
+        List<String> words = new ArrayList<>();
+        try (RegionReader reader = new RegionReader(
+                OldSpanishComparatorTest.class.getResourceAsStream("/pc-00444931.xml"))) {
+            Region region;
+            while ((region = reader.next()) != null) {
+                for (String token : region.getText().split("\\p{Space}+")) {
+                    words.add(token);
+                    words.add(token.toUpperCase());
+                }
+            }
+        }
+        String[] extra = {"", "ch", "cH", "Ch", "CH", "c", "h", "ll", "lL", "Ll",
+            "LL", "l", "ñ", "Ñ", "n\u0303", "c\u0327h", "l\u013a", "a b", "A.", "a"};
+        for (String word : extra) {
+            words.add(word);
+        }
+        for (String first : words) {
+            for (String second : extra) {
+                check(collator, comparator, first, second);
+                check(collator, comparator, second, first);
+            }
+        }
+        for (int n = 1; n < words.size(); ++n) {
+            for (int m = Math.max(0, n - 50); m < n; ++m) {
+                check(collator, comparator, words.get(m), words.get(n));
+            }
+        }
+    }
+
+    private static void checkKeys(OldSpanishComparator comparator,
+            String first, String second) {
+        assertEquals(first + " " + second,
+                Integer.signum(comparator.compare(first, second)),
+                Integer.signum(OldSpanishComparator.compareKeys(
+                        comparator.getSortKey(first), comparator.getSortKey(second))));
+    }
+
+    /**
+     * Sort keys must be ordered as the strings, also when the collator
+     * assigns secondary or tertiary weights of 254 and 255
+     */
+    @Test
+    public void testSortKeys() throws Exception {
+        System.out.println("sort keys");
+        OldSpanishComparator comparator = OldSpanishComparator.getInstance();
+        List<String> words = new ArrayList<>();
+        try (RegionReader reader = new RegionReader(
+                OldSpanishComparatorTest.class.getResourceAsStream("/pc-00444931.xml"))) {
+            Region region;
+            while ((region = reader.next()) != null) {
+                for (String token : region.getText().split("\\p{Space}+")) {
+                    words.add(token);
+                    words.add(token.toUpperCase());
+                }
+            }
+        }
+        for (int n = 1; n < words.size(); ++n) {
+            for (int m = Math.max(0, n - 50); m < n; ++m) {
+                checkKeys(comparator, words.get(m), words.get(n));
+            }
+        }
+        // 300 tertiary variants of a: the weights overflow into the secondary
+        StringBuilder rules = new StringBuilder("< a");
+        for (int n = 0; n < 300; ++n) {
+            rules.append(" , ").append((char) (0x4E00 + n));
+        }
+        comparator = new OldSpanishComparator(new RuleBasedCollator(rules.toString()));
+        String[] variants = new String[301];
+        variants[0] = "a";
+        for (int n = 0; n < 300; ++n) {
+            variants[n + 1] = String.valueOf((char) (0x4E00 + n));
+        }
+        for (String first : variants) {
+            for (String second : variants) {
+                checkKeys(comparator, first, second);
+                checkKeys(comparator, first + "a", second);
+            }
+        }
+    }
+}
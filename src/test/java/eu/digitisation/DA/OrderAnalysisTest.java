@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class OrderAnalysisTest {
+
+    private static List<Region> regions(String... heads) {
+        List<Region> list = new ArrayList<>();
+        for (String head : heads) {
+            list.add(new Region("r" + list.size(), head));
+        }
+        return list;
+    }
+
+    @Test
+    public void testLongestNonDecreasing() {
+        System.out.println("longestNonDecreasing");
+        Random random = new Random(5);
+        for (int t = 0; t < 500; ++t) {
+            int[] values = new int[random.nextInt(12)];
+            for (int n = 0; n < values.length; ++n) {
+                values[n] = random.nextInt(6);
+            }
+            // quadratic reference
+            int[] best = new int[values.length];
+            int expected = 0;
+            for (int i = 0; i < values.length; ++i) {
+                best[i] = 1;
+                for (int j = 0; j < i; ++j) {
+                    if (values[j] <= values[i]) {
+                        best[i] = Math.max(best[i], best[j] + 1);
+                    }
+                }
+                expected = Math.max(expected, best[i]);
+            }
+            boolean[] selected = OrderAnalysis.longestNonDecreasing(values);
+            int length = 0;
+            int previous = Integer.MIN_VALUE;
+            for (int n = 0; n < values.length; ++n) {
+                if (selected[n]) {
+                    assertTrue(previous <= values[n]);
+                    previous = values[n];
+                    ++length;
+                }
+            }
+            assertEquals(expected, length);
+        }
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        System.out.println("OrderAnalysis.split");
+        // a wrong lemma (ZAMPAR) makes the greedy classification fail
+        List<Region> heads = regions("BARCO, s. m.", "ZAMPAR, v. a.",
+                "BIRLAR, v. a.", "BIRLADO, DA. p. p.", "BIRLADA, s. f.", "Y",
+                "CASA, s. f.",
+                "CASA DE CAMPO", "DADO, s. m.", "lCONO, s. m.", "Véase.");
+        OrderAnalysis analysis = new OrderAnalysis(SplitEngine.getDefault());
+        analysis.add("f1", heads.subList(0, 6));
+        analysis.fail("f2");
+        analysis.add("f3", heads.subList(6, heads.size()));
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        String last = analysis.split(sink);
+        sink.flush();
+        String output = writer.toString();
+        assertEquals("ICONO", last);
+        assertTrue(output, output.contains("<check reason=\"sort\">ZAMPAR, v. a.</check>"));
+        assertTrue(output, output.contains("<entry>BIRLAR, v. a</entry>"));
+        assertTrue(output, output.contains("<PastPart>BIRLADO, DA. p. p</PastPart>"));
+        assertTrue(output, output.contains("<PastPart>BIRLADA, s. f</PastPart>"));
+        assertTrue(output, output.contains("<skip>Y</skip>"));
+        assertTrue(output, output.contains("<entry>CASA, s. f</entry>"));
+        assertTrue(output, output.contains("<subentry>CASA DE CAMPO</subentry>"));
+        assertTrue(output, output.contains("<entry>DADO, s. m</entry>"));
+        assertTrue(output, output.contains("<Itypo>lCONO, s. m</Itypo>"));
+        assertTrue(output, output.contains("Wrong file"));
+        assertEquals(1, output.split("reason=\"sort\"").length - 1);
+    }
+
+    @Test
+    public void testFirstConnector() throws Exception {
+        System.out.println("OrderAnalysis connector before the first lemma");
+        // at the start of the collection, as in the greedy classification
+        List<Region> heads = regions("A", "ABAD, s. m.", "Y", "ABADESA, s. f.");
+        OrderAnalysis analysis = new OrderAnalysis(SplitEngine.getDefault());
+        analysis.add("f1", heads);
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        analysis.split(sink);
+        sink.flush();
+        StringWriter greedy = new StringWriter();
+        XMLSink greedySink = new XMLSink(greedy, 0);
+        greedySink.startFile("f1");
+        SplitEngine.getDefault().split(heads, "", "f1", greedySink);
+        greedySink.endFile();
+        greedySink.flush();
+        String output = writer.toString();
+        assertTrue(output, output.contains("<entry>A</entry>"));
+        assertTrue(output, output.contains("<skip>Y</skip>"));
+        assertEquals(greedy.toString(), output);
+    }
+
+    @Test
+    public void testScale() throws Exception {
+        System.out.println("OrderAnalysis scale");
+        PageGenerator generator = new PageGenerator(11, 50);
+        SplitEngine engine = SplitEngine.getDefault();
+        OrderAnalysis analysis = new OrderAnalysis(engine);
+        for (int n = 0; n < 2000; ++n) {
+            String id = "p" + n;
+            analysis.add(id, engine.headers(new ByteArrayInputStream(
+                    generator.page(id).getBytes("UTF-8"))));
+        }
+        long time = System.currentTimeMillis();
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        analysis.split(sink);
+        sink.flush();
+        time = System.currentTimeMillis() - time;
+        System.out.println(analysis.size() + " headers in " + time + " ms");
+        assertTrue(analysis.size() > 50000);
+    }
+}
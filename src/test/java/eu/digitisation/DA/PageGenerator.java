@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generator of synthetic PAGE XML (2010-03-19) dictionary pages. Every page
+ * contains a column of paragraph regions whose headwords progress in
+ * alphabetical order from page to page, with subentries and past participles
+ * after verbs, plus header, page-number and catch-word regions. Paragraphs are
+ * laid out top-down in two columns, with a height proportional to their
+ * number of lines. The document order of the regions is partially shuffled
+ * with respect to the reading order.
+ * <p>
+ * Optionally, OCR faults are injected in a fraction of the headwords: an I
+ * read as l (Itypo), a letter read in lowercase (check, high priority) or a
+ * headword out of alphabetical order (check, sort). Faults are drawn from a
+ * separate random sequence, so that the pages generated with a given seed
+ * only differ in the misread headwords, whatever the fault rate.</p>
+ *
+ * @author R.C.C.
+ */
+public class PageGenerator {
+
+    /**
+     * Version of the page layout: to be increased whenever a change in the
+     * generator changes the pages generated with a given seed
+     */
+    public final static int LAYOUT = 1;
+    private final static String NS
+            = "http://schema.primaresearch.org/PAGE/gts/pagecontent/2010-03-19";
+    private final static String[] words = {"la", "de", "que", "el", "en",
+        "caſa", "ſobre", "lo", "por", "", "tiene", "tribútos", "qual",
+        "eas", "Lat.", "como", "dicho", "ſe", "aſsi", "Cervant."};
+    private final static String[] verbs = {"AR", "ER", "IR", "ARSE"};
+    private final static int MARGIN = 200;   // page margin (pixels)
+    private final static int COLUMN = 1100;  // column width
+    private final static int LINE = 40;      // line height
+
+    private final Random random;
+    private final Random noise;  // for OCR faults
+    private final int regions;   // paragraph regions per page
+    private int counter;         // index of the next headword
+    private int pages;           // pages generated so far
+    private String last;         // last headword generated
+    private double faults;       // fraction of headwords with OCR faults
+
+    /**
+     * @param seed the random seed (equal seeds produce equal pages)
+     * @param regions the number of paragraph regions per page
+     */
+    public PageGenerator(long seed, int regions) {
+        this.random = new Random(seed);
+        this.noise = new Random(~seed);
+        this.regions = regions;
+        this.counter = 0;
+        this.last = "";
+    }
+
+    public PageGenerator(long seed) {
+        this(seed, 20);
+    }
+
+    /**
+     * Inject OCR faults in a fraction of the headwords
+     *
+     * @param rate the probability that a new headword has an OCR fault
+     * @return this generator
+     */
+    public PageGenerator setFaults(double rate) {
+        this.faults = rate;
+        return this;
+    }
+
+    /**
+     * @return the next headword in alphabetical order
+     */
+    protected String headword() {
+        counter += 1 + random.nextInt(3);
+        StringBuilder builder = new StringBuilder();
+        for (int k = 0, n = counter; k < 6; ++k, n /= 26) {
+            builder.append((char) ('A' + n % 26));
+        }
+        builder.reverse();
+        if (random.nextInt(4) == 0) {
+            builder.append(verbs[random.nextInt(verbs.length)]);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return the text of the next paragraph region
+     */
+    protected String paragraph() {
+        StringBuilder builder = new StringBuilder();
+        String head;
+        int choice = random.nextInt(10);
+        if (choice == 0 && last.length() > 0) {
+            head = last;  // subentry
+        } else if (choice == 1 && last.matches(".*[AI]R$")) {
+            head = last.replaceFirst("AR$", "ADO").replaceFirst("IR$", "IDO")
+                    + ", DA"; // participle
+        } else if (choice == 2 && last.length() > 0) {
+            head = null;  // continuation of previous entry
+        } else {
+            head = last = headword();
+            if (noise.nextDouble() < faults) {
+                head = fault(head);
+            }
+        }
+        if (head != null) {
+            builder.append(head).append(". ");
+        }
+        int length = 20 + random.nextInt(60);
+        for (int n = 0; n < length; ++n) {
+            builder.append(words[random.nextInt(words.length)]);
+            builder.append(n % 9 == 8 ? "\n" : " ");
+        }
+        return builder.toString().trim() + ".";
+    }
+
+    /**
+     * @return the number of lines in a text
+     */
+    private static int lines(String text) {
+        int lines = 1;
+        for (int n = 0; n < text.length(); ++n) {
+            if (text.charAt(n) == '\n') {
+                ++lines;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @param head a headword
+     * @return the headword as misread by an OCR engine
+     */
+    private String fault(String head) {
+        char[] chars = head.toCharArray();
+        switch (noise.nextInt(3)) {
+            case 0: // I read as l
+                int n = head.indexOf('I', 1);
+                if (n > 0) {
+                    chars[n] = 'l';
+                    break;
+                }
+            // no I: fall through
+            case 1: // a letter read in lowercase
+                n = 1 + noise.nextInt(chars.length - 1);
+                chars[n] = Character.toLowerCase(chars[n]);
+                break;
+            default: // a letter misread (out of alphabetical order)
+                chars[0] = (char) ('A' + (chars[0] - 'A' + 1 + noise.nextInt(25)) % 26);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Append a Coords element with the polygon of a block of text lines in
+     * a column: a rectangle whose last line is shorter
+     *
+     * @param x the left side of the column
+     * @param y the top of the region
+     * @param lines the number of text lines in the region
+     */
+    private void coords(StringBuilder builder, int x, int y, int lines) {
+        int left = x + random.nextInt(8);
+        int right = x + COLUMN - random.nextInt(8);
+        int top = y + random.nextInt(6);
+        int bottom = top + LINE * lines;
+        int end = left + 200 + random.nextInt(right - left - 200);
+        int[][] points = {{left, top}, {right, top}, {right, bottom - LINE},
+            {end, bottom - LINE}, {end, bottom}, {left, bottom}};
+        builder.append("\t<Coords>\n");
+        for (int[] point : points) {
+            builder.append("\t<Point x=\"").append(point[0])
+                    .append("\" y=\"").append(point[1])
+                    .append("\"/>\n");
+        }
+        builder.append("\t</Coords>\n");
+    }
+
+    private void region(StringBuilder builder, String id, String type,
+            String text, int x, int y) {
+        builder.append("\t<TextRegion id=\"").append(id)
+                .append("\" type=\"").append(type).append("\">\n");
+        coords(builder, x, y, lines(text));
+        builder.append("\t<TextEquiv>\n\t<PlainText></PlainText>\n\t<Unicode>")
+                .append(text.replace("&", "&amp;").replace("<", "&lt;"))
+                .append("</Unicode></TextEquiv></TextRegion>\n");
+    }
+
+    /**
+     * @param id the page identifier
+     * @return the content of the next page
+     */
+    public String page(String id) {
+        List<String> ids = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+
+        ++pages;
+        ids.add("r1");
+        types.add("header");
+        texts.add(last.length() > 3 ? last.substring(0, 3) : "DA");
+        for (int n = 0; n < regions; ++n) {
+            ids.add("r" + (n + 2));
+            types.add("paragraph");
+            texts.add(paragraph());
+        }
+        ids.add("r" + (regions + 2));
+        types.add("catch-word");
+        texts.add(last);
+        ids.add("r" + (regions + 3));
+        types.add("page-number");
+        texts.add(String.valueOf(pages));
+
+        // document order: reading order with a few swapped regions
+        List<Integer> order = new ArrayList<>();
+        for (int n = 0; n < ids.size(); ++n) {
+            order.add(n);
+        }
+        for (int k = 0; k < ids.size() / 8; ++k) {
+            int n = 1 + random.nextInt(ids.size() - 2);
+            Collections.swap(order, n, n + 1);
+        }
+
+        // layout: the header on top, the paragraphs in two columns and the
+        // catch-word and page number at the bottom
+        int[] lefts = new int[ids.size()];
+        int[] tops = new int[ids.size()];
+        int total = 0;
+        for (int n = 1; n <= regions; ++n) {
+            total += lines(texts.get(n));
+        }
+        lefts[0] = MARGIN;
+        tops[0] = MARGIN;
+        int height = 2 * MARGIN;
+        int column = MARGIN;
+        int y = 2 * MARGIN;
+        int lines = 0;
+        for (int n = 1; n <= regions; ++n) {
+            if (column == MARGIN && lines > 0 && 2 * lines >= total) {
+                column = 2 * MARGIN + COLUMN;  // second column
+                y = 2 * MARGIN;
+            }
+            lefts[n] = column;
+            tops[n] = y;
+            int k = lines(texts.get(n));
+            lines += k;
+            y += LINE * k + LINE / 2;
+            height = Math.max(height, y);
+        }
+        for (int n = regions + 1; n < ids.size(); ++n) {
+            lefts[n] = MARGIN + (n - regions) * COLUMN / 2;
+            tops[n] = height + LINE;
+        }
+        height += 2 * LINE + 2 * MARGIN;
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<PcGts xmlns=\"").append(NS).append("\" pcGtsId=\"")
+                .append(id).append("\">\n")
+                .append("\t<Metadata>\n\t<Creator>PageGenerator</Creator>\n")
+                .append("\t<Created>2014-01-01T00:00:00</Created>\n")
+                .append("\t<LastChange>2014-01-01T00:00:00</LastChange></Metadata>\n")
+                .append("\t<Page imageFilename=\"").append(id)
+                .append(".tif\" imageWidth=\"").append(3 * MARGIN + 2 * COLUMN)
+                .append("\" imageHeight=\"").append(Math.max(height, 3944))
+                .append("\">\n")
+                .append("\t<ReadingOrder>\n\t<OrderedGroup id=\"ro").append(id)
+                .append("\">\n");
+        for (int n = 0; n < ids.size(); ++n) {
+            builder.append("\t<RegionRefIndexed regionRef=\"").append(ids.get(n))
+                    .append("\" index=\"").append(n).append("\"/>\n");
+        }
+        builder.append("\t</OrderedGroup></ReadingOrder>\n");
+        for (int n : order) {
+            region(builder, ids.get(n), types.get(n), texts.get(n), lefts[n], tops[n]);
+        }
+        builder.append("\t</Page>\n</PcGts>\n");
+        return builder.toString();
+    }
+
+    /**
+     * Write a collection of pages to a directory
+     *
+     * @param dir the output directory (created if necessary)
+     * @param size the number of pages
+     * @return the list of files created, in dictionary order
+     * @throws IOException
+     */
+    public List<File> generate(File dir, int size) throws IOException {
+        List<File> files = new ArrayList<>();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        for (int n = 0; n < size; ++n) {
+            String id = String.format("pc-%08d", n);
+            File file = new File(dir, id + ".xml");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+                writer.write(page(id));
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Generate a synthetic corpus
+     *
+     * @param args output directory and number of pages
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PageGenerator outdir pages");
+        } else {
+            new PageGenerator(0).generate(new File(args[0]), Integer.parseInt(args[1]));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class PageGeneratorTest {
+
+    @Test
+    public void testPage() throws Exception {
+        System.out.println("PageGenerator");
+        PageGenerator generator = new PageGenerator(1, 10);
+        String previous = "";
+        for (int n = 0; n < 5; ++n) {
+            String page = generator.page("p" + n);
+            List<Region> regions;
+            try (RegionReader reader = new RegionReader(
+                    new ByteArrayInputStream(page.getBytes("UTF-8")))) {
+                regions = reader.readAll();
+            }
+            assertEquals(10, regions.size());
+            for (int k = 0; k < regions.size(); ++k) {
+                assertEquals("r" + (k + 2), regions.get(k).getId());
+            }
+            for (String head : Split.headers(new RegionReader(
+                    new ByteArrayInputStream(page.getBytes("UTF-8"))))) {
+                String start = Split.firstWord(head);
+                assertTrue(previous + " " + start,
+                        Split.collator.compare(previous, start) <= 0
+                        || Split.isParticiple(start, previous));
+                if (!head.contains(",")) {
+                    previous = start;
+                }
+            }
+        }
+    }
+}
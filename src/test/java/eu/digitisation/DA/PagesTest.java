@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class PagesTest {
+
+    File dir;
+    List<File> files;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("DA").toFile();
+        files = new PageGenerator(2).generate(new File(dir, "pages"), 5);
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File zip(String name) throws IOException {
+        File file = new File(dir, name);
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+            zos.putNextEntry(new ZipEntry("pages/"));
+            zos.putNextEntry(new ZipEntry("pages/README.txt"));
+            zos.write("not a page".getBytes("UTF-8"));
+            for (File page : files) {
+                zos.putNextEntry(new ZipEntry("pages/" + page.getName()));
+                zos.write(Files.readAllBytes(page.toPath()));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Write a ustar header block
+     */
+    private static void header(OutputStream os, String name, long size, char type)
+            throws IOException {
+        byte[] header = new byte[512];
+        byte[] bytes = name.getBytes("UTF-8");
+        System.arraycopy(bytes, 0, header, 0, Math.min(bytes.length, 100));
+        System.arraycopy(String.format("%07o", 0644).getBytes("US-ASCII"), 0, header, 100, 7);
+        System.arraycopy(String.format("%011o", size).getBytes("US-ASCII"), 0, header, 124, 11);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes("US-ASCII"), 0, header, 257, 8);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int sum = 0;
+        for (byte b : header) {
+            sum += b & 0xFF;
+        }
+        System.arraycopy(String.format("%06o\0", sum).getBytes("US-ASCII"), 0, header, 148, 7);
+        os.write(header);
+    }
+
+    private static void member(OutputStream os, String name, byte[] content, char type)
+            throws IOException {
+        header(os, name, content.length, type);
+        os.write(content);
+        os.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private File tgz(String name) throws IOException {
+        File file = new File(dir, name);
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(file))) {
+            member(os, "pages/", new byte[0], '5');
+            for (File page : files) {
+                String path = "pages/" + page.getName();
+                if (page == files.get(1)) {
+                    // GNU long name
+                    path = "pages/" + new String(new char[120]).replace('\0', 'x')
+                            + "/" + page.getName();
+                    member(os, "././@LongLink", (path + "\0").getBytes("UTF-8"), 'L');
+                }
+                member(os, path, Files.readAllBytes(page.toPath()), '0');
+            }
+            os.write(new byte[1024]);
+        }
+        return file;
+    }
+
+    private File gz(File page) throws IOException {
+        File file = new File(dir, page.getName() + ".gz");
+        try (OutputStream os = new GZIPOutputStream(new FileOutputStream(file))) {
+            os.write(Files.readAllBytes(page.toPath()));
+        }
+        return file;
+    }
+
+    private static String output(List<File> inputs) throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        Split.process(inputs, "", sink);
+        sink.flush();
+        return writer.toString().replaceAll("<id>.*</id>", "<id/>");
+    }
+
+    @Test
+    public void testArchives() throws Exception {
+        System.out.println("archives");
+        File zip = zip("pages.zip");
+        File tgz = tgz("pages.tar.gz");
+        for (File archive : Arrays.asList(zip, tgz)) {
+            List<String> names = new ArrayList<>();
+            try (Pages pages = new Pages(Arrays.asList(archive))) {
+                int n = 0;
+                while (pages.next()) {
+                    assertNull(pages.file());
+                    assertTrue(pages.id().startsWith(archive + "!"));
+                    assertTrue(pages.member().endsWith(files.get(n).getName()));
+                    if (n % 2 == 0) { // odd members are skipped unread
+                        assertArrayEquals(Files.readAllBytes(files.get(n).toPath()),
+                                pages.read());
+                    }
+                    names.add(pages.member());
+                    ++n;
+                }
+            }
+            assertEquals(files.size(), names.size());
+        }
+        String expected = output(files);
+        assertTrue(expected.contains("<entry>"));
+        assertEquals(expected, output(Arrays.asList(zip)));
+        assertEquals(expected, output(Arrays.asList(tgz)));
+        List<File> gzipped = new ArrayList<>();
+        for (File page : files) {
+            gzipped.add(gz(page));
+        }
+        assertEquals(expected, output(gzipped));
+
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        new Pipeline(3).split(Arrays.asList(tgz), "", sink);
+        sink.flush();
+        assertEquals(expected, writer.toString().replaceAll("<id>.*</id>", "<id/>"));
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        System.out.println("corrupt archive");
+        File bad = new File(dir, "bad.tar.gz");
+        Files.write(bad.toPath(), "not compressed".getBytes("UTF-8"));
+        try (Pages pages = new Pages(Arrays.asList(bad, files.get(0)))) {
+            assertTrue(pages.next());
+            assertEquals(bad.toString(), pages.id());
+            try {
+                pages.open();
+                fail("IOException expected");
+            } catch (IOException ex) {
+                // expected
+            }
+            assertTrue(pages.next());
+            assertEquals(files.get(0), pages.file());
+            assertFalse(pages.next());
+        }
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        Split.process(Arrays.asList(bad), "", sink);
+        sink.flush();
+        assertTrue(writer.toString().contains("Wrong file"));
+    }
+}
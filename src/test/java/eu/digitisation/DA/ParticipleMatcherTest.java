@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class ParticipleMatcherTest {
+
+    @Test
+    public void testRegular() {
+        System.out.println("ParticipleMatcher regular");
+        ParticipleMatcher matcher = ParticipleMatcher.getDefault();
+        for (String form : new String[]{"APOSTADO", "APOSTADA", "APOSTADOS", "APOSTADAS"}) {
+            assertTrue(form, matcher.isParticiple(form, "APOSTAR"));
+        }
+        assertTrue(matcher.isParticiple("COMIDO", "COMER"));
+        assertTrue(matcher.isParticiple("PARTIDAS", "PARTIR"));
+        assertTrue(matcher.isParticiple("OÍDO", "OÍR"));
+        assertTrue(matcher.isParticiple("ABSTENIDO", "ABSTENERSE"));
+        assertTrue(matcher.isParticiple("ALZADA", "ALZARSE"));
+
+        assertFalse(matcher.isParticiple("COMADO", "COMER"));
+        assertFalse(matcher.isParticiple("APOSTADOR", "APOSTAR"));
+        assertFalse(matcher.isParticiple("APOSTADE", "APOSTAR"));
+        assertFalse(matcher.isParticiple("AM", "AMAR"));
+        assertFalse(matcher.isParticiple("CASADO", "CASA"));
+        assertFalse(matcher.isParticiple("APOSTAR", "APOSTAR"));
+    }
+
+    @Test
+    public void testIrregular() {
+        System.out.println("ParticipleMatcher irregular");
+        ParticipleMatcher matcher = ParticipleMatcher.getDefault();
+        assertTrue(matcher.isParticiple("HECHO", "HACER"));
+        assertTrue(matcher.isParticiple("DESHECHAS", "DESHACER"));
+        assertTrue(matcher.isParticiple("DESCUBIERTO", "DESCUBRIR"));
+        assertTrue(matcher.isParticiple("COMPUESTA", "COMPONER"));
+        assertTrue(matcher.isParticiple("VISTO", "VER"));
+        assertTrue(matcher.isParticiple("PREVISTOS", "PREVER"));
+        assertTrue(matcher.isParticiple("ESCRITO", "ESCRIBIR"));
+        assertTrue(matcher.isParticiple("VUELTO", "VOLVERSE"));
+        // all matching rules apply, so regular forms are accepted too
+        assertTrue(matcher.isParticiple("PROVEIDO", "PROVEER"));
+        assertTrue(matcher.isParticiple("PROVISTO", "PROVEER"));
+        assertTrue(matcher.isParticiple("IMPRIMIDO", "IMPRIMIR"));
+
+        assertTrue(matcher.isParticiple("MOVIDO", "MOVER"));
+
+        assertFalse(matcher.isParticiple("HECHO", "COCER"));
+        assertFalse(matcher.isParticiple("PUESTO", "PONDER"));
+    }
+
+    @Test
+    public void testCache() {
+        System.out.println("ParticipleMatcher cache");
+        ParticipleMatcher matcher = ParticipleMatcher.getDefault();
+        String[][] pairs = {{"AMADO", "AMAR"}, {"AMADA", "AMAR"}, {"HECHO", "HACER"},
+            {"AMADO", "HACER"}, {"HECHO", "AMAR"}, {"AMADO", "AMAR"}};
+        boolean[] expected = {true, true, true, false, false, true};
+        for (int n = 0; n < pairs.length; ++n) {
+            assertEquals(pairs[n][0] + " " + pairs[n][1], expected[n],
+                    matcher.isParticiple(pairs[n][0], pairs[n][1]));
+        }
+    }
+
+    @Test
+    public void testRules() throws IOException {
+        System.out.println("ParticipleMatcher rules");
+        ParticipleMatcher matcher = new ParticipleMatcher(new StringReader(
+                "# test\n\ninflection O A\nclitic SE\nAR ADO\nDECIR DICHO\n"));
+        assertTrue(matcher.isParticiple("CANTADA", "CANTAR"));
+        assertTrue(matcher.isParticiple("MALDICHO", "MALDECIR"));
+        assertTrue(matcher.isParticiple("DICHA", "DECIRSE"));
+        assertFalse(matcher.isParticiple("CANTADOS", "CANTAR"));
+        assertFalse(matcher.isParticiple("COMIDO", "COMER"));
+        try {
+            new ParticipleMatcher(new StringReader("AR ADO IDO\n"));
+            fail("Wrong rule accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+        try {
+            new ParticipleMatcher(new StringReader("inflection O A\nER IDA\n"));
+            fail("Wrong participle accepted");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class PipelineTest {
+
+    @Test
+    public void testSplit() throws Exception {
+        System.out.println("parallel split");
+        File page = new File(PipelineTest.class.getResource("/pc-00444931.xml").toURI());
+        List<File> files = new ArrayList<>();
+        for (int n = 0; n < 12; ++n) {
+            files.add(page);
+        }
+
+        StringWriter sequential = new StringWriter();
+        StringWriter parallel = new StringWriter();
+        XMLSink seqSink = new XMLSink(sequential, 0);
+        XMLSink parSink = new XMLSink(parallel, 0);
+        String seqLast = Split.process(files, "", seqSink);
+        String parLast = new Pipeline(4).split(files, "", parSink);
+        seqSink.flush();
+        parSink.flush();
+        assertTrue(sequential.toString().contains("<entry>APOSTAL</entry>"));
+        assertEquals(seqLast, parLast);
+        assertEquals(sequential.toString(), parallel.toString());
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        System.out.println("interrupted parallel split");
+        File page = new File(PipelineTest.class.getResource("/pc-00444931.xml").toURI());
+        List<File> files = new ArrayList<>();
+        for (int n = 0; n < 12; ++n) {
+            files.add(page);
+        }
+        XMLSink sink = new XMLSink(new StringWriter(), 0);
+        Thread.currentThread().interrupt();
+        try {
+            new Pipeline(4).split(files, "", sink);
+            fail("InterruptedIOException expected");
+        } catch (InterruptedIOException ex) {
+            // the interrupt status is kept
+            assertTrue(Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
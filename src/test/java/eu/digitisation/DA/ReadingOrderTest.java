@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class ReadingOrderTest {
+
+    @Test
+    public void testSort() throws Exception {
+        System.out.println("ReadingOrder.sort");
+        File file = new File(ReadingOrderTest.class.getResource("/pc-00444931.xml").toURI());
+        Document doc = Split.load(file);
+        List<Element> regions = Split.engine.select(doc);
+        List<Region> expected;
+        try (RegionReader reader = new RegionReader(file)) {
+            expected = reader.readAll();
+        }
+        assertEquals(expected.size(), regions.size());
+        for (int n = 0; n < regions.size(); ++n) {
+            assertEquals(expected.get(n).getId(), regions.get(n).getAttribute("id"));
+        }
+        assertEquals(regions, ReadingOrder.sort(regions, doc));
+    }
+
+    @Test
+    public void testWrongIndex() throws Exception {
+        System.out.println("ReadingOrder wrong index");
+        String page = "<PcGts><Page><ReadingOrder><OrderedGroup>"
+                + "<RegionRefIndexed regionRef=\"r1\" index=\"1.5\"/>"
+                + "<RegionRefIndexed regionRef=\"r2\" index=\"0\"/>"
+                + "</OrderedGroup></ReadingOrder>"
+                + "<TextRegion id=\"r1\" type=\"paragraph\"><TextEquiv><Unicode>UNO</Unicode></TextEquiv></TextRegion>"
+                + "<TextRegion id=\"r2\" type=\"paragraph\"><TextEquiv><Unicode>DOS</Unicode></TextEquiv></TextRegion>"
+                + "</Page></PcGts>";
+        Document doc = Split.load(new ByteArrayInputStream(page.getBytes("UTF-8")));
+        assertEquals(1, ReadingOrder.indices(doc).size());
+        List<Element> regions = ReadingOrder.sort(Split.engine.select(doc), doc);
+        // unordered regions follow the others
+        assertEquals(2, regions.size());
+        assertEquals("r2", regions.get(0).getAttribute("id"));
+        assertEquals("r1", regions.get(1).getAttribute("id"));
+    }
+}
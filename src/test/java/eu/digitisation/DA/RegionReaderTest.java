@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class RegionReaderTest {
+
+    @Test
+    public void testNext() throws Exception {
+        System.out.println("RegionReader");
+        File file = new File(RegionReaderTest.class.getResource("/pc-00444931.xml").toURI());
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        Map<String, String> content = new HashMap<>();
+        Map<String, Integer> index = new HashMap<>();
+        NodeList regions = doc.getElementsByTagName("TextRegion");
+        for (int n = 0; n < regions.getLength(); ++n) {
+            Element e = (Element) regions.item(n);
+            if (e.getAttribute("type").equals("paragraph")) {
+                content.put(e.getAttribute("id"), e.getTextContent());
+            }
+        }
+        NodeList refs = doc.getElementsByTagName("RegionRefIndexed");
+        for (int n = 0; n < refs.getLength(); ++n) {
+            Element e = (Element) refs.item(n);
+            index.put(e.getAttribute("regionRef"), Integer.valueOf(e.getAttribute("index")));
+        }
+
+        List<Region> list;
+        try (RegionReader reader = new RegionReader(file)) {
+            list = reader.readAll();
+        }
+        assertEquals(content.size(), list.size());
+        int previous = -1;
+        for (Region region : list) {
+            assertEquals(content.get(region.getId()), region.getText());
+            int current = index.get(region.getId());
+            assertTrue(current > previous);
+            previous = current;
+        }
+        assertEquals("r2", list.get(0).getId());
+    }
+
+    @Test
+    public void testWrongIndex() throws Exception {
+        System.out.println("RegionReader wrong index");
+        String page = "<PcGts><Page><ReadingOrder><OrderedGroup>"
+                + "<RegionRefIndexed regionRef=\"r1\" index=\"x\"/>"
+                + "<RegionRefIndexed regionRef=\"r2\" index=\"0\"/>"
+                + "</OrderedGroup></ReadingOrder>"
+                + "<TextRegion id=\"r1\" type=\"paragraph\"><TextEquiv><Unicode>UNO</Unicode></TextEquiv></TextRegion>"
+                + "<TextRegion id=\"r2\" type=\"paragraph\"><TextEquiv><Unicode>DOS</Unicode></TextEquiv></TextRegion>"
+                + "</Page></PcGts>";
+        List<Region> list;
+        try (RegionReader reader = new RegionReader(
+                new ByteArrayInputStream(page.getBytes("UTF-8")))) {
+            list = reader.readAll();
+        }
+        // unordered regions follow the others
+        assertEquals(2, list.size());
+        assertEquals("r2", list.get(0).getId());
+        assertEquals("r1", list.get(1).getId());
+    }
+
+    @Test
+    public void testNotXML() throws Exception {
+        System.out.println("RegionReader not XML");
+        final boolean[] closed = {false};
+        byte[] content = "<?xml version=\"1.0\" encoding=\"none\"?><PcGts/>".getBytes("UTF-8");
+        InputStream is = new ByteArrayInputStream(content) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        try {
+            new RegionReader(is);
+            fail("IOException expected");
+        } catch (IOException ex) {
+            assertTrue(closed[0]);
+        }
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright (C) 2014 Universidad de Alicante
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * End-to-end scale test of Split: a corpus of synthetic pages (see
+ * PageGenerator) is generated (or reused, if the directory already holds
+ * all the pages of one with the same settings and layout), classified and
+ * the output is optionally compared with a golden file. The report gives
+ * the throughput, the time and heap in use at every tenth of the run (a
+ * growing heap or a falling rate reveal scaling problems), the peak heap in
+ * use (sampled after every page) and the time spent in garbage collection.
+ * The run fails if the output differs from the golden file or the
+ * throughput or peak heap are beyond the given limits. The reader selected
+ * with setStreaming is used only during the run: the previous mode of Split
+ * is restored afterwards, even if the run fails.
+ * <p>
+ * File identifiers in the output are relative to the corpus directory, so
+ * that golden files do not depend on where the corpus is.</p>
+ *
+ * @author R.C.C.
+ */
+public class ScaleHarness {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+    private final static String SETTINGS = "corpus.properties";
+
+    private int pages = 10000;      // pages in the corpus
+    private int regions = 20;       // paragraph regions per page
+    private double faults = 0.02;   // fraction of headwords with OCR faults
+    private long seed = 0;          // random seed of the generator
+    private int threads = 1;        // header extraction threads
+    private boolean streaming;      // StAX instead of DOM
+
+    /**
+     * Statistics of a run
+     */
+    public static class Report {
+
+        int pages;          // pages processed
+        long entries;       // entries written
+        long errors;        // pages which could not be read
+        long bytes;         // size of the corpus
+        double seconds;     // elapsed time
+        long peakHeap;      // peak heap in use after a page (bytes)
+        long gcCount;       // garbage collections
+        long gcMillis;      // time spent in garbage collection
+        final List<double[]> checkpoints = new ArrayList<>(); // pages, s, heap MB
+        String difference;  // first difference with the golden file (or null)
+
+        /**
+         * @return pages processed per second
+         */
+        public double getThroughput() {
+            return pages / seconds;
+        }
+
+        /**
+         * @return the peak heap in use (sampled after every page) in
+         * megabytes
+         */
+        public double getPeakHeap() {
+            return peakHeap / 1048576.0;
+        }
+
+        /**
+         * @return null if the output is equal to the golden file (or there
+         * was none) or the first line which differs otherwise
+         */
+        public String getDifference() {
+            return difference;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format(Locale.ROOT,
+                    "pages: %d (%d errors), entries: %d, input: %.1f MB%n",
+                    pages, errors, entries, bytes / 1048576.0));
+            builder.append(String.format(Locale.ROOT,
+                    "time: %.2f s, throughput: %.1f pages/s, %.2f MB/s%n",
+                    seconds, getThroughput(), bytes / 1048576.0 / seconds));
+            builder.append(String.format(Locale.ROOT,
+                    "peak heap: %.1f MB, gc: %d collections, %.2f s (%.1f%%)%n",
+                    getPeakHeap(), gcCount, gcMillis / 1000.0,
+                    100 * gcMillis / 1000.0 / seconds));
+            double pages0 = 0;
+            double time0 = 0;
+            for (double[] point : checkpoints) {
+                builder.append(String.format(Locale.ROOT,
+                        "  %8.0f pages %8.2f s %8.1f pages/s %8.1f MB heap%n",
+                        point[0], point[1], (point[0] - pages0) / (point[1] - time0),
+                        point[2]));
+                pages0 = point[0];
+                time0 = point[1];
+            }
+            builder.append(difference == null ? "output: OK"
+                    : "output differs: " + difference);
+            return builder.toString();
+        }
+    }
+
+    /**
+     * A sink recording the progress of the run and making file identifiers
+     * relative to the corpus directory
+     */
+    private static class Progress implements EntrySink {
+
+        final EntrySink sink;
+        final String prefix;
+        final Report report;
+        final long start;
+        final int step;       // pages between checkpoints
+
+        Progress(EntrySink sink, File dir, Report report, int total) {
+            this.sink = sink;
+            this.prefix = dir.getPath() + File.separator;
+            this.report = report;
+            this.start = System.nanoTime();
+            this.step = Math.max(1, total / 10);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            sink.begin();
+        }
+
+        @Override
+        public void startFile(String id) throws IOException {
+            sink.startFile(id.startsWith(prefix) ? id.substring(prefix.length()) : id);
+        }
+
+        @Override
+        public void entry(Entry entry) throws IOException {
+            ++report.entries;
+            sink.entry(entry);
+        }
+
+        @Override
+        public void error(String message) throws IOException {
+            ++report.errors;
+            sink.error(message);
+        }
+
+        @Override
+        public void endFile() throws IOException {
+            sink.endFile();
+            Runtime runtime = Runtime.getRuntime();
+            long heap = runtime.totalMemory() - runtime.freeMemory();
+            report.peakHeap = Math.max(report.peakHeap, heap);
+            if (++report.pages % step == 0) {
+                report.checkpoints.add(new double[]{report.pages,
+                    (System.nanoTime() - start) / 1e9, heap / 1048576.0});
+            }
+        }
+
+        @Override
+        public void end() throws IOException {
+            sink.end();
+        }
+
+        @Override
+        public void close() throws IOException {
+            sink.close();
+        }
+    }
+
+    public ScaleHarness setPages(int pages) {
+        this.pages = pages;
+        return this;
+    }
+
+    public ScaleHarness setRegions(int regions) {
+        this.regions = regions;
+        return this;
+    }
+
+    public ScaleHarness setFaults(double faults) {
+        this.faults = faults;
+        return this;
+    }
+
+    public ScaleHarness setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public ScaleHarness setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public ScaleHarness setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    /**
+     * @return the generator settings, as stored with the corpus
+     */
+    private Properties settings() {
+        Properties settings = new Properties();
+        settings.setProperty("pages", String.valueOf(pages));
+        settings.setProperty("regions", String.valueOf(regions));
+        settings.setProperty("faults", String.valueOf(faults));
+        settings.setProperty("seed", String.valueOf(seed));
+        settings.setProperty("layout", String.valueOf(PageGenerator.LAYOUT));
+        return settings;
+    }
+
+    /**
+     * Generate a corpus in a directory, unless it already holds all the
+     * pages of one generated with the same settings and page layout
+     *
+     * @param dir the corpus directory
+     * @return the pages, in dictionary order
+     * @throws IOException
+     */
+    public List<File> corpus(File dir) throws IOException {
+        File file = new File(dir, SETTINGS);
+        Properties stored = new Properties();
+        if (file.isFile()) {
+            try (InputStream is = new FileInputStream(file)) {
+                stored.load(is);
+            }
+        }
+        List<File> files = new ArrayList<>();
+        boolean complete = stored.equals(settings());
+        for (int n = 0; n < pages && complete; ++n) {
+            File page = new File(dir, String.format("pc-%08d.xml", n));
+            complete = page.isFile();
+            files.add(page);
+        }
+        if (!complete) {
+            file.delete();
+            files = new PageGenerator(seed, regions).setFaults(faults).generate(dir, pages);
+            try (OutputStream os = new FileOutputStream(file)) {
+                settings().store(os, "PageGenerator settings");
+            }
+        }
+        return files;
+    }
+
+    /**
+     * @param files a list of files
+     * @return the total size of the files
+     */
+    private static long size(List<File> files) {
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    /**
+     * Classify a corpus
+     *
+     * @param dir the corpus directory (see corpus)
+     * @param output the output file (XML)
+     * @param golden the expected output (may be null)
+     * @return the statistics of the run
+     * @throws IOException
+     */
+    public Report run(File dir, File output, File golden) throws IOException {
+        List<File> files = corpus(dir);
+        Report report = new Report();
+        report.bytes = size(files);
+
+        System.gc();
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount -= Math.max(0, gc.getCollectionCount());
+            gcMillis -= Math.max(0, gc.getCollectionTime());
+        }
+
+        long start = System.nanoTime();
+        boolean mode = Split.streaming; // shared by every run in this JVM
+        Split.streaming = streaming;
+        try (EntrySink sink = new Progress(new XMLSink(output, 0), dir, report, pages)) {
+            sink.begin();
+            if (threads > 1) {
+                new Pipeline(threads).split(files, "", sink);
+            } else {
+                Split.process(files, "", sink);
+            }
+            sink.end();
+        } finally {
+            Split.streaming = mode;
+        }
+        report.seconds = (System.nanoTime() - start) / 1e9;
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        report.gcCount = gcCount;
+        report.gcMillis = gcMillis;
+        if (golden != null) {
+            report.difference = compare(output, golden);
+        }
+        return report;
+    }
+
+    /**
+     * Compare two files line by line
+     *
+     * @return null if both files are equal or a description of the first
+     * difference otherwise
+     */
+    static String compare(File output, File golden) throws IOException {
+        try (BufferedReader first = new BufferedReader(new InputStreamReader(
+                new FileInputStream(output), UTF8));
+                BufferedReader second = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(golden), UTF8))) {
+            for (int n = 1;; ++n) {
+                String line = first.readLine();
+                String expected = second.readLine();
+                if (line == null ? expected != null : !line.equals(expected)) {
+                    return "line " + n + ": " + line + " (expected " + expected + ")";
+                } else if (line == null) {
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete a generated corpus
+     */
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Run a scale test
+     *
+     * @param args the options "-n pages" (default 10000), "-r regions" (per
+     * page, default 20), "-f rate" (fraction of headwords with OCR faults,
+     * default 0.02), "-seed n" (default 0), "-t threads" (default 1), "-s"
+     * (streaming XML reader), "-d dir" (corpus directory, kept and reused;
+     * by default, a temporary directory), "-o file" (output, default
+     * split.xml), "-g file" (golden output), "-w" (write the output to the
+     * golden file instead of comparing), "-p rate" (minimum pages per
+     * second) and "-h MB" (maximum peak heap)
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        ScaleHarness harness = new ScaleHarness();
+        File dir = null;
+        File output = new File("split.xml");
+        File golden = null;
+        boolean write = false;
+        double rate = 0;
+        double heap = Double.MAX_VALUE;
+        for (int n = 0; n < args.length; ++n) {
+            String arg = args[n];
+            boolean value = n + 1 < args.length;
+            if (arg.equals("-n") && value) {
+                harness.setPages(Integer.parseInt(args[++n]));
+            } else if (arg.equals("-r") && value) {
+                harness.setRegions(Integer.parseInt(args[++n]));
+            } else if (arg.equals("-f") && value) {
+                harness.setFaults(Double.parseDouble(args[++n]));
+            } else if (arg.equals("-seed") && value) {
+                harness.setSeed(Long.parseLong(args[++n]));
+            } else if (arg.equals("-t") && value) {
+                harness.setThreads(Integer.parseInt(args[++n]));
+            } else if (arg.equals("-s")) {
+                harness.setStreaming(true);
+            } else if (arg.equals("-d") && value) {
+                dir = new File(args[++n]);
+            } else if (arg.equals("-o") && value) {
+                output = new File(args[++n]);
+            } else if (arg.equals("-g") && value) {
+                golden = new File(args[++n]);
+            } else if (arg.equals("-w")) {
+                write = true;
+            } else if (arg.equals("-p") && value) {
+                rate = Double.parseDouble(args[++n]);
+            } else if (arg.equals("-h") && value) {
+                heap = Double.parseDouble(args[++n]);
+            } else {
+                System.err.println("Usage: ScaleHarness [-n pages] [-r regions] [-f faults] [-seed n] [-t threads] [-s] [-d dir] [-o outfile] [-g goldenfile [-w]] [-p minrate] [-h maxheap]");
+                System.exit(2);
+            }
+        }
+        boolean temporary = dir == null;
+        if (temporary) {
+            dir = Files.createTempDirectory("DA").toFile();
+        }
+        Report report;
+        try {
+            report = harness.run(dir, output, write ? null : golden);
+        } finally {
+            if (temporary) {
+                delete(dir);
+            }
+        }
+        if (write && golden != null) {
+            Files.copy(output.toPath(), golden.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        System.out.println(report);
+        boolean failed = false;
+        if (report.getDifference() != null) {
+            failed = true;
+        }
+        if (report.getThroughput() < rate) {
+            System.out.println("FAILED: throughput below " + rate + " pages/s");
+            failed = true;
+        }
+        if (report.getPeakHeap() > heap) {
+            System.out.println("FAILED: peak heap above " + heap + " MB");
+            failed = true;
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
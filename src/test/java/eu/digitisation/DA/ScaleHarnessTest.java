@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class ScaleHarnessTest {
+
+    File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("DA").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * The golden file was written with
+     * {@code ScaleHarness -n 40 -f 0.1 -seed 1 -g golden/generated.xml -w}
+     */
+    @Test
+    public void testGolden() throws Exception {
+        System.out.println("ScaleHarness golden output");
+        File golden = new File(ScaleHarnessTest.class.getResource("/golden/generated.xml").toURI());
+        File corpus = new File(dir, "pages");
+        File output = new File(dir, "split.xml");
+        ScaleHarness harness = new ScaleHarness().setPages(40).setFaults(0.1).setSeed(1);
+        ScaleHarness.Report report = harness.run(corpus, output, golden);
+        assertNull(report.getDifference(), report.getDifference());
+        assertEquals(40, report.pages);
+        assertEquals(10, report.checkpoints.size());
+        assertTrue(report.entries > 400);
+        assertTrue(report.getThroughput() > 0);
+        assertTrue(report.getPeakHeap() > 0);
+
+        // the corpus is reused, the streaming reader gives the same output
+        long modified = new File(corpus, "pc-00000000.xml").lastModified();
+        report = harness.setStreaming(true).run(corpus, output, golden);
+        assertNull(report.getDifference(), report.getDifference());
+        assertFalse(Split.streaming);   // the mode of Split is restored
+        assertEquals(modified, new File(corpus, "pc-00000000.xml").lastModified());
+        File settings = new File(corpus, "corpus.properties");
+        String text = new String(Files.readAllBytes(settings.toPath()), "UTF-8");
+        assertTrue(text, text.contains("layout=" + PageGenerator.LAYOUT));
+
+        // a missing page, or pages of another layout, are generated again
+        assertTrue(new File(corpus, "pc-00000007.xml").delete());
+        report = harness.run(corpus, output, golden);
+        assertNull(report.getDifference(), report.getDifference());
+        Files.write(settings.toPath(), text.replaceFirst("layout=\\d+", "layout=0")
+                .getBytes("UTF-8"));
+        Files.write(new File(corpus, "pc-00000000.xml").toPath(), "<PcGts>".getBytes("UTF-8"));
+        report = harness.run(corpus, output, golden);
+        assertNull(report.getDifference(), report.getDifference());
+        for (File file : corpus.listFiles()) {
+            file.delete();
+        }
+        corpus.delete();
+    }
+
+    @Test
+    public void testFaults() throws Exception {
+        System.out.println("ScaleHarness OCR faults");
+        List<File> files = new PageGenerator(1).setFaults(0.2).generate(dir, 10);
+        List<File> clean = new PageGenerator(1).setFaults(0).generate(new File(dir, "clean"), 10);
+        int faults = 0;
+        for (int n = 0; n < files.size(); ++n) {
+            List<String> heads = Split.headers(files.get(n));
+            List<String> expected = Split.headers(clean.get(n));
+            assertEquals(expected.size(), heads.size());
+            for (int k = 0; k < heads.size(); ++k) {
+                if (!heads.get(k).equals(expected.get(k))) {
+                    ++faults;
+                }
+            }
+        }
+        assertTrue(faults > 10);
+        assertEquals(new String(Files.readAllBytes(clean.get(0).toPath()), "UTF-8"),
+                new PageGenerator(1).page("pc-00000000"));
+        for (File file : clean) {
+            file.delete();
+        }
+        new File(dir, "clean").delete();
+    }
+}
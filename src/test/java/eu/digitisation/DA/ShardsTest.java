@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class ShardsTest {
+
+    File dir;
+    List<File> files;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("DA").toFile();
+        // three volumes generated as a single sequence
+        PageGenerator generator = new PageGenerator(2);
+        files = new ArrayList<>();
+        for (String volume : new String[]{"A_C", "D_F", "G_Z"}) {
+            File subdir = new File(dir, volume);
+            subdir.mkdirs();
+            for (int n = 0; n < (volume.equals("D_F") ? 4 : 9); ++n) {
+                String id = String.format("pc-%08d", files.size());
+                File file = new File(subdir, id + ".xml");
+                Files.write(file.toPath(), generator.page(id).getBytes("UTF-8"));
+                files.add(file);
+            }
+        }
+        File wrong = new File(new File(dir, "D_F"), "pc-wrong.xml");
+        Files.write(wrong.toPath(), "<PcGts>".getBytes("UTF-8"));
+        files.add(9, wrong);
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private String full() throws IOException {
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        Split.process(files, "", sink);
+        sink.flush();
+        return writer.toString();
+    }
+
+    @Test
+    public void testPartition() {
+        System.out.println("Shards.partition");
+        List<List<File>> shards = Shards.partition(files, 4);
+        assertEquals(4, shards.size());
+        assertEquals(files.size(), shards.get(0).size() + shards.get(1).size()
+                + shards.get(2).size() + shards.get(3).size());
+        assertEquals(files.get(0), shards.get(0).get(0));
+        assertEquals(3, Shards.partition(files.subList(0, 3), 8).size());
+
+        shards = Shards.partitionByDirectory(files, 3);
+        assertEquals(3, shards.size());
+        assertEquals(9, shards.get(0).size());
+        assertEquals(5, shards.get(1).size());
+        assertEquals(9, shards.get(2).size());
+        assertEquals(1, Shards.partitionByDirectory(files, 1).size());
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        System.out.println("Shards.merge");
+        String expected = full();
+        Shards shards = new Shards(SplitEngine.getDefault());
+        for (int n : new int[]{1, 2, 5, 23}) {
+            List<File> dumps = new ArrayList<>();
+            List<File> results = new ArrayList<>();
+            List<List<File>> parts = Shards.partition(files, n);
+            for (int k = 0; k < parts.size(); ++k) {
+                dumps.add(new File(dir, n + "-" + k + ".dump"));
+                results.add(new File(dir, n + "-" + k + ".results"));
+                shards.work(parts.get(k), dumps.get(k), results.get(k));
+            }
+            StringWriter writer = new StringWriter();
+            XMLSink sink = new XMLSink(writer, 0);
+            shards.merge(dumps, results, "", sink);
+            sink.flush();
+            assertEquals("shards: " + n, expected, writer.toString());
+            // only the first pages of every shard are classified again
+            // only the first pages of every shard are classified again
+            assertTrue(shards.getReclassified() <= 2 * (parts.size() - 1));
+        }
+    }
+
+    @Test
+    public void testLongStrings() throws Exception {
+        System.out.println("Shards.Results long strings");
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 100000) {
+            builder.append("ABADÍA ſobre ");
+        }
+        String text = builder.toString();
+        File file = new File(dir, "long.results");
+        try (Shards.Results writer = Shards.Results.writer(file)) {
+            writer.add(Arrays.asList(new Entry(Entry.Tag.CHECK, text, "sort", null, null, "r1"),
+                    new Entry(Entry.Tag.ENTRY, "")), text);
+            writer.commit();
+        }
+        try (Shards.Results reader = Shards.Results.reader(file)) {
+            reader.next();
+            assertEquals(text, reader.getLast());
+            List<Entry> entries = reader.getEntries();
+            assertEquals(2, entries.size());
+            assertEquals(text, entries.get(0).getText());
+            assertEquals("sort", entries.get(0).getReason());
+            assertNull(entries.get(0).getPriority());
+            assertEquals("r1", entries.get(0).getRegion());
+            assertEquals("", entries.get(1).getText());
+            assertNull(entries.get(1).getRegion());
+        }
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("Shards.run");
+        File work = new File(dir, "work");
+        work.mkdir();
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        Shards shards = new Shards(SplitEngine.getDefault());
+        shards.run(Shards.partitionByDirectory(files, 3), work, sink);
+        sink.flush();
+        assertEquals(full(), writer.toString());
+    }
+}
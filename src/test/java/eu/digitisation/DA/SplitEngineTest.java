@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class SplitEngineTest {
+
+    @Test
+    public void testSplit() throws Exception {
+        System.out.println("SplitEngine.split");
+        File file = new File(SplitEngineTest.class.getResource("/pc-00444931.xml").toURI());
+        SplitEngine engine = SplitEngine.getDefault();
+        SplitEngine.Result result = engine.split(file.getName(),
+                new FileInputStream(file), "");
+
+        StringWriter expected = new StringWriter();
+        StringWriter actual = new StringWriter();
+        XMLSink sink = new XMLSink(expected, 0);
+        String last = Split.split(Split.headers(Split.load(file)), "", sink);
+        sink.flush();
+        sink = new XMLSink(actual, 0);
+        for (Entry entry : result.getEntries()) {
+            assertEquals(file.getName(), entry.getFile());
+            assertNotNull(entry.getRegion());
+            sink.entry(entry);
+        }
+        sink.flush();
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(last, result.getLast());
+    }
+
+    @Test
+    public void testConfiguration() throws Exception {
+        System.out.println("SplitEngine configuration");
+        SplitEngine engine = new SplitEngine(SplitEngine.defaultFilter(),
+                OldSpanishComparator.getInstance(), "paragraph", "",
+                ParticipleMatcher.getDefault());
+        List<Region> heads = Arrays.asList(new Region("r1", "BARCO"),
+                new Region("r2", "Y"), new Region("r3", "ZAPATO"));
+        SplitEngine.Result result = engine.split("f", heads, "");
+        assertEquals(3, result.getEntries().size());
+        assertEquals(Entry.Tag.ENTRY, result.getEntries().get(1).getTag());
+        assertEquals("r2", result.getEntries().get(1).getRegion());
+        assertEquals("ZAPATO", result.getLast());
+
+        result = SplitEngine.getDefault().split("f", heads, "");
+        assertEquals(Entry.Tag.SKIP, result.getEntries().get(1).getTag());
+        assertEquals(Entry.Tag.ENTRY, result.getEntries().get(2).getTag());
+
+        engine = new SplitEngine(SplitEngine.defaultFilter(),
+                OldSpanishComparator.getInstance(), "heading", "AOY",
+                ParticipleMatcher.getDefault());
+        PageGenerator generator = new PageGenerator(3, 8);
+        String page = generator.page("p");
+        result = engine.split("p", new ByteArrayInputStream(page.getBytes("UTF-8")), "");
+        assertTrue(result.getEntries().isEmpty());
+
+        // every engine has its own participle rules
+        engine = new SplitEngine(SplitEngine.defaultFilter(),
+                OldSpanishComparator.getInstance(),
+                new ParticipleMatcher(new StringReader("AR ADO\n")));
+        heads = Arrays.asList(new Region("r1", "BIRLAR, v. a."),
+                new Region("r2", "BIRLADA, s. f."));
+        result = engine.split("f", heads, "");
+        assertEquals(Entry.Tag.CHECK, result.getEntries().get(1).getTag());
+        result = SplitEngine.getDefault().split("f", heads, "");
+        assertEquals(Entry.Tag.PASTPART, result.getEntries().get(1).getTag());
+        assertFalse(engine.isParticiple("BIRLADA", "BIRLAR"));
+        assertTrue(SplitEngine.getDefault().isParticiple("BIRLADA", "BIRLAR"));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        System.out.println("SplitEngine concurrent");
+        final SplitEngine engine = SplitEngine.getDefault();
+        PageGenerator generator = new PageGenerator(7, 30);
+        final List<byte[]> pages = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        String last = "";
+        for (int n = 0; n < 40; ++n) {
+            byte[] page = generator.page("p" + n).getBytes("UTF-8");
+            pages.add(page);
+            SplitEngine.Result result = engine.split("p" + n,
+                    new ByteArrayInputStream(page), last);
+            expected.add(result.getEntries().toString());
+            last = result.getLast();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int k = 0; k < 8; ++k) {
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws Exception {
+                        List<String> output = new ArrayList<>();
+                        String last = "";
+                        for (int n = 0; n < pages.size(); ++n) {
+                            SplitEngine.Result result = engine.split("p" + n,
+                                    new ByteArrayInputStream(pages.get(n)), last);
+                            output.add(result.getEntries().toString());
+                            last = result.getLast();
+                        }
+                        return output;
+                    }
+                }));
+            }
+            for (Future<List<String>> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -17,11 +17,18 @@
  */
 package eu.digitisation.DA;
 
+import eu.digitisation.text.StringNormalizer;
 import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 
 /**
  *
@@ -42,6 +49,57 @@ public class SplitTest {
 //        fail("The test case is a prototype.");
     }
 
+    @Test
+    public void testSample() throws Exception {
+        System.out.println("header sample");
+        Document doc = Split.load(Split.class.getResourceAsStream("/pc-00444931.xml"));
+        NodeList regions = doc.getElementsByTagName("TextRegion");
+        for (int n = 0; n < regions.getLength(); ++n) {
+            Element e = (Element) regions.item(n);
+            String text = e.getTextContent().trim();
+            // the former implementation: translate and split the whole text
+            StringBuilder builder = new StringBuilder();
+            for (String token : Split.cfilter.translate(text).split("\\p{Space}+")) {
+                String word = StringNormalizer.trim(token);
+                if (word.length() > 0) {
+                    WordType type = WordType.typeOf(word);
+                    if (type == WordType.LOWERCASE || type == WordType.MIXEDCASE
+                            && WordType.isFirstWordInSentence(word)) {
+                        break;
+                    } else if (type != WordType.PUNCT && type != WordType.UNKNOWN) {
+                        builder.append(builder.length() > 0 ? " " : "").append(token);
+                    }
+                }
+            }
+            assertEquals(builder.toString(), Split.header(e));
+            assertEquals(builder.toString(), Split.header(text));
+        }
+    }
+
+    @Test
+    public void testFirstWord() {
+        System.out.println("firstWord and isSentenceHead");
+        String regex = "(\\p{Punct}|\\p{Space})*\\p{Lu}[\\p{L}&&[^\\p{Lu}]]*((\\p{Punct}|\\p{Space}).*)?";
+        char[] alphabet = {' ', '\n', '\u2028', '.', '(', 'A', 'b', '\u00D1',
+            '\u00F1', '\u0303', '1', '\u017F', '\u00A0'};
+        Random random = new Random(0);
+        for (int n = 0; n < 100000; ++n) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(8);
+            for (int k = 0; k < length; ++k) {
+                builder.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            if (random.nextBoolean()) {
+                builder.appendCodePoint(0x1D400); // mathematical bold A
+            }
+            String s = builder.toString();
+            assertEquals(s, s.length() > 0 && s.matches(regex), Split.isSentenceHead(s));
+            String expected = s.length() > 0 && Character.isLetter(s.charAt(0))
+                    ? s.split("[^\\p{L}]+")[0] : "";
+            assertEquals(s, expected, Split.firstWord(s));
+        }
+    }
+
     @Test
     public void testisParticiple() throws Exception {
         System.out.println("isParticiple");
@@ -53,8 +111,15 @@ public class SplitTest {
     @Test
     public void testSplit() throws Exception {
         System.out.println("split");
-        File ifile = null;
-        //Split.split(ifile);
-        //fail("The test case is a prototype.");
+        File ifile = new File(SplitTest.class.getResource("/pc-00444931.xml").toURI());
+        File golden = new File(SplitTest.class.getResource("/golden/sample.xml").toURI());
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        sink.begin();
+        assertEquals("APOSTARSELAS", Split.process(Arrays.asList(ifile), "", sink));
+        sink.end();
+        String output = writer.toString().replace(ifile.getPath(), ifile.getName())
+                .replace(System.getProperty("line.separator"), "\n");
+        assertEquals(new String(Files.readAllBytes(golden.toPath()), "UTF-8"), output);
     }
 }
\ No newline at end of file
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class TokenizerTest {
+
+    /**
+     * The tokens returned by split
+     */
+    private static List<String> split(String text) {
+        List<String> list = new ArrayList<>();
+        for (String token : Split.cfilter.translate(text).split("\\p{Space}+")) {
+            if (!token.isEmpty()) {
+                list.add(token);
+            }
+        }
+        return list;
+    }
+
+    private static List<String> tokens(Tokenizer tokenizer) {
+        List<String> list = new ArrayList<>();
+        while (tokenizer.next()) {
+            list.add(tokenizer.token());
+        }
+        return list;
+    }
+
+    @Test
+    public void testText() {
+        System.out.println("tokenize text");
+        Tokenizer tokenizer = new Tokenizer(Split.translator);
+        assertEquals(new ArrayList<String>(), tokens(tokenizer.reset("")));
+        assertEquals(new ArrayList<String>(), tokens(tokenizer.reset(" \t\n ")));
+        String text = " APOSTAL,\u00A0DA. adj.\n\t(Apo\u0301l.)\u3000ſ ";
+        assertEquals(split(text), tokens(tokenizer.reset(text)));
+
+        char[] alphabet = {' ', '\t', '\n', '\u00A0', '\u3000', '\u2002', 'A',
+            'b', 'l', 'I', '.', ',', '\u017F', '\u00F1', '\u0303', '\u0301',
+            '\uFB01', '\uEADA', '\uF4F9', '\u1100', '\u1161'};
+        Random random = new Random(0);
+        for (int n = 0; n < 100000; ++n) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(20);
+            for (int k = 0; k < length; ++k) {
+                builder.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String s = builder.toString();
+            assertEquals(s, split(s), tokens(tokenizer.reset(s)));
+        }
+    }
+
+    @Test
+    public void testElement() throws Exception {
+        System.out.println("tokenize element");
+        Document doc = Split.load(Split.class.getResourceAsStream("/pc-00444931.xml"));
+        NodeList regions = doc.getElementsByTagName("TextRegion");
+        Tokenizer tokenizer = new Tokenizer(Split.translator);
+        assertTrue(regions.getLength() > 0);
+        for (int n = 0; n < regions.getLength(); ++n) {
+            Element e = (Element) regions.item(n);
+            assertEquals(split(e.getTextContent()), tokens(tokenizer.reset(e)));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class WatcherTest {
+
+    File dir;
+    File pages;
+    File output;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("DA").toFile();
+        pages = new File(dir, "pages");
+        output = new File(dir, "entries.xml");
+        new PageGenerator(3).generate(pages, 20);
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * The output of a full run over the pages in the directory
+     */
+    private String full() throws IOException {
+        List<File> files = new ArrayList<>(Arrays.asList(pages.listFiles()));
+        Collections.sort(files);
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 0);
+        sink.begin();
+        Split.process(files, "", sink);
+        sink.end();
+        return writer.toString();
+    }
+
+    private String output() throws IOException {
+        return new String(Files.readAllBytes(output.toPath()), "UTF-8");
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        System.out.println("Watcher.update");
+        try (Watcher watcher = new Watcher(SplitEngine.getDefault(), pages, output, 2, 100)) {
+            assertEquals(20, watcher.update(Arrays.asList(pages.list())));
+            assertEquals(full(), output());
+
+            // a page touched without changes is not classified again
+            File page = new File(pages, "pc-00000010.xml");
+            byte[] content = Files.readAllBytes(page.toPath());
+            Files.write(page.toPath(), content);
+            assertEquals(0, watcher.update(Arrays.asList(page.getName())));
+            assertEquals(0, watcher.getClassified());
+            assertEquals(full(), output());
+
+            // a page which cannot be read, then deleted
+            File wrong = new File(pages, "pc-00000010a.xml");
+            Files.write(wrong.toPath(), "<PcGts>".getBytes("UTF-8"));
+            assertEquals(1, watcher.update(Arrays.asList(wrong.getName())));
+            assertEquals(full(), output());
+            assertTrue(output().contains("Wrong file"));
+            assertTrue(wrong.delete());
+            assertEquals(0, watcher.update(Arrays.asList(wrong.getName())));
+            assertEquals(full(), output());
+
+            // a new page in the middle changes the following ones
+            String text = new String(content, "UTF-8");
+            Files.write(new File(pages, "pc-00000005a.xml").toPath(),
+                    text.getBytes("UTF-8"));
+            assertTrue(watcher.update(Arrays.asList("pc-00000005a.xml")) > 1);
+            assertEquals(full(), output());
+            assertTrue(new File(pages, "pc-00000005a.xml").delete());
+            watcher.update(Arrays.asList("pc-00000005a.xml"));
+            assertEquals(full(), output());
+        }
+    }
+
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("Watcher.run");
+        Watcher watcher = new Watcher(SplitEngine.getDefault(), pages, output, 2, 50);
+        Thread thread = new Thread(watcher);
+        thread.start();
+        try {
+            long limit = System.currentTimeMillis() + 20000;
+            while (watcher.getBatches() < 1 && System.currentTimeMillis() < limit) {
+                Thread.sleep(20);
+            }
+            assertEquals(full(), output());
+            new PageGenerator(4).generate(new File(dir, "more"), 3);
+            for (File file : new File(dir, "more").listFiles()) {
+                Files.copy(file.toPath(), new File(pages, "x" + file.getName()).toPath());
+            }
+            String expected = full();
+            while (!expected.equals(output()) && System.currentTimeMillis() < limit) {
+                Thread.sleep(20);
+            }
+            assertEquals(expected, output());
+        } finally {
+            watcher.close();
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void testOutputInDirectory() throws Exception {
+        System.out.println("Watcher output in the watched directory");
+        String expected = full();
+        output = new File(pages, "entries.xml");
+        Watcher watcher = new Watcher(SplitEngine.getDefault(), pages, output, 2, 50);
+        Thread thread = new Thread(watcher);
+        thread.start();
+        try {
+            long limit = System.currentTimeMillis() + 20000;
+            while (watcher.getBatches() < 1 && System.currentTimeMillis() < limit) {
+                Thread.sleep(20);
+            }
+            assertEquals(expected, output());
+            // writing the output is not a change
+            Thread.sleep(500);
+            assertEquals(1, watcher.getBatches());
+        } finally {
+            watcher.close();
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        System.out.println("Watcher failed batch");
+        File out = new File(dir, "out");
+        output = new File(out, "entries.xml");  // the directory is missing
+        Watcher watcher = new Watcher(SplitEngine.getDefault(), pages, output, 2, 50);
+        Thread thread = new Thread(watcher);
+        thread.start();
+        try {
+            Thread.sleep(500);
+            assertTrue(thread.isAlive());
+            assertEquals(0, watcher.getBatches());
+            assertFalse(output.exists());
+
+            // the next batch processes the failed changes too
+            assertTrue(out.mkdir());
+            new PageGenerator(4).generate(new File(dir, "more"), 1);
+            for (File file : new File(dir, "more").listFiles()) {
+                Files.copy(file.toPath(), new File(pages, "x" + file.getName()).toPath());
+            }
+            String expected = full();
+            long limit = System.currentTimeMillis() + 20000;
+            while (watcher.getBatches() < 1 && System.currentTimeMillis() < limit) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, watcher.getBatches());
+            // the pages classified by the failed batch are not classified again
+            assertEquals(1, watcher.getClassified());
+            assertEquals(expected, output());
+        } finally {
+            watcher.close();
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void testDeletedDirectory() throws Exception {
+        System.out.println("Watcher deleted directory");
+        Watcher watcher = new Watcher(SplitEngine.getDefault(), pages, output, 2, 50);
+        Thread thread = new Thread(watcher);
+        thread.start();
+        try {
+            long limit = System.currentTimeMillis() + 20000;
+            while (watcher.getBatches() < 1 && System.currentTimeMillis() < limit) {
+                Thread.sleep(20);
+            }
+            delete(pages);
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        } finally {
+            watcher.close();
+            thread.join(5000);
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package eu.digitisation.DA;
 
+import eu.digitisation.text.StringNormalizer;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -46,4 +47,41 @@ public class WordTypeTest {
     public void testIsPunct() {
         assert (WordType.isPunct("...."));
     }
+
+    /**
+     * The scanner must classify the tokens in the sample page exactly as the
+     * regular expressions it replaces
+     */
+    @Test
+    public void testRegexEquivalence() throws Exception {
+        System.out.println("regex equivalence");
+        try (RegionReader reader = new RegionReader(
+                WordTypeTest.class.getResourceAsStream("/pc-00444931.xml"))) {
+            Region region;
+            while ((region = reader.next()) != null) {
+                String text = Split.cfilter.translate(region.getText());
+                for (String token : text.split("\\p{Space}+")) {
+                    for (String word : new String[]{token, StringNormalizer.trim(token)}) {
+                        WordType type;
+                        if (word.matches("\\p{L}+")) {
+                            type = word.matches("\\p{Lu}+") ? WordType.UPPERCASE
+                                    : word.matches("[\\p{L}&&[^\\p{Lu}]]+")
+                                            ? WordType.LOWERCASE : WordType.MIXEDCASE;
+                        } else {
+                            type = word.matches("\\p{Punct}+")
+                                    ? WordType.PUNCT : WordType.UNKNOWN;
+                        }
+                        assertEquals(word, type, WordType.typeOf(word));
+                        assertEquals(word, word.matches("\\p{Punct}*\\p{Lu}[\\p{L}&&[^\\p{Lu}]]*"),
+                                WordType.isFirstWordInSentence(word));
+                        assertEquals(word, word.matches("\\p{Lu}+\\p{L}\\p{Lu}+|\\p{L}\\p{Lu}{2,}|\\p{Lu}{2,}\\p{L}"),
+                                WordType.nearlyUpper(word));
+                        assertEquals(word, word.matches("\\p{Punct}+"), WordType.isPunct(word));
+                    }
+                }
+            }
+        }
+        assertEquals(WordType.UNKNOWN, WordType.typeOf(""));
+        assertFalse(WordType.isPunct(""));
+    }
 }
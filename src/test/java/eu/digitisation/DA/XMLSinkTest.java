@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 IMPACT Centre of Competence
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package eu.digitisation.DA;
+
+import java.io.StringWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author carrasco@ua.es
+ */
+public class XMLSinkTest {
+
+    @Test
+    public void testEntry() throws Exception {
+        System.out.println("XMLSink");
+        StringWriter writer = new StringWriter();
+        XMLSink sink = new XMLSink(writer, 2);
+        String eol = System.getProperty("line.separator");
+        sink.begin();
+        sink.startFile("a&b.xml");
+        sink.entry(new Entry(Entry.Tag.SUBENTRY, "APOSTAR"));
+        sink.entry(new Entry(Entry.Tag.CHECK, "A<B", "sort", null));
+        // flushed after a batch of two entries
+        assertEquals("<DA>" + eol + "<file>" + eol + "<id>a&amp;b.xml</id>" + eol
+                + "  <subentry>APOSTAR</subentry>" + eol
+                + "<check reason=\"sort\">A&lt;B</check>" + eol, writer.toString());
+        sink.entry(new Entry(Entry.Tag.CHECK, "Ab", null, "high"));
+        sink.error("Wrong file");
+        sink.endFile();
+        sink.end();
+        assertTrue(writer.toString().endsWith("<check priority=\"high\">Ab</check>" + eol
+                + "Wrong file" + eol + "</file>" + eol + "</DA>" + eol));
+    }
+}